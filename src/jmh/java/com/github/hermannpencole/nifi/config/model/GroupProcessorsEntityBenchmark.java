@@ -0,0 +1,46 @@
+package com.github.hermannpencole.nifi.config.model;
+
+import com.github.hermannpencole.nifi.config.service.SyntheticFlow;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * gson serialization and parsing of a configuration of 100, 10k and 100k processors (by groups of 100),
+ * with the settings of the extraction (pretty printing)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GroupProcessorsEntityBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private GroupProcessorsEntity configuration;
+
+    private String json;
+
+    @Setup
+    public void setup() {
+        configuration = SyntheticFlow.configuration(size);
+        json = gson.toJson(configuration);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return gson.toJson(configuration);
+    }
+
+    @Benchmark
+    public GroupProcessorsEntity parse() {
+        return gson.fromJson(json, GroupProcessorsEntity.class);
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * extractProcessor on all the processors of a group of 100, 10k and 100k processors.
+ * The extraction modify the configuration of the processor, then the processors are created again before each call
+ * (not measured).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ExtractProcessorServiceBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private final ExtractProcessorService extractProcessorService = new ExtractProcessorService();
+
+    private List<ProcessorDTO> processors;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        processors = SyntheticFlow.processors(size);
+    }
+
+    @Benchmark
+    public void extractProcessor(Blackhole blackhole) {
+        for (ProcessorDTO processor : processors) {
+            blackhole.consume(extractProcessorService.extractProcessor(processor));
+        }
+    }
+}
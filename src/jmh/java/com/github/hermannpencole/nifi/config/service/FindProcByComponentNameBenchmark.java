@@ -0,0 +1,47 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * findProcByComponentName on a group of 100, 10k and 100k processors.
+ * linearFindProcByComponentName is the reference : the lookup of findProcByComponentName before the name index
+ * (commit 06b8d2b)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FindProcByComponentNameBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private List<ProcessorEntity> processors;
+
+    private String name;
+
+    @Setup
+    public void setup() {
+        processors = SyntheticFlow.flow(size).getProcessors();
+        name = SyntheticFlow.name(size / 2);
+    }
+
+    @Benchmark
+    public ProcessorEntity findProcByComponentName() {
+        return UpdateProcessorService.findProcByComponentName(processors, name);
+    }
+
+    @Benchmark
+    public ProcessorEntity linearFindProcByComponentName() {
+        return processors.stream()
+                .filter(item -> item.getComponent().getName().trim().equals(name.trim()))
+                .findFirst().orElseThrow(() -> new ConfigException(("cannot find " + name)));
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.swagger.client.model.FlowDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.PositionDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * reorder, getNextPosition and findByComponentName on a group of 100, 10k and 100k components.
+ * linearFindByComponentName is the reference : the lookup of findByComponentName before the name index (commit 06b8d2b)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProcessGroupServiceBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private final ProcessGroupService processGroupService = new ProcessGroupService();
+
+    private ProcessGroupFlowEntity flowEntity;
+
+    private List<ProcessGroupEntity> groups;
+
+    private String name;
+
+    @Setup
+    public void setup() {
+        flowEntity = TestUtils.createProcessGroupFlowEntity("root", "root");
+        FlowDTO flow = SyntheticFlow.flow(size);
+        flowEntity.getProcessGroupFlow().setFlow(flow);
+        groups = new ArrayList<>();
+        for (ProcessorEntity processor : flow.getProcessors()) {
+            groups.add(TestUtils.createProcessGroupEntity(processor.getId(), processor.getComponent().getName()));
+        }
+        name = SyntheticFlow.name(size / 2);
+    }
+
+    @Benchmark
+    public List<Set<?>> reorder() {
+        return processGroupService.reorder(flowEntity.getProcessGroupFlow().getFlow());
+    }
+
+    /**
+     * the processors fill the grid : the worst case
+     */
+    @Benchmark
+    public PositionDTO getNextPosition() {
+        return processGroupService.getNextPosition(flowEntity);
+    }
+
+    @Benchmark
+    public Optional<ProcessGroupEntity> findByComponentName() {
+        return ProcessGroupService.findByComponentName(groups, name);
+    }
+
+    @Benchmark
+    public Optional<ProcessGroupEntity> linearFindByComponentName() {
+        return groups.stream()
+                .filter(item -> item.getComponent().getName().trim().equals(name.trim()))
+                .findFirst();
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * synthetic flows for the benchmarks : chains of 10 processors (one chain out of 50 loop on itself),
+ * placed on the grid used by getNextPosition, each processor with some properties and relationships.
+ */
+public class SyntheticFlow {
+
+    public static final int CHAIN = 10;
+
+    public static final int LOOP = 50;
+
+    public static final int GROUP = 100;
+
+    /**
+     * @param size number of processors
+     * @return the flow, the same for the same size
+     */
+    public static FlowDTO flow(int size) {
+        Random random = new Random(size);
+        FlowDTO flow = new FlowDTO();
+        for (int i = 0; i < size; i++) {
+            ProcessorEntity processor = TestUtils.createProcessorEntity(new UUID(random.nextLong(), random.nextLong()).toString(), name(i));
+            processor.getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+            processor.getComponent().setConfig(config(i));
+            processor.getComponent().setRelationships(relationships());
+            PositionDTO position = new PositionDTO();
+            position.setX((i % 3) * 400d);
+            position.setY((i / 3) * 200d);
+            processor.setPosition(position);
+            flow.getProcessors().add(processor);
+            if (i % CHAIN != 0) {
+                flow.getConnections().add(TestUtils.createConnectionEntity(new UUID(random.nextLong(), random.nextLong()).toString(),
+                        flow.getProcessors().get(i - 1).getId(), processor.getId()));
+            }
+            if (i % CHAIN == CHAIN - 1 && (i / CHAIN) % LOOP == 0) {
+                flow.getConnections().add(TestUtils.createConnectionEntity(new UUID(random.nextLong(), random.nextLong()).toString(),
+                        processor.getId(), flow.getProcessors().get(i - CHAIN + 1).getId()));
+            }
+        }
+        return flow;
+    }
+
+    /**
+     * @param size number of processors
+     * @return the configuration of the processors as extracted, by groups of 100 processors
+     */
+    public static GroupProcessorsEntity configuration(int size) {
+        GroupProcessorsEntity root = new GroupProcessorsEntity();
+        root.setName("root");
+        GroupProcessorsEntity group = null;
+        for (int i = 0; i < size; i++) {
+            if (i % GROUP == 0) {
+                group = new GroupProcessorsEntity();
+                group.setName("group" + (i / GROUP));
+                root.getGroupProcessorsEntity().add(group);
+            }
+            ProcessorDTO processor = new ProcessorDTO();
+            processor.setName(name(i));
+            processor.setConfig(config(i));
+            processor.getConfig().setDescriptors(null);
+            group.getProcessors().add(processor);
+        }
+        return root;
+    }
+
+    /**
+     * @param size number of processors
+     * @return the flows by id of a branch (id "branch") with the processors on sub groups of 100 processors, as
+     * described by {@link #configuration(int)}
+     */
+    public static Map<String, ProcessGroupFlowEntity> branch(int size) {
+        Map<String, ProcessGroupFlowEntity> flows = new HashMap<>();
+        ProcessGroupFlowEntity branch = TestUtils.createProcessGroupFlowEntity("branch", "branch");
+        flows.put("branch", branch);
+        ProcessGroupFlowEntity group = null;
+        for (int i = 0; i < size; i++) {
+            if (i % GROUP == 0) {
+                String id = new UUID(i / GROUP, 0).toString();
+                branch.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity(id, "group" + (i / GROUP)));
+                group = TestUtils.createProcessGroupFlowEntity(id, "group" + (i / GROUP));
+                flows.put(id, group);
+            }
+            ProcessorEntity processor = TestUtils.createProcessorEntity(new UUID(i / GROUP, i + 1).toString(), name(i));
+            processor.getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+            processor.getComponent().setConfig(config(i));
+            processor.getComponent().setRelationships(relationships());
+            group.getProcessGroupFlow().getFlow().getProcessors().add(processor);
+        }
+        return flows;
+    }
+
+    /**
+     * @param size number of processors
+     * @return the processors as read on nifi (with descriptors and relationships)
+     */
+    public static List<ProcessorDTO> processors(int size) {
+        List<ProcessorDTO> processors = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ProcessorDTO processor = new ProcessorDTO();
+            processor.setName(name(i));
+            processor.setConfig(config(i));
+            processor.setRelationships(relationships());
+            processor.setState(ProcessorDTO.StateEnum.RUNNING);
+            processors.add(processor);
+        }
+        return processors;
+    }
+
+    public static String name(int i) {
+        return "processor " + i;
+    }
+
+    private static ProcessorConfigDTO config(int i) {
+        ProcessorConfigDTO config = new ProcessorConfigDTO();
+        config.setSchedulingPeriod("0 sec");
+        config.setConcurrentlySchedulableTaskCount(1);
+        for (int p = 0; p < 5; p++) {
+            config.getProperties().put("property " + p, "value " + p + " of " + i);
+            PropertyDescriptorDTO descriptor = new PropertyDescriptorDTO();
+            descriptor.setName("property " + p);
+            if (p == 0) {
+                descriptor.setIdentifiesControllerService("org.apache.nifi.ssl.SSLContextService");
+            }
+            config.getDescriptors().put("property " + p, descriptor);
+        }
+        return config;
+    }
+
+    private static List<RelationshipDTO> relationships() {
+        List<RelationshipDTO> relationships = new ArrayList<>();
+        for (String name : new String[]{"success", "failure"}) {
+            RelationshipDTO relationship = new RelationshipDTO();
+            relationship.setName(name);
+            relationship.setAutoTerminate("failure".equals(name));
+            relationships.add(relationship);
+        }
+        return relationships;
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.github.hermannpencole.nifi.swagger.client.ProcessorsApi;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServicesEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
+import com.google.gson.Gson;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.name.Names;
+import com.google.inject.util.Providers;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * updateByBranch with the option noStartProcessors on a branch of 100, 10k and 100k processors on sub groups of 100
+ * processors (see {@link SyntheticFlow#branch(int)}), the apis of nifi and the stop are mocked : the check and the
+ * update read the configuration, find each group (readGroup) and each processor (updateComponent) by name and
+ * compare them. The configuration change one processor out of 10.
+ * The update modify the flows, then they are created again before each call (not measured).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UpdateProcessorServiceBenchmark {
+
+    private static final List<String> BRANCH = Arrays.asList("root", "branch");
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private UpdateProcessorService updateProcessorService;
+
+    private File configuration;
+
+    private Map<String, ProcessGroupFlowEntity> flows;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        //the update log each processor
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+        GroupProcessorsEntity root = SyntheticFlow.configuration(size);
+        int i = 0;
+        for (GroupProcessorsEntity group : root.getGroupProcessorsEntity()) {
+            for (ProcessorDTO processor : group.getProcessors()) {
+                if (i++ % 10 == 0) {
+                    processor.getConfig().getProperties().put("property 1", "changed");
+                }
+            }
+        }
+        configuration = File.createTempFile("configuration-" + size, ".json");
+        configuration.deleteOnExit();
+        try (Writer writer = new FileWriter(configuration)) {
+            new Gson().toJson(root, writer);
+        }
+
+        //the mocks only answer (no record of the calls), they are bound by provider for not inject their fields
+        ProcessGroupService processGroupService = mock(ProcessGroupService.class, withSettings().stubOnly());
+        when(processGroupService.changeDirectory(any())).thenAnswer(invocation -> Optional.of(flows.get("branch")));
+        ProcessGroupFlowCache flowCache = mock(ProcessGroupFlowCache.class, withSettings().stubOnly());
+        when(flowCache.getFlow(anyString())).thenAnswer(invocation -> flows.get(invocation.getArguments()[0]));
+        FlowApi flowApi = mock(FlowApi.class, withSettings().stubOnly());
+        when(flowApi.generateClientId()).thenReturn("clientId");
+        when(flowApi.getControllerServicesFromGroup(anyString())).thenReturn(new ControllerServicesEntity());
+        ProcessorsApi processorsApi = mock(ProcessorsApi.class, withSettings().stubOnly());
+        when(processorsApi.updateProcessor(anyString(), any())).thenAnswer(invocation -> invocation.getArguments()[1]);
+        ControllerServicesService controllerServicesService = mock(ControllerServicesService.class, withSettings().stubOnly());
+
+        updateProcessorService = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(ProcessGroupService.class).toProvider(Providers.of(processGroupService));
+                bind(ProcessGroupFlowCache.class).toProvider(Providers.of(flowCache));
+                bind(FlowApi.class).toProvider(Providers.of(flowApi));
+                bind(ProcessorsApi.class).toProvider(Providers.of(processorsApi));
+                bind(ControllerServicesService.class).toProvider(Providers.of(controllerServicesService));
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
+            }
+        }).getInstance(UpdateProcessorService.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void createFlows() {
+        flows = SyntheticFlow.branch(size);
+    }
+
+    @Benchmark
+    public void updateByBranch() throws IOException {
+        updateProcessorService.updateByBranch(BRANCH, configuration.getPath(), true);
+    }
+}
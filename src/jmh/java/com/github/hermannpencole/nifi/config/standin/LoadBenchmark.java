@@ -0,0 +1,120 @@
+package com.github.hermannpencole.nifi.config.standin;
+
+import com.github.hermannpencole.nifi.config.Main;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the modes end to end (Main) on the stand-in of nifi, on a synthetic flow of 100, 1k and 10k processors
+ * (see {@link NifiStandIn#createFlow(String, int)}) created again before each call (not measured) :
+ * <ul>
+ * <li>updateConfig : the configuration change one processor out of 10 and the controller service</li>
+ * <li>extractConfig</li>
+ * <li>deployTemplate : a template of the same size on a new group</li>
+ * <li>undeploy : stop the flow (drain the queues) and remove it</li>
+ * </ul>
+ * The calls to nifi by endpoint (report of the option -metrics) of the last call of each mode are written on
+ * target/load/(mode)-(size)-(latency)-(parallelism).json.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class LoadBenchmark {
+
+    private static final String BRANCH = "root > load";
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    /**
+     * latency of nifi by request, in millisecond
+     */
+    @Param({"0", "5"})
+    public long latency;
+
+    @Param({"1"})
+    public int parallelism;
+
+    private NifiStandIn nifi;
+
+    private File directory;
+
+    private File configuration;
+
+    private File template;
+
+    private File extract;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        //the modes log each processor
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+        nifi = new NifiStandIn();
+        nifi.setLatency(latency);
+        nifi.setStateDelay(10);
+        nifi.setDrainDelay(10);
+        directory = new File("target/load");
+        directory.mkdirs();
+        configuration = new File(directory, "configuration-" + size + ".json");
+        extract = new File(directory, "extract-" + size + ".json");
+        template = new File(directory, "template-" + size + ".xml");
+        try (Writer writer = new FileWriter(template)) {
+            writer.write(NifiStandIn.template("load template", size));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createFlow() throws IOException {
+        nifi.reset();
+        String groupId = nifi.createFlow("load", size);
+        try (Writer writer = new FileWriter(configuration)) {
+            new Gson().toJson(nifi.configuration(groupId, 10), writer);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        nifi.close();
+    }
+
+    @Benchmark
+    public void updateConfig() throws Exception {
+        run("updateConfig", BRANCH, configuration);
+    }
+
+    @Benchmark
+    public void extractConfig() throws Exception {
+        run("extractConfig", BRANCH, extract);
+    }
+
+    @Benchmark
+    public void deployTemplate() throws Exception {
+        run("deployTemplate", "root > template", template);
+    }
+
+    @Benchmark
+    public void undeploy() throws Exception {
+        run("undeploy", BRANCH, null);
+    }
+
+    private void run(String mode, String branch, File file) throws Exception {
+        File metrics = new File(directory, mode + "-" + size + "-" + latency + "-" + parallelism + ".json");
+        if (file == null) {
+            Main.main(new String[]{"-nifi", nifi.getBasePath(), "-branch", branch, "-m", mode,
+                    "-parallelism", String.valueOf(parallelism), "-pollInitialDelay", "10", "-metrics", metrics.getPath()});
+        } else {
+            Main.main(new String[]{"-nifi", nifi.getBasePath(), "-branch", branch, "-m", mode, "-conf", file.getPath(),
+                    "-parallelism", String.valueOf(parallelism), "-pollInitialDelay", "10", "-metrics", metrics.getPath()});
+        }
+    }
+}
@@ -2,6 +2,9 @@ package com.github.hermannpencole.nifi.config;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.service.*;
+import com.github.hermannpencole.nifi.config.utils.ApiMetrics;
+import com.github.hermannpencole.nifi.config.utils.PollPolicy;
+import com.github.hermannpencole.nifi.config.utils.Trace;
 import com.github.hermannpencole.nifi.swagger.ApiClient;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.Configuration;
@@ -9,12 +12,17 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.name.Names;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
 import org.apache.commons.cli.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -60,7 +68,11 @@ public class Main {
             options.addOption("password", true, "password for access via username/password, then user is mandatory");
             options.addOption("f", "force", false, "turn on force mode : empty queue after timeout");
             options.addOption("timeout", true, "allows specifying the polling timeout in second (defaut 120 seconds); negative values indicate no timeout");
-            options.addOption("interval", true, "allows specifying the polling interval in second (default 2 seconds)");
+            options.addOption("interval", true, "allows specifying a fixed polling interval in second, instead of the adaptive polling (pollInitialDelay, pollMultiplier, pollMaxDelay, pollJitter)");
+            options.addOption("pollInitialDelay", true, "polling interval in millisecond after the first call, growing until pollMaxDelay (default 100)");
+            options.addOption("pollMaxDelay", true, "max polling interval in millisecond (default 2000)");
+            options.addOption("pollMultiplier", true, "growth of the polling interval after each call (default 2)");
+            options.addOption("pollJitter", true, "random part of the polling interval, between 0 and 1 (default 0.2)");
             options.addOption("accessFromTicket", false, "Access via Kerberos ticket exchange / SPNEGO negotiation");
             options.addOption("noVerifySsl", false, "turn off ssl verification certificat");
             options.addOption("noStartProcessors", false, "turn off auto start of the processors after update of the config");
@@ -68,6 +80,13 @@ public class Main {
             options.addOption("connectionTimeout", true, "configure api client connection timeout (default 10 seconds)");
             options.addOption("readTimeout", true, "configure api client read timeout (default 10 seconds)");
             options.addOption("writeTimeout", true, "configure api client write timeout (default 10 seconds)");
+            options.addOption("parallelism", true, "number of concurrent requests sent to nifi (default 1 : sequential)");
+            options.addOption("maxIdleConnections", true, "number of idle http connections kept open to nifi (default max(5, parallelism))");
+            options.addOption("keepAlive", true, "time in second an idle http connection is kept open (default 300 seconds)");
+            options.addOption("noGzip", false, "turn off the compression of the responses of nifi");
+            options.addOption("metrics", true, "write at the end a report (json) of the calls to nifi by endpoint on this file : number of calls, latencies (p50/p95/max), bytes received on the network and errors (no report without this option)");
+            options.addOption("trace", true, "write at the end the timeline of the phases (spans by thread) on this file, on the chrome trace event format (chrome://tracing)");
+            options.addOption("scopedStop", false, "with updateConfig, stop and restart only the processors that change (and their cycles) instead of the entire branch");
 
             // parse the command line arguments
             CommandLine cmd = commandLineParser.parse(options, args);
@@ -87,11 +106,19 @@ public class Main {
             } else {
                 //configure options
                 Integer timeout = cmd.hasOption("timeout") ? Integer.valueOf(cmd.getOptionValue("timeout")) :120;
-                Integer interval = cmd.hasOption("interval") ? Integer.valueOf(cmd.getOptionValue("interval")) :2;
+                Long pollInitialDelay = cmd.hasOption("pollInitialDelay") ? Long.valueOf(cmd.getOptionValue("pollInitialDelay")) :100;
+                Long pollMaxDelay = cmd.hasOption("pollMaxDelay") ? Long.valueOf(cmd.getOptionValue("pollMaxDelay")) :2000;
+                Double pollMultiplier = cmd.hasOption("pollMultiplier") ? Double.valueOf(cmd.getOptionValue("pollMultiplier")) :2;
+                Double pollJitter = cmd.hasOption("pollJitter") ? Double.valueOf(cmd.getOptionValue("pollJitter")) :0.2;
                 Integer connectionTimeout = cmd.hasOption("connectionTimeout") ? Integer.valueOf(cmd.getOptionValue("connectionTimeout")) :10000;
                 Integer readTimeout = cmd.hasOption("readTimeout") ? Integer.valueOf(cmd.getOptionValue("readTimeout")) :10000;
                 Integer writeTimeout = cmd.hasOption("writeTimeout") ? Integer.valueOf(cmd.getOptionValue("writeTimeout")) :10000;
+                Integer parallelism = cmd.hasOption("parallelism") ? Integer.valueOf(cmd.getOptionValue("parallelism")) :1;
+                Integer maxIdleConnections = cmd.hasOption("maxIdleConnections") ? Integer.valueOf(cmd.getOptionValue("maxIdleConnections")) :Math.max(5, parallelism);
+                Integer keepAlive = cmd.hasOption("keepAlive") ? Integer.valueOf(cmd.getOptionValue("keepAlive")) :300;
                 Boolean forceMode = cmd.hasOption("force");
+                PollPolicy pollPolicy = cmd.hasOption("interval") ? PollPolicy.fixed(Integer.valueOf(cmd.getOptionValue("interval")))
+                        : new PollPolicy(Math.min(pollInitialDelay, pollMaxDelay), pollMultiplier, pollMaxDelay, pollJitter);
 
                 LOG.info(String.format("Starting config_nifi %s on mode %s", version, cmd.getOptionValue("m")) );
                 String addressNifi = cmd.getOptionValue("n");
@@ -107,40 +134,56 @@ public class Main {
                 }
 
                 setConfiguration(addressNifi, !cmd.hasOption("noVerifySsl"), cmd.hasOption("enableDebugMode"), connectionTimeout, readTimeout, writeTimeout);
+                setHttpConfiguration(maxIdleConnections, keepAlive, !cmd.hasOption("noGzip"));
+                ApiMetrics metrics = cmd.hasOption("metrics") ? ApiMetrics.register(Configuration.getDefaultApiClient().getHttpClient(), addressNifi) : null;
+                if (cmd.hasOption("trace")) {
+                    Trace.enable();
+                }
                 Injector injector = Guice.createInjector(new AbstractModule() {
                     protected void configure() {
                         bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(timeout);
-                        bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(interval);
+                        bind(PollPolicy.class).toInstance(pollPolicy);
+                        bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(parallelism);
                         bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(forceMode);
+                        bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(cmd.hasOption("scopedStop"));
                     }
                 });
 
-                //start
-                AccessService accessService = injector.getInstance(AccessService.class);
-                accessService.addTokenOnConfiguration(cmd.hasOption("accessFromTicket"), cmd.getOptionValue("user"), cmd.getOptionValue("password"));
-
-                InformationService infoService = injector.getInstance(InformationService.class);
-                String nifiVersion =  infoService.getVersion();
-                LOG.info(String.format("Communicate with nifi %s", nifiVersion));
-
-                if ("updateConfig".equals(cmd.getOptionValue("m"))) {
-                    //Get an instance of the bean from the context
-                    UpdateProcessorService processorService = injector.getInstance(UpdateProcessorService.class);
-                    processorService.updateByBranch(branchList, fileConfiguration, cmd.hasOption("noStartProcessors"));
-                    LOG.info("The group configuration {} is updated with the file {}.", branch, fileConfiguration);
-                } else if ("extractConfig".equals(cmd.getOptionValue("m"))) {
-                    //Get an instance of the bean from the context
-                    ExtractProcessorService processorService = injector.getInstance(ExtractProcessorService.class);
-                    processorService.extractByBranch(branchList, fileConfiguration);
-                    LOG.info("The group configuration {} is extrated on file {}", branch, fileConfiguration);
-                } else if ("deployTemplate".equals(cmd.getOptionValue("m"))) {
-                    TemplateService templateService = injector.getInstance(TemplateService.class);
-                    templateService.installOnBranch(branchList, fileConfiguration);
-                    LOG.info("Template {} is installed on the group {}", fileConfiguration, branch);
-                } else {
-                    TemplateService templateService = injector.getInstance(TemplateService.class);
-                    templateService.undeploy(branchList);
-                    LOG.info("The group {} is deleted", branch);
+                try {
+                    //start
+                    AccessService accessService = injector.getInstance(AccessService.class);
+                    accessService.addTokenOnConfiguration(cmd.hasOption("accessFromTicket"), cmd.getOptionValue("user"), cmd.getOptionValue("password"));
+
+                    InformationService infoService = injector.getInstance(InformationService.class);
+                    String nifiVersion =  infoService.getVersion();
+                    LOG.info(String.format("Communicate with nifi %s", nifiVersion));
+
+                    if ("updateConfig".equals(cmd.getOptionValue("m"))) {
+                        //Get an instance of the bean from the context
+                        UpdateProcessorService processorService = injector.getInstance(UpdateProcessorService.class);
+                        processorService.updateByBranch(branchList, fileConfiguration, cmd.hasOption("noStartProcessors"));
+                        LOG.info("The group configuration {} is updated with the file {}.", branch, fileConfiguration);
+                    } else if ("extractConfig".equals(cmd.getOptionValue("m"))) {
+                        //Get an instance of the bean from the context
+                        ExtractProcessorService processorService = injector.getInstance(ExtractProcessorService.class);
+                        processorService.extractByBranch(branchList, fileConfiguration);
+                        LOG.info("The group configuration {} is extrated on file {}", branch, fileConfiguration);
+                    } else if ("deployTemplate".equals(cmd.getOptionValue("m"))) {
+                        TemplateService templateService = injector.getInstance(TemplateService.class);
+                        templateService.installOnBranch(branchList, fileConfiguration);
+                        LOG.info("Template {} is installed on the group {}", fileConfiguration, branch);
+                    } else {
+                        TemplateService templateService = injector.getInstance(TemplateService.class);
+                        templateService.undeploy(branchList);
+                        LOG.info("The group {} is deleted", branch);
+                    }
+                } finally {
+                    if (metrics != null) {
+                        writeMetrics(metrics, new File(cmd.getOptionValue("metrics")));
+                    }
+                    if (cmd.hasOption("trace")) {
+                        writeTrace(new File(cmd.getOptionValue("trace")));
+                    }
                 }
             }
         } catch (ApiException e) {
@@ -150,6 +193,37 @@ public class Main {
     }
 
 
+    /**
+     * write the report of the metrics, an error is only logged for not hide the result of the mode.
+     *
+     * @param metrics
+     * @param file
+     */
+    private static void writeMetrics(ApiMetrics metrics, File file) {
+        try {
+            metrics.writeReport(file);
+            LOG.info("The report of the calls to nifi is written on the file {}", file);
+        } catch (IOException e) {
+            LOG.error("cannot write the report of the calls to nifi on the file " + file, e);
+        }
+    }
+
+    /**
+     * write the timeline of the phases and stop the recording, an error is only logged for not hide the result of the mode.
+     *
+     * @param file
+     */
+    private static void writeTrace(File file) {
+        try {
+            Trace.write(file);
+            LOG.info("The timeline of the phases is written on the file {}", file);
+        } catch (IOException e) {
+            LOG.error("cannot write the timeline of the phases on the file " + file, e);
+        } finally {
+            Trace.disable();
+        }
+    }
+
     public static void setConfiguration(String basePath, boolean verifySsl, boolean debugging,
                                         int connectionTimeout, int readTimeout, int writeTimeout) throws ApiException {
         ApiClient client = new ApiClient()
@@ -161,4 +235,23 @@ public class Main {
                 .setDebugging(debugging);
         Configuration.setDefaultApiClient(client);
     }
+
+    /**
+     * configure the http client of the default api client (set by setConfiguration).
+     * The api calls are synchronous : the number of concurrent requests is bounded by the parallelism, the
+     * connection pool limit the reuse of the connections between the threads of the parallel runner.
+     *
+     * @param maxIdleConnections number of idle connections kept open
+     * @param keepAlive          time in second an idle connection is kept open
+     * @param gzip               ask nifi to compress the responses
+     */
+    public static void setHttpConfiguration(int maxIdleConnections, int keepAlive, boolean gzip) {
+        ApiClient client = Configuration.getDefaultApiClient();
+        OkHttpClient httpClient = client.getHttpClient();
+        httpClient.setConnectionPool(new ConnectionPool(maxIdleConnections, keepAlive, TimeUnit.SECONDS));
+        //okhttp ask and decompress gzip transparently, unless the request give its own Accept-Encoding
+        if (!gzip) {
+            client.addDefaultHeader("Accept-Encoding", "identity");
+        }
+    }
 }
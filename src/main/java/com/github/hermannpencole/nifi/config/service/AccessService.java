@@ -1,5 +1,6 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.utils.Trace;
 import com.github.hermannpencole.nifi.swagger.ApiClient;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.Configuration;
@@ -28,14 +29,16 @@ public class AccessService {
      * @throws ApiException
      */
     public void addTokenOnConfiguration(boolean accessFromTicket, String username, String password) throws ApiException {
-        ApiClient client = Configuration.getDefaultApiClient();
-        if (accessFromTicket) {
-            String token = apiInstance.createAccessTokenFromTicket();
-            client.setAccessToken(token);
-        } else if (username != null) {
-            String token = apiInstance.createAccessToken(username, password);
-            client.setAccessToken(token);
-        }
-        Configuration.setDefaultApiClient(client);
+        Trace.run(Trace.span("AccessService.addTokenOnConfiguration", "ticket", accessFromTicket), () -> {
+            ApiClient client = Configuration.getDefaultApiClient();
+            if (accessFromTicket) {
+                String token = apiInstance.createAccessTokenFromTicket();
+                client.setAccessToken(token);
+            } else if (username != null) {
+                String token = apiInstance.createAccessToken(username, password);
+                client.setAccessToken(token);
+            }
+            Configuration.setDefaultApiClient(client);
+        });
     }
 }
@@ -2,17 +2,29 @@ package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.TimeoutException;
 import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
+import com.github.hermannpencole.nifi.config.utils.PollPolicy;
+import com.github.hermannpencole.nifi.config.utils.Trace;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.ConnectionsApi;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.FlowfileQueuesApi;
 import com.github.hermannpencole.nifi.swagger.client.model.ConnectionEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ConnectionStatusSnapshotDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ConnectionStatusSnapshotEntity;
 import com.github.hermannpencole.nifi.swagger.client.model.DropRequestEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupStatusSnapshotDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class that offer service for process group
@@ -32,9 +44,8 @@ public class ConnectionService {
     @Inject
     public Integer timeout;
 
-    @Named("interval")
     @Inject
-    public Integer interval;
+    public PollPolicy pollPolicy = new PollPolicy();
 
     @Named("forceMode")
     @Inject
@@ -46,29 +57,121 @@ public class ConnectionService {
     @Inject
     private FlowfileQueuesApi flowfileQueuesApi;
 
+    @Inject
+    private FlowApi flowapi;
+
     public void waitEmptyQueue(ConnectionEntity connectionEntity) throws ApiException {
+        Trace.Span span = Trace.span("ConnectionService.waitEmptyQueue", "connection", connectionEntity.getId());
+        try {
+            FunctionUtils.runWhile(() -> !isEmptyQueue(connectionEntity.getId()), pollPolicy, timeout);
+        } catch (TimeoutException e) {
+            //empty queue if forced mode
+            if (forceMode) {
+                dropQueue(connectionEntity.getId());
+            } else {
+                LOG.error(e.getMessage(),e);
+                throw e;
+            }
+        } finally {
+            span.close();
+        }
+
+    }
+
+    /**
+     * wait the queues of the connections of a group to be empty, with one request on the status of the group by tick
+     * (instead of one request by connection).
+     * Each connection is released as soon as its queue is empty. A connection without status on the group is asked
+     * alone (as {@link #waitEmptyQueue(ConnectionEntity)} do).
+     *
+     * @param processGroupId
+     * @param connections
+     * @throws ApiException
+     */
+    public void waitEmptyQueues(String processGroupId, Collection<ConnectionEntity> connections) throws ApiException {
+        //the ticks run on the poll threads and a tick can still run when the timeout is thrown, then the set must be thread safe
+        Set<String> waiting = ConcurrentHashMap.newKeySet();
+        for (ConnectionEntity connection : connections) {
+            waiting.add(connection.getId());
+        }
+        if (waiting.isEmpty()) {
+            return;
+        }
+        Trace.Span span = Trace.span("ConnectionService.waitEmptyQueues", "groupId", processGroupId, "connections", waiting.size());
         try {
             FunctionUtils.runWhile(() -> {
-                ConnectionEntity connection = connectionsApi.getConnection(connectionEntity.getId());
-                LOG.info(" {} : there is {} FlowFile ({} bytes) on the queue ", connection.getId(), connection.getStatus().getAggregateSnapshot().getQueuedCount(), connection.getStatus().getAggregateSnapshot().getQueuedSize());
-                return !connection.getStatus().getAggregateSnapshot().getQueuedCount().equals("0");
-            }, interval, timeout);
+                Map<String, ConnectionStatusSnapshotDTO> snapshots = getConnectionSnapshots(processGroupId);
+                waiting.removeIf(id -> {
+                    ConnectionStatusSnapshotDTO snapshot = snapshots.get(id);
+                    if (snapshot == null) {
+                        LOG.info(" {} : no status for this connection on the group {}", id, processGroupId);
+                        return isEmptyQueue(id);
+                    }
+                    LOG.info(" {} : there is {} FlowFile ({} bytes) on the queue ", id, snapshot.getQueuedCount(), snapshot.getQueuedSize());
+                    return snapshot.getQueuedCount().equals("0");
+                });
+                return !waiting.isEmpty();
+            }, pollPolicy, timeout);
         } catch (TimeoutException e) {
             //empty queue if forced mode
             if (forceMode) {
-                DropRequestEntity dropRequest= flowfileQueuesApi.createDropRequest(connectionEntity.getId());
-                FunctionUtils.runWhile(() -> {
-                    DropRequestEntity drop = flowfileQueuesApi.getDropRequest(connectionEntity.getId(), dropRequest.getDropRequest().getId());
-                    return !drop.getDropRequest().getFinished();
-                }, interval, timeout);
-                LOG.info(" {} : {} FlowFile ({} bytes) were removed from the queue", connectionEntity.getId(), dropRequest.getDropRequest().getCurrentCount(), dropRequest.getDropRequest().getCurrentSize());
-                flowfileQueuesApi.removeDropRequest(connectionEntity.getId(), dropRequest.getDropRequest().getId());
+                for (String id : waiting) {
+                    dropQueue(id);
+                }
             } else {
                 LOG.error(e.getMessage(),e);
                 throw e;
             }
+        } finally {
+            span.close();
         }
+    }
+
+    /**
+     * @param connectionId
+     * @return true if the queue of the connection is empty (one request on the connection)
+     * @throws ApiException
+     */
+    private boolean isEmptyQueue(String connectionId) throws ApiException {
+        ConnectionEntity connection = connectionsApi.getConnection(connectionId);
+        LOG.info(" {} : there is {} FlowFile ({} bytes) on the queue ", connection.getId(), connection.getStatus().getAggregateSnapshot().getQueuedCount(), connection.getStatus().getAggregateSnapshot().getQueuedSize());
+        return connection.getStatus().getAggregateSnapshot().getQueuedCount().equals("0");
+    }
 
+    /**
+     * the status of the connections of the group, by id of connection
+     *
+     * @param processGroupId
+     * @return
+     * @throws ApiException
+     */
+    private Map<String, ConnectionStatusSnapshotDTO> getConnectionSnapshots(String processGroupId) throws ApiException {
+        Map<String, ConnectionStatusSnapshotDTO> result = new HashMap<>();
+        ProcessGroupStatusSnapshotDTO snapshot = flowapi.getProcessGroupStatus(processGroupId, false, false, null)
+                .getProcessGroupStatus().getAggregateSnapshot();
+        List<ConnectionStatusSnapshotEntity> connections = snapshot.getConnectionStatusSnapshots();
+        if (connections != null) {
+            for (ConnectionStatusSnapshotEntity connection : connections) {
+                result.put(connection.getId(), connection.getConnectionStatusSnapshot());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * remove the flow files of the queue
+     *
+     * @param connectionId
+     * @throws ApiException
+     */
+    private void dropQueue(String connectionId) throws ApiException {
+        DropRequestEntity dropRequest= flowfileQueuesApi.createDropRequest(connectionId);
+        FunctionUtils.runWhile(() -> {
+            DropRequestEntity drop = flowfileQueuesApi.getDropRequest(connectionId, dropRequest.getDropRequest().getId());
+            return !drop.getDropRequest().getFinished();
+        }, pollPolicy, timeout);
+        LOG.info(" {} : {} FlowFile ({} bytes) were removed from the queue", connectionId, dropRequest.getDropRequest().getCurrentCount(), dropRequest.getDropRequest().getCurrentSize());
+        flowfileQueuesApi.removeDropRequest(connectionId, dropRequest.getDropRequest().getId());
     }
 
 }
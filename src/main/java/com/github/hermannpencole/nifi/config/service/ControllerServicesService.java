@@ -1,8 +1,13 @@
 package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
+import com.github.hermannpencole.nifi.config.utils.GraphUtils;
+import com.github.hermannpencole.nifi.config.utils.ParallelRunner;
+import com.github.hermannpencole.nifi.config.utils.PollPolicy;
+import com.github.hermannpencole.nifi.config.utils.Trace;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.ControllerServicesApi;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessorsApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
 import org.slf4j.Logger;
@@ -11,6 +16,18 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * Class that offer service for nifi processor
@@ -29,13 +46,15 @@ public class ControllerServicesService {
     @Inject
     public Integer timeout;
 
-    @Named("interval")
     @Inject
-    public Integer interval;
+    public PollPolicy pollPolicy = new PollPolicy();
 
     @Inject
     private ControllerServicesApi controllerServicesApi;
 
+    @Inject
+    private FlowApi flowapi;
+
     /**
      * disable, update and re enable the controller
      *
@@ -46,21 +65,210 @@ public class ControllerServicesService {
      * @throws InterruptedException
      */
     public ControllerServiceEntity updateControllerService(ControllerServiceDTO controllerServiceDTO, ControllerServiceEntity controllerServiceEntity) throws ApiException {
-        //Disabling this controller service
-        ControllerServiceEntity controllerServiceEntityUpdate = setStateControllerService(controllerServiceEntity, ControllerServiceDTO.StateEnum.DISABLED);
+        return Trace.call(Trace.span("ControllerServicesService.updateControllerService", "controllerService", controllerServiceEntity.getComponent().getName()), () -> {
+            //Disabling this controller service
+            ControllerServiceEntity controllerServiceEntityUpdate = setStateControllerService(controllerServiceEntity, ControllerServiceDTO.StateEnum.DISABLED);
+
+            //update processor
+            controllerServiceEntityUpdate = updateDisabledControllerService(controllerServiceDTO, controllerServiceEntityUpdate);
+
+            //Disabling this controller service
+            controllerServiceEntityUpdate = setStateControllerService(controllerServiceEntityUpdate, ControllerServiceDTO.StateEnum.ENABLED);
+
+            return controllerServiceEntityUpdate;
+        });
+    }
+
+    /**
+     * update several controller services together. The services updated and the enabled services that use them
+     * (directly or not) are disabled by waves : the services that use an other service before it. Then all the services
+     * are updated, and enabled by waves on the reverse order (the services used before the services that use them).
+     * The services of a wave are handled concurrently on the runner.
+     * <p>
+     * The processors that use these services must be stopped.
+     *
+     * @param controllerServices     the controller services to update with their configuration, by id
+     * @param controllerServicesKnown the controller services already read (the others are read when needed)
+     * @param runner
+     * @throws ApiException
+     */
+    public void updateControllerServices(Map<String, ControllerServiceDTO> controllerServices, Collection<ControllerServiceEntity> controllerServicesKnown,
+                                         ParallelRunner runner) throws ApiException {
+        if (controllerServices.isEmpty()) {
+            return;
+        }
+        Map<String, ControllerServiceEntity> current = new ConcurrentHashMap<>();
+        for (ControllerServiceEntity controllerService : controllerServicesKnown) {
+            current.put(controllerService.getId(), controllerService);
+        }
+
+        //the services updated and the services that use them
+        Set<String> services = new LinkedHashSet<>();
+        List<String[]> references = new ArrayList<>();
+        Deque<String> toVisit = new ArrayDeque<>(controllerServices.keySet());
+        while (!toVisit.isEmpty()) {
+            String id = toVisit.poll();
+            if (!services.add(id)) {
+                continue;
+            }
+            ControllerServiceEntity controllerService = current.computeIfAbsent(id, controllerServicesApi::getControllerService);
+            for (String referencing : referencingControllerServices(controllerService.getComponent().getReferencingComponents(), new LinkedHashSet<>())) {
+                references.add(new String[]{id, referencing});
+                toVisit.add(referencing);
+            }
+        }
+        List<List<String>> waves = waves(services, references);
+
+        //only the services enabled are enabled again, the services updated are always enabled
+        Set<String> toEnable = new HashSet<>(controllerServices.keySet());
+        for (String id : services) {
+            ControllerServiceDTO.StateEnum state = current.get(id).getComponent().getState();
+            if (ControllerServiceDTO.StateEnum.ENABLED.equals(state) || ControllerServiceDTO.StateEnum.ENABLING.equals(state)) {
+                toEnable.add(id);
+            }
+        }
+        LOG.info("{} controller services to update, {} controller services to disable on {} waves", controllerServices.size(), services.size(), waves.size());
+
+        //the group of the services (for wait their state), the services updated by nifi don't always give it
+        Map<String, String> groups = new HashMap<>();
+        for (String id : services) {
+            groups.put(id, current.get(id).getComponent().getParentGroupId());
+        }
+
+        for (int i = waves.size() - 1; i >= 0; i--) {
+            List<String> toDisable = new ArrayList<>();
+            try (Trace.Span span = Trace.span("ControllerServicesService.disableWave", "wave", i)) {
+                for (String id : waves.get(i)) {
+                    if (!ControllerServiceDTO.StateEnum.DISABLED.equals(current.get(id).getComponent().getState())) {
+                        toDisable.add(id);
+                        runner.submit(() -> current.put(id, requestState(current.get(id), ControllerServiceDTO.StateEnum.DISABLED)));
+                    }
+                }
+                span.attribute("controllerServices", names(toDisable, current));
+                runner.await();
+                waitStates(toDisable, groups, ControllerServiceDTO.StateEnum.DISABLED);
+            }
+        }
+        Trace.run(Trace.span("ControllerServicesService.update", "controllerServices", names(controllerServices.keySet(), current)), () -> {
+            for (Map.Entry<String, ControllerServiceDTO> entry : controllerServices.entrySet()) {
+                runner.submit(() -> current.put(entry.getKey(), updateDisabledControllerService(entry.getValue(), current.get(entry.getKey()))));
+            }
+            runner.await();
+        });
+        for (int i = 0; i < waves.size(); i++) {
+            List<String> enabled = new ArrayList<>();
+            try (Trace.Span span = Trace.span("ControllerServicesService.enableWave", "wave", i)) {
+                for (String id : waves.get(i)) {
+                    if (toEnable.contains(id)) {
+                        enabled.add(id);
+                        runner.submit(() -> current.put(id, requestState(current.get(id), ControllerServiceDTO.StateEnum.ENABLED)));
+                    }
+                }
+                span.attribute("controllerServices", names(enabled, current));
+                runner.await();
+                waitStates(enabled, groups, ControllerServiceDTO.StateEnum.ENABLED);
+            }
+        }
+    }
+
+    /**
+     * @param ids
+     * @param controllerServices the controller services by id
+     * @return the names of the controller services (for the traces)
+     */
+    private static String names(Collection<String> ids, Map<String, ControllerServiceEntity> controllerServices) {
+        return ids.stream().map(id -> controllerServices.get(id).getComponent().getName()).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * wait several controller services to reach a state, with one request on the controller services of a group by tick
+     * (instead of one request by controller service). Each service is released as soon as it reach the state.
+     * The services without group are read alone.
+     *
+     * @param ids    the controller services to wait
+     * @param groups the group of each controller service
+     * @param state  the state to reach
+     * @throws ApiException
+     */
+    public void waitStates(Collection<String> ids, Map<String, String> groups, ControllerServiceDTO.StateEnum state) throws ApiException {
+        //the ticks of the polling run one after the other on the poll threads (see FunctionUtils.runWhileAsync) and only they use the set
+        Set<String> waiting = new HashSet<>(ids);
+        if (waiting.isEmpty()) {
+            return;
+        }
+        FunctionUtils.runWhile(() -> {
+            Map<String, ControllerServiceDTO.StateEnum> states = new HashMap<>();
+            Set<String> groupIds = new HashSet<>();
+            for (String id : waiting) {
+                String groupId = groups.get(id);
+                if (groupId != null && groupIds.add(groupId)) {
+                    for (ControllerServiceEntity controllerService : flowapi.getControllerServicesFromGroup(groupId).getControllerServices()) {
+                        states.put(controllerService.getId(), controllerService.getComponent().getState());
+                    }
+                }
+            }
+            waiting.removeIf(id -> {
+                ControllerServiceDTO.StateEnum current = states.containsKey(id) ? states.get(id)
+                        : controllerServicesApi.getControllerService(id).getComponent().getState();
+                LOG.info(id + " is " + current);
+                return state.equals(current);
+            });
+            return !waiting.isEmpty();
+        }, pollPolicy, timeout);
+    }
+
+    /**
+     * the waves of controller services : the services of a wave use only services of the previous waves
+     *
+     * @param services
+     * @param references {service used, service that use it}
+     * @return the waves
+     */
+    static List<List<String>> waves(Collection<String> services, Collection<String[]> references) {
+        GraphUtils.Levels<String> levels = GraphUtils.levels(services, references, reference -> reference[0], reference -> reference[1]);
+        List<List<String>> waves = new ArrayList<>();
+        for (int i = 0; i < levels.size(); i++) {
+            waves.add(new ArrayList<>());
+        }
+        for (String id : services) {
+            waves.get(levels.level(id)).add(id);
+        }
+        return waves;
+    }
+
+    /**
+     * @param referencingComponents
+     * @param result
+     * @return the ids of the controller services that use directly the controller service
+     */
+    private static Set<String> referencingControllerServices(Collection<ControllerServiceReferencingComponentEntity> referencingComponents, Set<String> result) {
+        if (referencingComponents != null) {
+            for (ControllerServiceReferencingComponentEntity referencingComponent : referencingComponents) {
+                if (referencingComponent.getComponent() != null
+                        && ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE.equals(referencingComponent.getComponent().getReferenceType())) {
+                    result.add(referencingComponent.getId());
+                }
+            }
+        }
+        return result;
+    }
 
-        //update processor
+    /**
+     * update the properties of a disabled controller service
+     *
+     * @param controllerServiceDTO component with properties to update
+     * @param controllerServiceEntity controllerService disabled with the last revision
+     * @return
+     * @throws ApiException
+     */
+    private ControllerServiceEntity updateDisabledControllerService(ControllerServiceDTO controllerServiceDTO, ControllerServiceEntity controllerServiceEntity) throws ApiException {
         ControllerServiceEntity controllerServiceEntityConf = new ControllerServiceEntity();
-        controllerServiceEntityConf.setRevision(controllerServiceEntityUpdate.getRevision());
+        controllerServiceEntityConf.setRevision(controllerServiceEntity.getRevision());
         controllerServiceEntityConf.setComponent(controllerServiceDTO);
         controllerServiceEntityConf.getComponent().setId(controllerServiceEntity.getId());
         controllerServiceEntityConf.getComponent().setRestricted(null);
-        controllerServiceEntityUpdate = controllerServicesApi.updateControllerService(controllerServiceEntityUpdate.getId(), controllerServiceEntityConf);
+        ControllerServiceEntity controllerServiceEntityUpdate = controllerServicesApi.updateControllerService(controllerServiceEntity.getId(), controllerServiceEntityConf);
         LOG.info(controllerServiceEntityUpdate.getId() + " is UPDATED");
-
-        //Disabling this controller service
-        controllerServiceEntityUpdate = setStateControllerService(controllerServiceEntityUpdate, ControllerServiceDTO.StateEnum.ENABLED);
-
         return controllerServiceEntityUpdate;
     }
 
@@ -73,6 +281,25 @@ public class ControllerServicesService {
      * @throws ApiException
      */
     public ControllerServiceEntity setStateControllerService(ControllerServiceEntity controllerServiceEntity, ControllerServiceDTO.StateEnum state) throws ApiException {
+        ControllerServiceEntity controllerServiceEntityUpdate = requestState(controllerServiceEntity, state);
+        //Wait disabled
+        FunctionUtils.runWhile(()-> {
+            ControllerServiceEntity controllerService = controllerServicesApi.getControllerService(controllerServiceEntity.getId());
+            LOG.info(controllerService.getId() + " is " + controllerService.getComponent().getState());
+            return !controllerService.getComponent().getState().equals(state);
+        }, pollPolicy, timeout);
+        return controllerServiceEntityUpdate;
+    }
+
+    /**
+     * ask nifi to change the state of the controller service, without wait the state
+     *
+     * @param controllerServiceEntity
+     * @param state
+     * @return
+     * @throws ApiException
+     */
+    private ControllerServiceEntity requestState(ControllerServiceEntity controllerServiceEntity, ControllerServiceDTO.StateEnum state) throws ApiException {
         //Disabling this controller service
         ControllerServiceEntity controllerServiceEntityEmpty = new ControllerServiceEntity();
         controllerServiceEntityEmpty.setRevision(controllerServiceEntity.getRevision());
@@ -85,14 +312,7 @@ public class ControllerServicesService {
         controllerServiceEntityEmpty.getComponent().setValidationErrors(null);
         controllerServiceEntityEmpty.getComponent().setPersistsState(null);
         controllerServiceEntityEmpty.getComponent().setRestricted(null);
-        ControllerServiceEntity controllerServiceEntityUpdate = controllerServicesApi.updateControllerService(controllerServiceEntity.getId(), controllerServiceEntityEmpty);
-        //Wait disabled
-        FunctionUtils.runWhile(()-> {
-            ControllerServiceEntity controllerService = controllerServicesApi.getControllerService(controllerServiceEntity.getId());
-            LOG.info(controllerService.getId() + " is " + controllerService.getComponent().getState());
-            return !controllerService.getComponent().getState().equals(state);
-        }, interval, timeout);
-        return controllerServiceEntityUpdate;
+        return controllerServicesApi.updateControllerService(controllerServiceEntity.getId(), controllerServiceEntityEmpty);
     }
 
     public ControllerServiceReferencingComponentsEntity setStateReferencingControllerServices(String id, UpdateControllerServiceReferenceRequestEntity.StateEnum state) throws ApiException {
@@ -122,7 +342,7 @@ public class ControllerServicesService {
                 }
             }
             return (controllerServiceEntity == null);
-        }, interval, timeout);
+        }, pollPolicy, timeout);
     }
 
 }
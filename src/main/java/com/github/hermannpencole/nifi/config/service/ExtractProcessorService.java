@@ -2,22 +2,28 @@ package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.config.utils.ParallelRunner;
+import com.github.hermannpencole.nifi.config.utils.Trace;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.ControllerApi;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.*;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Class that offer service for nifi processor
@@ -42,7 +48,13 @@ public class ExtractProcessorService {
     @Inject
     private FlowApi flowapi;
 
+    @Named("parallelism")
+    @Inject
+    public Integer parallelism = 1;
+
     /**
+     * extract the configuration of the branch in the file. The file is written while nifi is browsed, the flow
+     * of a group is released as soon as its sub groups are written (memory depend of the depth, not of the size).
      *
      * @param branch
      * @param fileConfiguration
@@ -55,52 +67,92 @@ public class ExtractProcessorService {
         ProcessGroupFlowEntity componentSearch = processGroupService.changeDirectory(branch)
                 .orElseThrow(() -> new ConfigException(("cannot find " + Arrays.toString(branch.toArray()))));
 
-        //add group processors and processors
-        GroupProcessorsEntity result = extractJsonFromComponent(componentSearch);
-
-        //add controllers
-        ControllerServicesEntity controllerServicesEntity = flowapi.getControllerServicesFromGroup(componentSearch.getProcessGroupFlow().getId());
-        if ( !controllerServicesEntity.getControllerServices().isEmpty() ) {
-            result.setControllerServicesDTO(new ArrayList<>());
-        }
-        for (ControllerServiceEntity controllerServiceEntity : controllerServicesEntity.getControllerServices()) {
-            result.getControllerServicesDTO().add(extractController(controllerServiceEntity));
-        }
-
         //convert to json
         Gson gson = new GsonBuilder().setPrettyPrinting().create();
         LOG.debug("saving in file {}", fileConfiguration);
-        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
-            gson.toJson(result, writer);
+        boolean written = false;
+        Trace.Span span = Trace.span("ExtractProcessorService.extractByBranch", "branch", String.join(" > ", branch));
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+             ParallelRunner runner = new ParallelRunner(parallelism)) {
+            JsonWriter jsonWriter = gson.newJsonWriter(writer);
+            jsonWriter.beginObject();
+            writeName(componentSearch, jsonWriter);
+            //add group processors and processors, the sub groups are fetched in advance
+            writeGroupContent(componentSearch, gson, jsonWriter, runner);
+
+            //add controllers
+            ControllerServicesEntity controllerServicesEntity = flowapi.getControllerServicesFromGroup(componentSearch.getProcessGroupFlow().getId());
+            if ( !controllerServicesEntity.getControllerServices().isEmpty() ) {
+                jsonWriter.name("controllerServices");
+                jsonWriter.beginArray();
+                for (ControllerServiceEntity controllerServiceEntity : controllerServicesEntity.getControllerServices()) {
+                    gson.toJson(extractController(controllerServiceEntity), ControllerServiceDTO.class, jsonWriter);
+                }
+                jsonWriter.endArray();
+            }
+            jsonWriter.endObject();
+            jsonWriter.flush();
+            written = true;
         } finally {
+            if (!written && file.isFile()) {
+                //don't let a truncated configuration
+                file.delete();
+            }
+            span.close();
             LOG.debug("extractByBranch end");
         }
     }
 
     /**
-     * extract from component
+     * write the processors and the sub groups of the component (the fields of {@link GroupProcessorsEntity} after
+     * the name and before controllerServices). The name of a group is written first, so updateConfig find the group
+     * before reading its processors (see {@link UpdateProcessorService}).
+     * The flow of the next sub groups (as many as the parallelism) are fetched while a sub group is written,
+     * so the order of the sub groups stay the order given by nifi
      *
      * @param idComponent
-     * @return
+     * @param gson
+     * @param jsonWriter
+     * @param runner
+     * @throws IOException
      * @throws ApiException
      */
-    private GroupProcessorsEntity extractJsonFromComponent(ProcessGroupFlowEntity idComponent) throws ApiException {
-        GroupProcessorsEntity result = new GroupProcessorsEntity();
-        ProcessGroupFlowDTO processGroupFlow = idComponent.getProcessGroupFlow();
-        result.setName(processGroupFlow.getBreadcrumb().getBreadcrumb().getName());
-        processGroupFlow.getFlow().getProcessors()
-                .forEach(processor -> result.getProcessors().add(extractProcessor(processor.getComponent())));
-        for (ProcessGroupEntity processGroups : processGroupFlow.getFlow().getProcessGroups()) {
-            result.getGroupProcessorsEntity().add(extractJsonFromComponent(flowapi.getFlow(processGroups.getId())));
+    private void writeGroupContent(ProcessGroupFlowEntity idComponent, Gson gson, JsonWriter jsonWriter, ParallelRunner runner) throws IOException, ApiException {
+        FlowDTO flow = idComponent.getProcessGroupFlow().getFlow();
+        if (!flow.getProcessors().isEmpty()) {
+            jsonWriter.name("processors");
+            jsonWriter.beginArray();
+            for (ProcessorEntity processor : flow.getProcessors()) {
+                gson.toJson(extractProcessor(processor.getComponent()), ProcessorDTO.class, jsonWriter);
+            }
+            jsonWriter.endArray();
         }
-        if (result.getGroupProcessorsEntity().isEmpty()) {
-            result.setGroupProcessorsEntity(null);
+        List<ProcessGroupEntity> processGroups = flow.getProcessGroups();
+        if (!processGroups.isEmpty()) {
+            jsonWriter.name("groupProcessorsEntity");
+            jsonWriter.beginArray();
+            Deque<Supplier<ProcessGroupFlowEntity>> window = new ArrayDeque<>();
+            int next = 0;
+            while (next < processGroups.size() || !window.isEmpty()) {
+                while (next < processGroups.size() && window.size() < Math.max(1, parallelism)) {
+                    String id = processGroups.get(next++).getId();
+                    window.add(runner.fetch(() -> flowapi.getFlow(id)));
+                }
+                ProcessGroupFlowEntity subGroup = window.poll().get();
+                jsonWriter.beginObject();
+                writeName(subGroup, jsonWriter);
+                writeGroupContent(subGroup, gson, jsonWriter, runner);
+                jsonWriter.endObject();
+            }
+            jsonWriter.endArray();
         }
-        if (result.getProcessors().isEmpty()) {
-            result.setProcessors(null);
+    }
+
+    private void writeName(ProcessGroupFlowEntity idComponent, JsonWriter jsonWriter) throws IOException {
+        String name = idComponent.getProcessGroupFlow().getBreadcrumb().getBreadcrumb().getName();
+        if (name != null) {
+            jsonWriter.name("name").value(name);
         }
-        result.setControllerServicesDTO(null);
-        return result;
     }
 
     /**
@@ -109,7 +161,7 @@ public class ExtractProcessorService {
      * @param processor
      * @return
      */
-    private ProcessorDTO extractProcessor(ProcessorDTO processor) {
+    ProcessorDTO extractProcessor(ProcessorDTO processor) {
         ProcessorDTO result = new ProcessorDTO();
         result.setName(processor.getName());
         result.setConfig(processor.getConfig());
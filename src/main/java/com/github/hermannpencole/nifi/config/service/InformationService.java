@@ -1,5 +1,6 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.utils.Trace;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 
@@ -23,6 +24,6 @@ public class InformationService {
      * @throws ApiException
      */
     public String getVersion() throws ApiException {
-        return flowApi.getAboutInfo().getAbout().getVersion();
+        return Trace.call(Trace.span("InformationService.getVersion"), () -> flowApi.getAboutInfo().getAbout().getVersion());
     }
 }
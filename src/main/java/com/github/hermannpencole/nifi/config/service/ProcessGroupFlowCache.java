@@ -0,0 +1,113 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.utils.Trace;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the process group flow, shared by all the services of a run (one instance by injector).
+ * <p>
+ * Concurrent callers asking for the same group share the same http call. An entry must be invalidated
+ * each time the group is modified (state, configuration, sub groups ...).
+ */
+@Singleton
+public class ProcessGroupFlowCache {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(ProcessGroupFlowCache.class);
+
+    private final static String ROOT = "root";
+
+    @Inject
+    private FlowApi flowapi;
+
+    private final ConcurrentMap<String, CompletableFuture<ProcessGroupFlowEntity>> flows = new ConcurrentHashMap<>();
+
+    /**
+     * id of the root group, nifi accept "root" as alias
+     */
+    private volatile String rootId;
+
+    /**
+     * get the flow of the group, from the cache or from nifi
+     *
+     * @param id
+     * @return
+     * @throws ApiException
+     */
+    public ProcessGroupFlowEntity getFlow(String id) throws ApiException {
+        CompletableFuture<ProcessGroupFlowEntity> flow = flows.get(id);
+        if (flow == null) {
+            CompletableFuture<ProcessGroupFlowEntity> loading = new CompletableFuture<>();
+            flow = flows.putIfAbsent(id, loading);
+            if (flow == null) {
+                load(id, loading);
+                flow = loading;
+            }
+        }
+        try {
+            return flow.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ConfigException(e.getCause());
+        }
+    }
+
+    /**
+     * remove the group from the cache, the next call to getFlow will ask nifi
+     *
+     * @param id
+     */
+    public void invalidate(String id) {
+        if (id == null) {
+            return;
+        }
+        LOG.debug("invalidate flow {}", id);
+        flows.remove(id);
+        String root = rootId;
+        if (ROOT.equals(id) && root != null) {
+            flows.remove(root);
+        } else if (id.equals(root)) {
+            flows.remove(ROOT);
+        }
+    }
+
+    /**
+     * remove all the groups from the cache
+     */
+    public void invalidateAll() {
+        LOG.debug("invalidate all flows");
+        flows.clear();
+    }
+
+    private void load(String id, CompletableFuture<ProcessGroupFlowEntity> loading) {
+        try {
+            Trace.run(Trace.span("ProcessGroupFlowCache.load", "groupId", id), () -> {
+                ProcessGroupFlowEntity flowEntity = flowapi.getFlow(id);
+                if (ROOT.equals(id) && flowEntity != null && flowEntity.getProcessGroupFlow() != null) {
+                    rootId = flowEntity.getProcessGroupFlow().getId();
+                    flows.putIfAbsent(rootId, loading);
+                }
+                loading.complete(flowEntity);
+            });
+        } catch (RuntimeException e) {
+            flows.remove(id, loading);
+            loading.completeExceptionally(e);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.utils.GraphUtils;
+import com.github.hermannpencole.nifi.config.utils.NameIndex;
+import com.github.hermannpencole.nifi.config.utils.Trace;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessGroupsApi;
@@ -9,7 +12,9 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class that offer service for process group
@@ -24,6 +29,15 @@ public class ProcessGroupService {
      */
     private final static Logger LOG = LoggerFactory.getLogger(ProcessGroupService.class);
 
+    /**
+     * the grid where the new components are placed : 3 columns of 400 and rows of 200
+     */
+    private final static double GRID_WIDTH = 400d;
+
+    private final static double GRID_HEIGHT = 200d;
+
+    private final static int GRID_COLUMNS = 3;
+
     @Inject
     private FlowApi flowapi;
 
@@ -36,6 +50,15 @@ public class ProcessGroupService {
     @Inject
     private ConnectionService connectionService;
 
+    @Inject
+    private ProcessGroupFlowCache flowCache;
+
+    /**
+     * the sub groups by name of the groups browsed, by id of group : built once by flow (see {@link #findGroup(ProcessGroupFlowEntity, String)}).
+     * The flow is only weakly referenced : an index don't keep alive a flow removed from the cache.
+     */
+    private final Map<String, GroupIndex> groupIndexes = new ConcurrentHashMap<>();
+
     /**
      * browse nifi on branch pass in parameter
      *
@@ -44,22 +67,40 @@ public class ProcessGroupService {
      * @throws ApiException
      */
     public Optional<ProcessGroupFlowEntity> changeDirectory(List<String> branch) throws ApiException {
-        ProcessGroupFlowEntity flowEntity = flowapi.getFlow("root");
-        for (String processGroupName : branch.subList(1, branch.size())) {
-            Optional<ProcessGroupEntity> flowEntityChild = findByComponentName(flowEntity.getProcessGroupFlow().getFlow().getProcessGroups(), processGroupName);
-            if (!flowEntityChild.isPresent()) {
-                return Optional.empty();
+        return Trace.call(Trace.span("ProcessGroupService.changeDirectory", "branch", String.join(" > ", branch)), () -> {
+            ProcessGroupFlowEntity flowEntity = flowCache.getFlow("root");
+            for (String processGroupName : branch.subList(1, branch.size())) {
+                Optional<ProcessGroupEntity> flowEntityChild = findGroup(flowEntity, processGroupName);
+                if (!flowEntityChild.isPresent()) {
+                    return Optional.empty();
+                }
+                flowEntity = flowCache.getFlow(flowEntityChild.get().getId());
             }
-            flowEntity = flowapi.getFlow(flowEntityChild.get().getId());
-        }
-        return Optional.of(flowEntity);
+            return Optional.of(flowEntity);
+        });
     }
 
     //can static => utils
     public static Optional<ProcessGroupEntity> findByComponentName(List<ProcessGroupEntity> listGroup, String name) {
-        return listGroup.stream()
-                .filter(item -> item.getComponent().getName().trim().equals(name.trim()))
-                .findFirst();
+        return NameIndex.of(listGroup, item -> item.getComponent().getName()).find(name);
+    }
+
+    /**
+     * find a sub group by name. The index of the sub groups is built once by flow and reused while the flow is the
+     * same (the flows come from the cache : the same object until the group is invalidated)
+     *
+     * @param flowEntity
+     * @param name
+     * @return the sub group with this name
+     */
+    Optional<ProcessGroupEntity> findGroup(ProcessGroupFlowEntity flowEntity, String name) {
+        String id = flowEntity.getProcessGroupFlow().getId();
+        GroupIndex index = groupIndexes.get(id);
+        if (index == null || index.flow.get() != flowEntity) {
+            index = new GroupIndex(flowEntity);
+            groupIndexes.put(id, index);
+        }
+        return index.groups.find(name);
     }
 
     /**
@@ -72,26 +113,29 @@ public class ProcessGroupService {
     public ProcessGroupFlowEntity createDirectory(List<String> branch) throws ApiException {
         //generate clientID
         String clientId = flowapi.generateClientId();
-        //find root
-        ProcessGroupFlowEntity flowEntity = flowapi.getFlow("root");
-        for (String processGroupName : branch.subList(1, branch.size())) {
-            Optional<ProcessGroupEntity> flowEntityChild = findByComponentName(flowEntity.getProcessGroupFlow().getFlow().getProcessGroups(), processGroupName);
-            if (!flowEntityChild.isPresent()) {
-                PositionDTO position = getNextPosition(flowEntity);
-                ProcessGroupEntity created = new ProcessGroupEntity();
-                created.setRevision(new RevisionDTO());
-                created.setComponent(new ProcessGroupDTO());
-                created.getRevision().setVersion(0L);
-                created.getRevision().setClientId(clientId);
-                created.getComponent().setName(processGroupName);
-                created.getComponent().setPosition(position);
-                created = processGroupsApi.createProcessGroup(flowEntity.getProcessGroupFlow().getId(), created);
-                flowEntity = flowapi.getFlow(created.getId());
-            } else {
-                flowEntity = flowapi.getFlow(flowEntityChild.get().getId());
+        return Trace.call(Trace.span("ProcessGroupService.createDirectory", "branch", String.join(" > ", branch)), () -> {
+            //find root
+            ProcessGroupFlowEntity flowEntity = flowCache.getFlow("root");
+            for (String processGroupName : branch.subList(1, branch.size())) {
+                Optional<ProcessGroupEntity> flowEntityChild = findGroup(flowEntity, processGroupName);
+                if (!flowEntityChild.isPresent()) {
+                    PositionDTO position = getNextPosition(flowEntity);
+                    ProcessGroupEntity created = new ProcessGroupEntity();
+                    created.setRevision(new RevisionDTO());
+                    created.setComponent(new ProcessGroupDTO());
+                    created.getRevision().setVersion(0L);
+                    created.getRevision().setClientId(clientId);
+                    created.getComponent().setName(processGroupName);
+                    created.getComponent().setPosition(position);
+                    created = processGroupsApi.createProcessGroup(flowEntity.getProcessGroupFlow().getId(), created);
+                    flowCache.invalidate(flowEntity.getProcessGroupFlow().getId());
+                    flowEntity = flowCache.getFlow(created.getId());
+                } else {
+                    flowEntity = flowCache.getFlow(flowEntityChild.get().getId());
+                }
             }
-        }
-        return flowEntity;
+            return flowEntity;
+        });
     }
 
 
@@ -108,136 +152,333 @@ public class ProcessGroupService {
         body.setState(state);
         body.setComponents(null);//for all
         flowapi.scheduleComponents(id, body);
+        //the sub groups are also scheduled
+        flowCache.invalidateAll();
     }
 
     /**
      * start the processor group.
-     * Begin by processor that consumme flow and end with processor that consumme stream and create flow
+     * Begin by processor that consumme flow and end with processor that consumme stream and create flow.
+     * The processors of a level are started with one request.
      *
      * @param processGroupFlow
      * @throws ApiException
      */
     public void start(ProcessGroupFlowEntity processGroupFlow) throws ApiException {
+        Trace.Span span = Trace.span("ProcessGroupService.start", "group", groupName(processGroupFlow));
         try {
             FlowDTO flow = processGroupFlow.getProcessGroupFlow().getFlow();
             List<Set<?>> listing = reorder(flow);
             for (int i = (listing.size() - 1); i >= 0; i--) {
                 Set<?> set = listing.get(i);
+                List<ProcessorEntity> processors = new ArrayList<>();
                 for (Object object : set) {
                     if (object instanceof ProcessorEntity) {
-                        processorService.setState((ProcessorEntity) object, ProcessorDTO.StateEnum.RUNNING);
+                        processors.add((ProcessorEntity) object);
                     }
                 }
+                if (!processors.isEmpty()) {
+                    Trace.run(Trace.span("ProcessGroupService.startLevel", "group", groupName(processGroupFlow), "level", i / 2), () -> {
+                        processorService.setState(processGroupFlow.getProcessGroupFlow().getId(), processors, ProcessorDTO.StateEnum.RUNNING);
+                    });
+                }
             }
+            invalidateOnStateChange(processGroupFlow, ProcessorDTO.StateEnum.RUNNING);
             for (ProcessGroupEntity procGroupInConf : flow.getProcessGroups()) {
-                ProcessGroupFlowEntity processGroupFlowEntity = flowapi.getFlow(procGroupInConf.getId());
+                ProcessGroupFlowEntity processGroupFlowEntity = flowCache.getFlow(procGroupInConf.getId());
                 start(processGroupFlowEntity);
             }
         } catch (Exception e) {
             setState(processGroupFlow.getProcessGroupFlow().getId(), ScheduleComponentsEntity.StateEnum.STOPPED);
             throw e;
+        } finally {
+            span.close();
         }
     }
 
     /**
      * stop the processor group.
      * Begin by processor that consumme stream and create flow and end with processor that consumme flow.
+     * The processors of a level are stopped with one request and the queues of a level are watched together.
      *
      * @param processGroupFlow
      * @throws ApiException
      */
     public void stop(ProcessGroupFlowEntity processGroupFlow) throws ApiException {
+        Trace.Span span = Trace.span("ProcessGroupService.stop", "group", groupName(processGroupFlow));
         try {
             FlowDTO flow = processGroupFlow.getProcessGroupFlow().getFlow();
             List<Set<?>> listing = reorder(flow);
             for (int i = 0; i < (listing.size()); i++) {
                 Set<?> set = listing.get(i);
+                List<ProcessorEntity> processors = new ArrayList<>();
+                List<ConnectionEntity> connections = new ArrayList<>();
                 for (Object object : set) {
                     if (object instanceof ProcessorEntity) {
-                        processorService.setState((ProcessorEntity) object, ProcessorDTO.StateEnum.STOPPED);
+                        processors.add((ProcessorEntity) object);
                     } else if (object instanceof ConnectionEntity) {
-                        connectionService.waitEmptyQueue((ConnectionEntity) object);
+                        connections.add((ConnectionEntity) object);
                     }
                 }
+                if (!processors.isEmpty()) {
+                    Trace.run(Trace.span("ProcessGroupService.stopLevel", "group", groupName(processGroupFlow), "level", i / 2), () -> {
+                        processorService.setState(processGroupFlow.getProcessGroupFlow().getId(), processors, ProcessorDTO.StateEnum.STOPPED);
+                    });
+                }
+                if (!connections.isEmpty()) {
+                    connectionService.waitEmptyQueues(processGroupFlow.getProcessGroupFlow().getId(), connections);
+                }
             }
+            invalidateOnStateChange(processGroupFlow, ProcessorDTO.StateEnum.STOPPED);
             for (ProcessGroupEntity procGroupInConf : flow.getProcessGroups()) {
-                ProcessGroupFlowEntity processGroupFlowEntity = flowapi.getFlow(procGroupInConf.getId());
-                start(processGroupFlowEntity);
+                ProcessGroupFlowEntity processGroupFlowEntity = flowCache.getFlow(procGroupInConf.getId());
+                stop(processGroupFlowEntity);
             }
         } catch (Exception e) {
             setState(processGroupFlow.getProcessGroupFlow().getId(), ScheduleComponentsEntity.StateEnum.RUNNING);
             throw e;
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * the processors that must be stopped with the processors pass in parameter : the processors of their cycles
+     * (a cycle can't be drained while a part of it is stopped).
+     *
+     * @param flow
+     * @param processorIds
+     * @return the ids of the processors
+     */
+    public Set<String> scope(FlowDTO flow, Set<String> processorIds) {
+        List<String> ids = new ArrayList<>();
+        for (ProcessorEntity processor : flow.getProcessors()) {
+            ids.add(processor.getId());
+        }
+        GraphUtils.Levels<String> levels = GraphUtils.levels(ids, flow.getConnections(), ConnectionEntity::getSourceId, ConnectionEntity::getDestinationId);
+        Set<Integer> components = new HashSet<>();
+        for (String id : processorIds) {
+            components.add(levels.component(id));
+        }
+        Set<String> scope = new HashSet<>();
+        for (String id : ids) {
+            if (components.contains(levels.component(id))) {
+                scope.add(id);
+            }
+        }
+        return scope;
+    }
+
+    /**
+     * stop only the processors pass in parameter (the group and its sub groups keep running), on the order of reorder().
+     * The queues between two running processors of the scope are drained, the queues that leave the scope are drained by
+     * the processors that still run and the queues to a processor already stopped are left as they are.
+     *
+     * @param processGroupFlow
+     * @param processorIds     the scope, see {@link #scope(FlowDTO, Set)}
+     * @return the ids of the processors that were running (to restart with {@link #start(ProcessGroupFlowEntity, Set)})
+     * @throws ApiException
+     */
+    public Set<String> stop(ProcessGroupFlowEntity processGroupFlow, Set<String> processorIds) throws ApiException {
+        String groupId = processGroupFlow.getProcessGroupFlow().getId();
+        Set<String> running = new HashSet<>();
+        for (ProcessorEntity processor : processGroupFlow.getProcessGroupFlow().getFlow().getProcessors()) {
+            if (processorIds.contains(processor.getId()) && ProcessorDTO.StateEnum.RUNNING.equals(processor.getComponent().getState())) {
+                running.add(processor.getId());
+            }
+        }
+        if (running.isEmpty()) {
+            return running;
+        }
+        Trace.Span span = Trace.span("ProcessGroupService.stopScope", "group", groupName(processGroupFlow), "processors", running.size());
+        try {
+            for (Set<?> set : reorder(processGroupFlow.getProcessGroupFlow().getFlow())) {
+                List<ProcessorEntity> processors = new ArrayList<>();
+                List<ConnectionEntity> connections = new ArrayList<>();
+                for (Object object : set) {
+                    if (object instanceof ProcessorEntity && running.contains(((ProcessorEntity) object).getId())) {
+                        processors.add((ProcessorEntity) object);
+                    } else if (object instanceof ConnectionEntity && running.contains(((ConnectionEntity) object).getSourceId())
+                            && running.contains(((ConnectionEntity) object).getDestinationId())) {
+                        connections.add((ConnectionEntity) object);
+                    }
+                }
+                if (!processors.isEmpty()) {
+                    Trace.run(Trace.span("ProcessGroupService.stopLevel", "group", groupName(processGroupFlow), "processors", processors.size()), () -> {
+                        processorService.setState(groupId, processors, ProcessorDTO.StateEnum.STOPPED);
+                    });
+                }
+                if (!connections.isEmpty()) {
+                    connectionService.waitEmptyQueues(groupId, connections);
+                }
+            }
+            flowCache.invalidate(groupId);
+        } catch (Exception e) {
+            start(processGroupFlow, running);
+            throw e;
+        } finally {
+            span.close();
+        }
+        return running;
+    }
+
+    /**
+     * start only the processors pass in parameter, on the reverse order of reorder()
+     *
+     * @param processGroupFlow
+     * @param processorIds
+     * @throws ApiException
+     */
+    public void start(ProcessGroupFlowEntity processGroupFlow, Set<String> processorIds) throws ApiException {
+        if (processorIds.isEmpty()) {
+            return;
+        }
+        String groupId = processGroupFlow.getProcessGroupFlow().getId();
+        Trace.run(Trace.span("ProcessGroupService.startScope", "group", groupName(processGroupFlow), "processors", processorIds.size()), () -> {
+            //the revisions change with the state
+            flowCache.invalidate(groupId);
+            List<Set<?>> listing = reorder(flowCache.getFlow(groupId).getProcessGroupFlow().getFlow());
+            for (int i = (listing.size() - 1); i >= 0; i--) {
+                List<ProcessorEntity> processors = new ArrayList<>();
+                for (Object object : listing.get(i)) {
+                    if (object instanceof ProcessorEntity && processorIds.contains(((ProcessorEntity) object).getId())) {
+                        processors.add((ProcessorEntity) object);
+                    }
+                }
+                if (!processors.isEmpty()) {
+                    Trace.run(Trace.span("ProcessGroupService.startLevel", "group", groupName(processGroupFlow), "processors", processors.size()), () -> {
+                        processorService.setState(groupId, processors, ProcessorDTO.StateEnum.RUNNING);
+                    });
+                }
+            }
+            flowCache.invalidate(groupId);
+        });
+    }
+
+    /**
+     * @param group
+     * @return the name of the group (breadcrumb), its id if the name is unknown
+     */
+    public static String groupName(ProcessGroupFlowEntity group) {
+        FlowBreadcrumbEntity breadcrumb = group.getProcessGroupFlow().getBreadcrumb();
+        if (breadcrumb != null && breadcrumb.getBreadcrumb() != null && breadcrumb.getBreadcrumb().getName() != null) {
+            return breadcrumb.getBreadcrumb().getName();
+        }
+        return group.getProcessGroupFlow().getId();
+    }
+
+    /**
+     * the revision of the processors change with their state, then the cached flow of the group must be reloaded
+     *
+     * @param processGroupFlow
+     * @param state
+     */
+    private void invalidateOnStateChange(ProcessGroupFlowEntity processGroupFlow, ProcessorDTO.StateEnum state) {
+        boolean stateChange = processGroupFlow.getProcessGroupFlow().getFlow().getProcessors().stream()
+                .anyMatch(processor -> ProcessorService.isToChange(processor.getComponent().getState(), state));
+        if (stateChange) {
+            flowCache.invalidate(processGroupFlow.getProcessGroupFlow().getId());
         }
     }
 
     /**
      * reorder for have the processor that consume stream -> connection -> processor connected etcc ...in the good order.
+     * <p>
+     * The result alternate the processors of a level and the connections that leave this level :
+     * processors level 0, connections from level 0, processors level 1, ... processors last level.
+     * The processors without connection are on the level 0. The processors of a cycle are on the same level,
+     * the connections inside a cycle are not returned (they can't be emptied while the cycle is stopped).
      *
      * @param flow
      * @return
      */
     public List<Set<?>> reorder(FlowDTO flow) {
-        List<Set<?>> level = new ArrayList<>();
-        Set<String> thisLevel = new HashSet<>();
-        List<ConnectionEntity> connections = new ArrayList<>(flow.getConnections());
-        while (!connections.isEmpty()) {
-            Set<String> destination = new HashSet<>();
-            Set<String> source = new HashSet<>();
-            Set<ConnectionEntity> levelConnection= new HashSet<>();
-            for (ConnectionEntity connection: new ArrayList<>(connections)) {
-                if (thisLevel.contains(connection.getSourceId())) {
-                    source.add(connection.getDestinationId());
-                    //remove connection for next use
-                    connections.remove(connection);
-                    levelConnection.add(connection);
-                } else {
-                    destination.add(connection.getDestinationId());
-                    source.add(connection.getSourceId());
-                }
-            }
-            if (!levelConnection.isEmpty()) {
-                level.add(levelConnection);
+        List<String> processorIds = new ArrayList<>();
+        for (ProcessorEntity processor : flow.getProcessors()) {
+            processorIds.add(processor.getId());
+        }
+        GraphUtils.Levels<String> levels = GraphUtils.levels(processorIds, flow.getConnections(), ConnectionEntity::getSourceId, ConnectionEntity::getDestinationId);
+
+        List<Set<ProcessorEntity>> levelProcessor = new ArrayList<>();
+        List<Set<ConnectionEntity>> levelConnection = new ArrayList<>();
+        for (int i = 0; i < levels.size(); i++) {
+            levelProcessor.add(new HashSet<>());
+            levelConnection.add(new HashSet<>());
+        }
+        for (ProcessorEntity processor : flow.getProcessors()) {
+            levelProcessor.get(levels.level(processor.getId())).add(processor);
+        }
+        for (ConnectionEntity connection : flow.getConnections()) {
+            if (!levels.sameComponent(connection.getSourceId(), connection.getDestinationId())) {
+                levelConnection.get(levels.level(connection.getSourceId())).add(connection);
             }
-            thisLevel = new HashSet<>(source);
-            thisLevel.removeAll(destination);
-            Set<ProcessorEntity> levelProcessor= new HashSet<>();
-            for (ProcessorEntity processor : flow.getProcessors()){
-                if (thisLevel.contains(processor.getId())) {
-                    levelProcessor.add(processor);
-                }
+        }
+
+        List<Set<?>> level = new ArrayList<>();
+        for (int i = 0; i < levels.size(); i++) {
+            level.add(levelProcessor.get(i));
+            if (!levelConnection.get(i).isEmpty()) {
+                level.add(levelConnection.get(i));
             }
-            level.add(levelProcessor);
         }
         return level;
     }
 
     /**
-     * get the next free position to place the processor(or group processor) on this group processor
+     * get the next free position to place the processor(or group processor) on this group processor.
+     * The cells of the grid occupied are indexed once, a component slightly off the grid occupy the nearest cell.
      *
      * @param flowEntity
      * @return
      */
     public PositionDTO getNextPosition(ProcessGroupFlowEntity flowEntity) {
-        PositionDTO nextPosition = new PositionDTO();
-        List<PositionDTO> positions = new ArrayList<>();
+        Set<Long> occupied = new HashSet<>();
         for (ProcessorEntity processor : flowEntity.getProcessGroupFlow().getFlow().getProcessors()) {
-            positions.add(processor.getPosition());
+            occupy(occupied, processor.getPosition());
         }
         for (ProcessGroupEntity processGroup : flowEntity.getProcessGroupFlow().getFlow().getProcessGroups()) {
-            positions.add(processGroup.getPosition());
+            occupy(occupied, processGroup.getPosition());
         }
 
-        nextPosition.setX(0d);
-        nextPosition.setY(0d);
-        while (positions.indexOf(nextPosition) != -1) {
-            if(nextPosition.getX() == 800d) {
-                nextPosition.setX(0d);
-                nextPosition.setY(nextPosition.getY() + 200);
-            } else {
-                nextPosition.setX(nextPosition.getX() + 400);
-            }
+        long cell = 0;
+        while (occupied.contains(cell(cell / GRID_COLUMNS, cell % GRID_COLUMNS))) {
+            cell++;
         }
+        PositionDTO nextPosition = new PositionDTO();
+        nextPosition.setX((cell % GRID_COLUMNS) * GRID_WIDTH);
+        nextPosition.setY((cell / GRID_COLUMNS) * GRID_HEIGHT);
         LOG.debug("nest postion {},{}", nextPosition.getX(), nextPosition.getY());
         return nextPosition;
     }
+
+    private static void occupy(Set<Long> occupied, PositionDTO position) {
+        if (position == null || position.getX() == null || position.getY() == null) {
+            return;
+        }
+        occupied.add(cell(Math.round(position.getY() / GRID_HEIGHT), Math.round(position.getX() / GRID_WIDTH)));
+    }
+
+    /**
+     * @param row
+     * @param column
+     * @return the key of the cell of the grid
+     */
+    private static long cell(long row, long column) {
+        return (row << 32) ^ (column & 0xffffffffL);
+    }
+
+    /**
+     * the sub groups by name of a flow
+     */
+    private static class GroupIndex {
+
+        private final WeakReference<ProcessGroupFlowEntity> flow;
+
+        private final NameIndex<ProcessGroupEntity> groups;
+
+        private GroupIndex(ProcessGroupFlowEntity flow) {
+            this.flow = new WeakReference<>(flow);
+            this.groups = NameIndex.groups(flow.getProcessGroupFlow().getFlow());
+        }
+    }
 }
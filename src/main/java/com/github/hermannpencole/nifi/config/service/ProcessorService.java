@@ -2,16 +2,25 @@ package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
+import com.github.hermannpencole.nifi.config.utils.PollPolicy;
+import com.github.hermannpencole.nifi.config.utils.Trace;
 import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessorsApi;
 import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
 import com.github.hermannpencole.nifi.swagger.client.model.ProcessorEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.RevisionDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ScheduleComponentsEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Class that offer service for process group
@@ -30,13 +39,15 @@ public class ProcessorService {
     @Inject
     public Integer timeout;
 
-    @Named("interval")
     @Inject
-    public Integer interval;
+    public PollPolicy pollPolicy = new PollPolicy();
 
     @Inject
     private ProcessorsApi processorsApi;
 
+    @Inject
+    private FlowApi flowapi;
+
     /**
      * the the state of processor
      *
@@ -51,28 +62,93 @@ public class ProcessorService {
             return;
         }
 
-        FunctionUtils.runWhile(()-> {
-            boolean haveResult = false;
-            try {
-                ProcessorEntity body = new ProcessorEntity();
-                body.setRevision(processor.getRevision());
-                body.setComponent(new ProcessorDTO());
-                body.getComponent().setState(state);
-                body.getComponent().setId(processor.getId());
-                body.getComponent().setRestricted(null);
-                ProcessorEntity processorEntity= processorsApi.updateProcessor(processor.getId(), body);
-                LOG.info(" {} ({}) is {} ", processorEntity.getComponent().getName(), processorEntity.getId(), processorEntity.getComponent().getState());
-                haveResult = true;
-            } catch (ApiException e) {
-                if (e.getResponseBody() == null || !e.getResponseBody().endsWith("Current state is STOPPING")) {
-                    logErrors(processor);
-                    throw new ConfigException(e.getMessage() + ": " + e.getResponseBody(), e);
+        Trace.run(Trace.span("ProcessorService.setState", "processor", processor.getComponent().getName(), "state", state), () -> {
+            FunctionUtils.runWhile(()-> {
+                boolean haveResult = false;
+                try {
+                    ProcessorEntity body = new ProcessorEntity();
+                    body.setRevision(processor.getRevision());
+                    body.setComponent(new ProcessorDTO());
+                    body.getComponent().setState(state);
+                    body.getComponent().setId(processor.getId());
+                    body.getComponent().setRestricted(null);
+                    ProcessorEntity processorEntity= processorsApi.updateProcessor(processor.getId(), body);
+                    LOG.info(" {} ({}) is {} ", processorEntity.getComponent().getName(), processorEntity.getId(), processorEntity.getComponent().getState());
+                    haveResult = true;
+                } catch (ApiException e) {
+                    if (e.getResponseBody() == null || !e.getResponseBody().endsWith("Current state is STOPPING")) {
+                        logErrors(processor);
+                        throw new ConfigException(e.getMessage() + ": " + e.getResponseBody(), e);
+                    }
+                    LOG.info(e.getResponseBody());
                 }
-                LOG.info(e.getResponseBody());
+                return !haveResult;
+            }, pollPolicy, timeout);
+        });
+
+    }
+
+    /**
+     * set the state of several processors of a group with only one request.
+     * The revision of each processor is send, only the processors that can change are sent (see {@link #isToChange}) :
+     * nifi reject the whole request if one component can't be scheduled.
+     *
+     * @param processGroupId
+     * @param processors
+     * @param state
+     */
+    public void setState(String processGroupId, Collection<ProcessorEntity> processors, ProcessorDTO.StateEnum state) {
+        Map<String, RevisionDTO> components = new HashMap<>();
+        for (ProcessorEntity processor : processors) {
+            if (isToChange(processor.getComponent().getState(), state)) {
+                components.put(processor.getId(), processor.getRevision());
+            } else {
+                LOG.info(" {} ({}) is {}", processor.getComponent().getName(), processor.getId(), processor.getComponent().getState());
             }
-            return !haveResult;
-        }, interval, timeout);
+        }
+        if (components.isEmpty()) {
+            return;
+        }
+        ScheduleComponentsEntity body = new ScheduleComponentsEntity();
+        body.setId(processGroupId);
+        body.setState(state == ProcessorDTO.StateEnum.RUNNING ? ScheduleComponentsEntity.StateEnum.RUNNING : ScheduleComponentsEntity.StateEnum.STOPPED);
+        body.setComponents(components);
 
+        //same trick as for one processor : xxxx cannot be started because it is not stopped. Current state is STOPPING
+        Trace.run(Trace.span("ProcessorService.setStates", "groupId", processGroupId, "state", state,
+                "processors", processors.stream().filter(processor -> components.containsKey(processor.getId()))
+                        .map(processor -> processor.getComponent().getName()).collect(Collectors.joining(", "))), () -> {
+            FunctionUtils.runWhile(()-> {
+                boolean haveResult = false;
+                try {
+                    flowapi.scheduleComponents(processGroupId, body);
+                    LOG.info(" {} processors of {} are {} ", components.size(), processGroupId, state);
+                    haveResult = true;
+                } catch (ApiException e) {
+                    if (e.getResponseBody() == null || !e.getResponseBody().endsWith("Current state is STOPPING")) {
+                        processors.stream()
+                                .filter(processor -> components.containsKey(processor.getId()))
+                                .forEach(processor -> logErrors(processor));
+                        throw new ConfigException(e.getMessage() + ": " + e.getResponseBody(), e);
+                    }
+                    LOG.info(e.getResponseBody());
+                }
+                return !haveResult;
+            }, pollPolicy, timeout);
+        });
+    }
+
+    /**
+     * @param current the state of the processor
+     * @param state   the state asked
+     * @return true if the processor must be scheduled : a stopped processor to start, a running processor to stop
+     * (a disabled processor is never scheduled)
+     */
+    public static boolean isToChange(ProcessorDTO.StateEnum current, ProcessorDTO.StateEnum state) {
+        if (ProcessorDTO.StateEnum.RUNNING.equals(state)) {
+            return ProcessorDTO.StateEnum.STOPPED.equals(current);
+        }
+        return ProcessorDTO.StateEnum.STOPPED.equals(state) && ProcessorDTO.StateEnum.RUNNING.equals(current);
     }
 
     /**
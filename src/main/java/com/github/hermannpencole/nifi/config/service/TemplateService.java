@@ -1,5 +1,6 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.utils.Trace;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessGroupsApi;
@@ -48,6 +49,9 @@ public class TemplateService {
     @Inject
     private TemplatesApi templatesApi;
 
+    @Inject
+    private ProcessGroupFlowCache flowCache;
+
     /**
      * @param branch
      * @param fileConfiguration
@@ -66,12 +70,15 @@ public class TemplateService {
         if (!template.isPresent()) {
             template = Optional.of(processGroupsApi.uploadTemplate(processGroupFlow.getId(), file));
         }*/
-        Optional<TemplateEntity> template = Optional.of(processGroupsApi.uploadTemplate(processGroupFlow.getId(), file));
-        InstantiateTemplateRequestEntity instantiateTemplate = new InstantiateTemplateRequestEntity(); // InstantiateTemplateRequestEntity | The instantiate template request.
-        instantiateTemplate.setTemplateId(template.get().getTemplate().getId());
-        instantiateTemplate.setOriginX(0d);
-        instantiateTemplate.setOriginY(0d);
-        processGroupsApi.instantiateTemplate(processGroupFlow.getId(), instantiateTemplate);
+        Trace.run(Trace.span("TemplateService.installOnBranch", "branch", String.join(" > ", branch), "template", file.getName()), () -> {
+            Optional<TemplateEntity> template = Optional.of(processGroupsApi.uploadTemplate(processGroupFlow.getId(), file));
+            InstantiateTemplateRequestEntity instantiateTemplate = new InstantiateTemplateRequestEntity(); // InstantiateTemplateRequestEntity | The instantiate template request.
+            instantiateTemplate.setTemplateId(template.get().getTemplate().getId());
+            instantiateTemplate.setOriginX(0d);
+            instantiateTemplate.setOriginY(0d);
+            processGroupsApi.instantiateTemplate(processGroupFlow.getId(), instantiateTemplate);
+            flowCache.invalidate(processGroupFlow.getId());
+        });
     }
 
     public void undeploy(List<String> branch) throws ApiException {
@@ -91,10 +98,14 @@ public class TemplateService {
         processGroupService.stop(processGroupFlow.get());
         LOG.info(Arrays.toString(branch.toArray()) + " is stopped");
 
-        //the state change, then the revision also in nifi 1.3.0 (only?) reload processGroup
-        ProcessGroupEntity processGroupEntity = processGroupsApi.getProcessGroup(processGroupFlow.get().getProcessGroupFlow().getId());
+        Trace.run(Trace.span("TemplateService.removeProcessGroup", "branch", String.join(" > ", branch)), () -> {
+            //the state change, then the revision also in nifi 1.3.0 (only?) reload processGroup
+            ProcessGroupEntity processGroupEntity = processGroupsApi.getProcessGroup(processGroupFlow.get().getProcessGroupFlow().getId());
 
-        processGroupsApi.removeProcessGroup(processGroupFlow.get().getProcessGroupFlow().getId(), processGroupEntity.getRevision().getVersion().toString(),null);
+            processGroupsApi.removeProcessGroup(processGroupFlow.get().getProcessGroupFlow().getId(), processGroupEntity.getRevision().getVersion().toString(),null);
+        });
+        flowCache.invalidate(processGroupFlow.get().getProcessGroupFlow().getId());
+        flowCache.invalidate(processGroupFlow.get().getProcessGroupFlow().getParentGroupId());
 
     }
 
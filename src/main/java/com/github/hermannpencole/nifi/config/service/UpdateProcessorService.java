@@ -2,23 +2,43 @@ package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.config.utils.DiffUtils;
+import com.github.hermannpencole.nifi.config.utils.NameIndex;
+import com.github.hermannpencole.nifi.config.utils.ParallelRunner;
+import com.github.hermannpencole.nifi.config.utils.Trace;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessorsApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.*;
+import java.lang.reflect.Type;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class that offer service for nifi processor
@@ -45,7 +65,30 @@ public class UpdateProcessorService {
     @Inject
     private ProcessorsApi processorsApi;
 
+    @Inject
+    private ProcessGroupFlowCache flowCache;
+
+    @Named("parallelism")
+    @Inject
+    public Integer parallelism = 1;
+
+    @Named("scopedStop")
+    @Inject
+    public Boolean scopedStop = false;
+
+    private final static Type PROCESSORS_TYPE = new TypeToken<List<ProcessorDTO>>() {}.getType();
+
+    private final static Type GROUPS_TYPE = new TypeToken<List<GroupProcessorsEntity>>() {}.getType();
+
+    private final static Gson GSON = new Gson();
+
     /**
+     * update the branch with the configuration. The file is read while the processors are updated
+     * (the file is never entirely in memory).
+     * Nothing is stopped before a first read of the file without update that check all the names (see {@link #check(File, Gson, ProcessGroupFlowEntity)}).
+     * With scopedStop, only the processors that change are stopped and restarted (see {@link #stopScope(UpdateContext)}),
+     * else the entire branch is stopped and restarted.
+     *
      * @param branch
      * @param fileConfiguration
      * @throws IOException
@@ -61,98 +104,459 @@ public class UpdateProcessorService {
         LOG.info("Processing : " + file.getName());
         Gson gson = new GsonBuilder().serializeNulls().create();
 
+        Trace.Span span = Trace.span("UpdateProcessorService.updateByBranch", "branch", String.join(" > ", branch));
         try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
-            GroupProcessorsEntity configuration = gson.fromJson(reader, GroupProcessorsEntity.class);
             ProcessGroupFlowEntity componentSearch = processGroupService.changeDirectory(branch)
                     .orElseThrow(() -> new ConfigException(("cannot find " + Arrays.toString(branch.toArray()))));
 
+            //check the configuration before stop anything
+            UpdateContext checked = check(file, gson, componentSearch);
+
             //Stop branch
-            processGroupService.stop(componentSearch);
-            LOG.info(Arrays.toString(branch.toArray()) + " is stopped");
+            Map<String, Set<String>> stopped = Trace.call(Trace.span("UpdateProcessorService.stop", "scoped", scopedStop), () -> {
+                if (scopedStop) {
+                    return stopScope(checked);
+                }
+                processGroupService.stop(componentSearch);
+                LOG.info(Arrays.toString(branch.toArray()) + " is stopped");
+                return null;
+            });
 
             //the state change, then the revision also in nifi 1.3.0 (only?) reload processGroup
-            componentSearch = flowapi.getFlow(componentSearch.getProcessGroupFlow().getId());
+            ProcessGroupFlowEntity stoppedFlow = flowCache.getFlow(componentSearch.getProcessGroupFlow().getId());
 
             //generate clientID
             String clientId = flowapi.generateClientId();
-            updateComponent(configuration, componentSearch, clientId);
-
-            //controller
-            ControllerServicesEntity controllerServicesEntity = flowapi.getControllerServicesFromGroup(componentSearch.getProcessGroupFlow().getId());
-            updateControllers(configuration, controllerServicesEntity);
+            List<ControllerServiceDTO> controllerServices = new ArrayList<>();
+            try (ParallelRunner runner = new ParallelRunner(parallelism)) {
+                UpdateContext context = new UpdateContext(clientId, runner, true);
+                try (Trace.Span update = Trace.span("UpdateProcessorService.updateProcessors")) {
+                    JsonReader jsonReader = gson.newJsonReader(reader);
+                    jsonReader.setLenient(true);
+                    readRootComponent(jsonReader, gson, stoppedFlow, context, controllerServices);
+                    runner.await();
+                    update.attribute("updated", context.changed.get()).attribute("unchanged", context.unchanged.get());
+                }
+                LOG.info("{} processors updated, {} processors unchanged, {} processors not in the configuration",
+                        context.changed.get(), context.unchanged.get(), context.notConfigured());
 
-            if (!optionNoStartProcessors) {
-                //Run all nifi processors
-                componentSearch = flowapi.getFlow(componentSearch.getProcessGroupFlow().getId());
-                processGroupService.start(componentSearch);
-                //setState(componentSearch, ProcessorDTO.StateEnum.RUNNING);
-                LOG.info(Arrays.toString(branch.toArray()) + " is running");
+                //controller
+                ControllerServicesEntity controllerServicesEntity = flowapi.getControllerServicesFromGroup(stoppedFlow.getProcessGroupFlow().getId());
+                updateControllers(controllerServices, controllerServicesEntity, runner);
             }
+
+            Trace.run(Trace.span("UpdateProcessorService.start", "scoped", stopped != null), () -> {
+                if (!optionNoStartProcessors && stopped != null) {
+                    //Run the processors stopped
+                    startScope(stopped);
+                    LOG.info(Arrays.toString(branch.toArray()) + " is running");
+                } else if (!optionNoStartProcessors) {
+                    //Run all nifi processors
+                    processGroupService.start(flowCache.getFlow(componentSearch.getProcessGroupFlow().getId()));
+                    //setState(componentSearch, ProcessorDTO.StateEnum.RUNNING);
+                    LOG.info(Arrays.toString(branch.toArray()) + " is running");
+                }
+            });
         } catch (InterruptedException e) {
             e.printStackTrace();
         } finally {
+            span.close();
             LOG.debug("updateByBranch end");
         }
     }
 
 
+    /**
+     * read the configuration a first time without update (nothing is stopped) : find in nifi all the groups, processors
+     * and controller services of the configuration, and the processors that change or use the controller services
+     * of the configuration. The flows of the sub groups are fetched together on the runner, the processors are
+     * compared as soon as the flow of their group is there.
+     *
+     * @param file
+     * @param gson
+     * @param componentSearch
+     * @return the result of the check
+     * @throws IOException
+     * @throws ApiException
+     * @throws ConfigException with all the names not found
+     */
+    private UpdateContext check(File file, Gson gson, ProcessGroupFlowEntity componentSearch) throws IOException, ApiException {
+        List<ControllerServiceDTO> controllerServices = new ArrayList<>();
+        UpdateContext context = Trace.call(Trace.span("UpdateProcessorService.check"), () -> {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+                 ParallelRunner runner = new ParallelRunner(parallelism)) {
+                UpdateContext checking = new UpdateContext(null, runner, false);
+                JsonReader jsonReader = gson.newJsonReader(reader);
+                jsonReader.setLenient(true);
+                readRootComponent(jsonReader, gson, componentSearch, checking, controllerServices);
+                runner.await();
+                return checking;
+            }
+        });
+        //the processors that use the controller services updated
+        if (!controllerServices.isEmpty()) {
+            NameIndex<ControllerServiceEntity> controllerServicesIndex = NameIndex.controllerServices(flowapi.getControllerServicesFromGroup(componentSearch.getProcessGroupFlow().getId()));
+            for (ControllerServiceDTO controllerServiceDTO : controllerServices) {
+                ControllerServiceEntity controllerServiceEntityFind = find(controllerServicesIndex, "controller service", controllerServiceDTO.getName(), componentSearch, context);
+                if (controllerServiceEntityFind != null && !isUpToDate(controllerServiceEntityFind, controllerServiceDTO)) {
+                    addReferencingProcessors(controllerServiceEntityFind.getComponent().getReferencingComponents(), context);
+                }
+            }
+        }
+        if (!context.errors.isEmpty()) {
+            List<String> errors = new ArrayList<>(context.errors);
+            Collections.sort(errors);
+            errors.forEach(LOG::error);
+            throw new ConfigException("the configuration doesn't match nifi (nothing is updated) : " + String.join(", ", errors));
+        }
+        return context;
+    }
 
     /**
+     * stop only the processors that change (found by {@link #check(File, Gson, ProcessGroupFlowEntity)}) and the processors of their cycles.
      *
-     * @param configuration
+     * @param context
+     * @return the ids of the processors stopped, by group
+     * @throws ApiException
+     */
+    private Map<String, Set<String>> stopScope(UpdateContext context) throws ApiException {
+        Map<String, Set<String>> stopped = new HashMap<>();
+        try (ParallelRunner runner = new ParallelRunner(parallelism)) {
+            Map<String, ParallelRunner.Result<ProcessGroupFlowEntity>> groups = fetchFlows(context.changedByGroup.keySet(), runner);
+            for (Map.Entry<String, Set<String>> entry : context.changedByGroup.entrySet()) {
+                ProcessGroupFlowEntity group = groups.get(entry.getKey()).get();
+                Set<String> scope = processGroupService.scope(group.getProcessGroupFlow().getFlow(), entry.getValue());
+                stopped.put(entry.getKey(), processGroupService.stop(group, scope));
+            }
+        } catch (Exception e) {
+            startScope(stopped);
+            throw e;
+        }
+        LOG.info("{} processors are stopped on {} groups", stopped.values().stream().mapToInt(Set::size).sum(), stopped.size());
+        return stopped;
+    }
+
+    /**
+     * @param referencingComponents the components that use a controller service (and the components that use them)
+     * @param context
+     */
+    private void addReferencingProcessors(Collection<ControllerServiceReferencingComponentEntity> referencingComponents, UpdateContext context) {
+        if (referencingComponents == null) {
+            return;
+        }
+        for (ControllerServiceReferencingComponentEntity referencingComponent : referencingComponents) {
+            ControllerServiceReferencingComponentDTO component = referencingComponent.getComponent();
+            if (ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR.equals(component.getReferenceType())) {
+                context.change(component.getGroupId(), component.getId());
+            } else {
+                addReferencingProcessors(referencingComponents(component), context);
+            }
+        }
+    }
+
+    /**
+     * the swagger model give the components that use a referencing component as a raw set : read from nifi (by gson)
+     * the elements are maps, they are converted to entities
+     *
+     * @param component
+     * @return the components that use the component
+     */
+    private static List<ControllerServiceReferencingComponentEntity> referencingComponents(ControllerServiceReferencingComponentDTO component) {
+        List<ControllerServiceReferencingComponentEntity> result = new ArrayList<>();
+        if (component.getReferencingComponents() == null) {
+            return result;
+        }
+        for (Object referencingComponent : component.getReferencingComponents()) {
+            if (referencingComponent instanceof ControllerServiceReferencingComponentEntity) {
+                result.add((ControllerServiceReferencingComponentEntity) referencingComponent);
+            } else if (referencingComponent != null) {
+                result.add(GSON.fromJson(GSON.toJsonTree(referencingComponent), ControllerServiceReferencingComponentEntity.class));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * restart the processors stopped by {@link #stopScope(UpdateContext)}
+     *
+     * @param stopped
+     * @throws ApiException
+     */
+    private void startScope(Map<String, Set<String>> stopped) throws ApiException {
+        try (ParallelRunner runner = new ParallelRunner(parallelism)) {
+            Map<String, ParallelRunner.Result<ProcessGroupFlowEntity>> groups = fetchFlows(stopped.keySet(), runner);
+            for (Map.Entry<String, Set<String>> entry : stopped.entrySet()) {
+                processGroupService.start(groups.get(entry.getKey()).get(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * fetch the flows of the groups together on the runner
+     *
+     * @param ids
+     * @param runner
+     * @return the flows by id of group
+     */
+    private Map<String, ParallelRunner.Result<ProcessGroupFlowEntity>> fetchFlows(Collection<String> ids, ParallelRunner runner) {
+        Map<String, ParallelRunner.Result<ProcessGroupFlowEntity>> flows = new LinkedHashMap<>();
+        for (String id : ids) {
+            flows.put(id, runner.fetch(() -> flowCache.getFlow(id)));
+        }
+        return flows;
+    }
+
+    /**
+     * update the controller services of the configuration together (see {@link ControllerServicesService#updateControllerServices(Map, Collection, ParallelRunner)})
+     *
+     * @param controllerServices
      * @param controllerServicesEntity
+     * @param runner
      * @throws ApiException
      */
-    private void updateControllers(GroupProcessorsEntity configuration, ControllerServicesEntity controllerServicesEntity) throws ApiException, InterruptedException {
-        for (ControllerServiceDTO controllerServiceDTO : configuration.getControllerServicesDTO()) {
+    private void updateControllers(List<ControllerServiceDTO> controllerServices, ControllerServicesEntity controllerServicesEntity, ParallelRunner runner) throws ApiException, InterruptedException {
+        if (controllerServices.isEmpty()) {
+            return;
+        }
+        NameIndex<ControllerServiceEntity> controllerServicesIndex = NameIndex.controllerServices(controllerServicesEntity);
+        Map<String, ControllerServiceDTO> controllerServicesById = new LinkedHashMap<>();
+        int unchanged = 0;
+        for (ControllerServiceDTO controllerServiceDTO : controllerServices) {
 
             //find controller for have id
-            ControllerServiceEntity controllerServiceEntityFind = controllerServicesEntity.getControllerServices().stream().filter(item -> item.getComponent().getName().trim().equals(controllerServiceDTO.getName().trim()))
-                    .findFirst().orElseThrow(() -> new ConfigException(("cannot find " + controllerServiceDTO.getName())));
+            ControllerServiceEntity controllerServiceEntityFind = controllerServicesIndex.find(controllerServiceDTO.getName())
+                    .orElseThrow(() -> new ConfigException(("cannot find " + controllerServiceDTO.getName())));
+            if (isUpToDate(controllerServiceEntityFind, controllerServiceDTO)) {
+                LOG.info("Unchanged controller service : " + controllerServiceEntityFind.getComponent().getName());
+                unchanged++;
+            } else {
+                controllerServicesById.put(controllerServiceEntityFind.getId(), controllerServiceDTO);
+            }
+        }
+        Trace.run(Trace.span("UpdateProcessorService.updateControllers", "updated", controllerServicesById.size(), "unchanged", unchanged), () -> {
+            controllerServicesService.updateControllerServices(controllerServicesById, controllerServicesEntity.getControllerServices(), runner);
+        });
+        LOG.info("{} controller services updated, {} controller services unchanged", controllerServicesById.size(), unchanged);
+    }
+
+    /**
+     * @param controllerService       the controller service on nifi
+     * @param controllerServiceOnConf
+     * @return true if the controller service is enabled and the configuration change nothing (then it is not disabled)
+     */
+    private static boolean isUpToDate(ControllerServiceEntity controllerService, ControllerServiceDTO controllerServiceOnConf) {
+        return ControllerServiceDTO.StateEnum.ENABLED.equals(controllerService.getComponent().getState())
+                && DiffUtils.isUpToDate(controllerService.getComponent(), controllerServiceOnConf);
+    }
+
+    /**
+     * read the configuration of the branch, the processors and the sub groups are updated as soon as they are read.
+     * The controller services are only read (they are updated after the processors).
+     *
+     * @param reader
+     * @param gson
+     * @param componentSearch
+     * @param context
+     * @param controllerServices the controller services read
+     * @throws IOException
+     * @throws ApiException
+     */
+    private void readRootComponent(JsonReader reader, Gson gson, ProcessGroupFlowEntity componentSearch, UpdateContext context,
+                                   List<ControllerServiceDTO> controllerServices) throws IOException, ApiException {
+        context.visit(componentSearch);
+        ParallelRunner.Result<ProcessGroupFlowEntity> group = ParallelRunner.Result.of(componentSearch);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if ("processors".equals(field)) {
+                readProcessors(reader, gson, group, context);
+            } else if ("groupProcessorsEntity".equals(field)) {
+                readGroups(reader, gson, group, context);
+            } else if ("controllerServices".equals(field)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    controllerServices.add(gson.fromJson(reader, ControllerServiceDTO.class));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
 
-            //stopping referencing processors and reporting tasks
-          //  controllerServicesService.setStateReferenceProcessors(controllerServiceEntityFind, UpdateControllerServiceReferenceRequestEntity.StateEnum.STOPPED);
+    /**
+     * read the processors of a group, each processor is submitted as soon as it is read (when the flow of the group is fetched).
+     * The reading wait while the runner has too many pending tasks : the processors read are not kept in memory.
+     *
+     * @param reader
+     * @param gson
+     * @param group   the flow of the group (null if not found)
+     * @param context
+     * @throws IOException
+     */
+    private void readProcessors(JsonReader reader, Gson gson, ParallelRunner.Result<ProcessGroupFlowEntity> group, UpdateContext context) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            ProcessorDTO processorOnConfig = gson.fromJson(reader, ProcessorDTO.class);
+            context.runner.submit(group, componentSearch -> {
+                if (componentSearch != null) {
+                    submitProcessor(processorOnConfig, componentSearch, context);
+                }
+            });
+        }
+        reader.endArray();
+    }
 
-            //Disabling referencing controller services
-            controllerServicesService.setStateReferencingControllerServices(controllerServiceEntityFind.getId(), UpdateControllerServiceReferenceRequestEntity.StateEnum.DISABLED);
+    private void readGroups(JsonReader reader, Gson gson, ParallelRunner.Result<ProcessGroupFlowEntity> parent, UpdateContext context) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            readGroup(reader, gson, parent, context);
+        }
+        reader.endArray();
+    }
 
-            //Enabling this controller service
-            ControllerServiceEntity controllerServiceEntityUpdate = controllerServicesService.updateControllerService(controllerServiceDTO, controllerServiceEntityFind);
+    /**
+     * read the configuration of a sub group. The group is found in nifi with its name : the flow of the group is fetched
+     * on the runner while the reading continue, its processors and sub groups are submitted as soon as they are read.
+     * The extracted files have the name first ; if the name come after (a file written by hand) the processors and
+     * the sub groups before the name are kept in memory until the name is read.
+     *
+     * @param reader
+     * @param gson
+     * @param parent  the flow of the parent group (null if not found)
+     * @param context
+     * @throws IOException
+     */
+    private void readGroup(JsonReader reader, Gson gson, ParallelRunner.Result<ProcessGroupFlowEntity> parent, UpdateContext context) throws IOException {
+        ParallelRunner.Result<ProcessGroupFlowEntity> group = null;
+        GroupProcessorsEntity pending = new GroupProcessorsEntity();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if ("name".equals(field) && group == null) {
+                String name = reader.nextString();
+                group = context.runner.fetch(parent, parentFlow -> findGroup(parentFlow, name, context));
+                GroupProcessorsEntity before = pending;
+                context.runner.submit(group, componentSearch -> {
+                    if (componentSearch != null) {
+                        updateComponent(before, componentSearch, context);
+                    }
+                });
+                pending = null;
+            } else if ("processors".equals(field) && group != null) {
+                readProcessors(reader, gson, group, context);
+            } else if ("processors".equals(field)) {
+                pending.getProcessors().addAll(gson.fromJson(reader, PROCESSORS_TYPE));
+            } else if ("groupProcessorsEntity".equals(field) && group != null) {
+                readGroups(reader, gson, group, context);
+            } else if ("groupProcessorsEntity".equals(field)) {
+                pending.getGroupProcessorsEntity().addAll(gson.fromJson(reader, GROUPS_TYPE));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (group == null) {
+            context.runner.submit(parent, parentFlow -> {
+                if (parentFlow != null) {
+                    context.error("cannot find a group without name on group " + ProcessGroupService.groupName(parentFlow));
+                }
+            });
+        }
+    }
 
-            //Enabling referencing controller services
-            controllerServicesService.setStateReferencingControllerServices(controllerServiceEntityFind.getId(), UpdateControllerServiceReferenceRequestEntity.StateEnum.ENABLED);
+    /**
+     * @param parent  the flow of the parent group (null if not found)
+     * @param name
+     * @param context
+     * @return the flow of the sub group with this name, null if not found on check
+     * @throws ApiException
+     */
+    private ProcessGroupFlowEntity findGroup(ProcessGroupFlowEntity parent, String name, UpdateContext context) throws ApiException {
+        if (parent == null) {
+            return null;
+        }
+        ProcessGroupEntity processorGroupToUpdate = find(context.groups(parent), "group", name, parent, context);
+        if (processorGroupToUpdate == null) {
+            return null;
+        }
+        return flowCache.getFlow(processorGroupToUpdate.getId());
+    }
 
-            //Starting referencing processors and reporting tasks
-          //  controllerServicesService.setStateReferenceProcessors(controllerServiceEntityUpdate, UpdateControllerServiceReferenceRequestEntity.StateEnum.RUNNING);
+    /**
+     * submit the update of the processor on the runner
+     *
+     * @param processorOnConfig
+     * @param componentSearch
+     * @param context
+     */
+    private void submitProcessor(ProcessorDTO processorOnConfig, ProcessGroupFlowEntity componentSearch, UpdateContext context) {
+        String groupId = componentSearch.getProcessGroupFlow().getId();
+        context.configured(groupId, processorOnConfig.getName());
+        ProcessorEntity processor = find(context.processors(componentSearch), "processor", processorOnConfig.getName(), componentSearch, context);
+        if (processor == null) {
+            return;
+        }
+        if (!context.apply) {
+            //only a comparison in memory, the flow of the group is already fetched
+            if (!DiffUtils.isUpToDate(processor.getComponent(), processorOnConfig)) {
+                context.change(groupId, processor.getId());
+            }
+            return;
         }
+        context.runner.submit(() -> {
+            try (Trace.Span span = Trace.span("UpdateProcessorService.updateProcessor",
+                    "group", ProcessGroupService.groupName(componentSearch), "processor", processorOnConfig.getName())) {
+                if (updateProcessor(processor, processorOnConfig, context.clientId)) {
+                    context.changed.incrementAndGet();
+                    flowCache.invalidate(groupId);
+                    span.attribute("updated", true);
+                } else {
+                    context.unchanged.incrementAndGet();
+                    span.attribute("updated", false);
+                }
+            }
+        });
     }
 
     /**
+     * update the processors of the group and the sub groups, each update is submitted on the runner
+     *
      * @param configuration
      * @param componentSearch
-     * @param clientId
+     * @param context
      * @throws ApiException
      */
-    private void updateComponent(GroupProcessorsEntity configuration, ProcessGroupFlowEntity componentSearch, String clientId) throws ApiException {
-        FlowDTO flow = componentSearch.getProcessGroupFlow().getFlow();
-        configuration.getProcessors().forEach(processorOnConfig -> updateProcessor(flow.getProcessors(), processorOnConfig, clientId));
+    private void updateComponent(GroupProcessorsEntity configuration, ProcessGroupFlowEntity componentSearch, UpdateContext context) throws ApiException {
+        context.visit(componentSearch);
+        configuration.getProcessors().forEach(processorOnConfig -> submitProcessor(processorOnConfig, componentSearch, context));
         for (GroupProcessorsEntity procGroupInConf : configuration.getGroupProcessorsEntity()) {
-            ProcessGroupEntity processorGroupToUpdate = ProcessGroupService.findByComponentName(flow.getProcessGroups(), procGroupInConf.getName())
-                    .orElseThrow(() -> new ConfigException(("cannot find " + procGroupInConf.getName())));
-            updateComponent(procGroupInConf, flowapi.getFlow(processorGroupToUpdate.getId()), clientId);
+            ProcessGroupEntity processorGroupToUpdate = find(context.groups(componentSearch), "group", procGroupInConf.getName(), componentSearch, context);
+            if (processorGroupToUpdate != null) {
+                context.runner.submit(() -> updateComponent(procGroupInConf, flowCache.getFlow(processorGroupToUpdate.getId()), context));
+            }
         }
     }
 
     /**
      * update processor configuration with valueToPutInProc
-     * at first find id of each processor and in second way update it
-     *  @param processorsList
+     * (only if the configuration change something)
+     *  @param processorToUpdate
      * @param componentToPutInProc
      * @param clientId
+     * @return true if the processor is updated, false if it is already up to date
      */
-    private void updateProcessor(List<ProcessorEntity> processorsList, ProcessorDTO componentToPutInProc, String clientId) {
+    private boolean updateProcessor(ProcessorEntity processorToUpdate, ProcessorDTO componentToPutInProc, String clientId) {
         try {
-            ProcessorEntity processorToUpdate = findProcByComponentName(processorsList, componentToPutInProc.getName());
+            if (DiffUtils.isUpToDate(processorToUpdate.getComponent(), componentToPutInProc)) {
+                LOG.info("Unchanged processor : " + processorToUpdate.getComponent().getName());
+                return false;
+            }
             componentToPutInProc.setId(processorToUpdate.getId());
             LOG.info("Update processor : " + processorToUpdate.getComponent().getName());
             //update on nifi
@@ -178,13 +582,19 @@ public class UpdateProcessorService {
                     componentToPutInProc.getConfig().getProperties().remove(entry.getKey());
                 }
             }
-            processorToUpdate.setComponent(componentToPutInProc);
-            processorToUpdate.getRevision().setClientId(clientId);
+            //the processor come from the cache : it stays as on nifi until the group is invalidated
+            ProcessorEntity body = new ProcessorEntity();
+            body.setId(processorToUpdate.getId());
+            body.setRevision(new RevisionDTO());
+            body.getRevision().setVersion(processorToUpdate.getRevision().getVersion());
+            body.getRevision().setClientId(clientId);
+            body.setComponent(componentToPutInProc);
 
-            processorsApi.updateProcessor(processorToUpdate.getId(), processorToUpdate);
+            processorsApi.updateProcessor(body.getId(), body);
 
             //nifiService.updateProcessorProperties(toUpdate, componentToPutInProc.getString("id"));
             LOG.info("Updated : " + componentToPutInProc.getName());
+            return true;
         } catch (ApiException e) {
             throw new ConfigException(e.getMessage() + ": " + e.getResponseBody(), e);
         }
@@ -192,9 +602,135 @@ public class UpdateProcessorService {
 
     //can static => utils
     public static ProcessorEntity findProcByComponentName(List<ProcessorEntity> listGroup, String name) {
-        return listGroup.stream()
-                .filter(item -> item.getComponent().getName().trim().equals(name.trim()))
-                .findFirst().orElseThrow(() -> new ConfigException(("cannot find " + name)));
+        return NameIndex.of(listGroup, item -> item.getComponent().getName()).find(name)
+                .orElseThrow(() -> new ConfigException(("cannot find " + name)));
+    }
+
+    /**
+     * find a component of the configuration on the index of its group
+     *
+     * @param index
+     * @param type    type of the component for the messages
+     * @param name
+     * @param group
+     * @param context
+     * @return the component, null if not found (or several components with this name) on check
+     */
+    private static <T> T find(NameIndex<T> index, String type, String name, ProcessGroupFlowEntity group, UpdateContext context) {
+        Optional<T> found;
+        try {
+            found = index.find(name);
+        } catch (ConfigException e) {
+            context.error(e.getMessage() + " on group " + ProcessGroupService.groupName(group));
+            return null;
+        }
+        if (!found.isPresent()) {
+            context.error("cannot find " + type + " " + name + " on group " + ProcessGroupService.groupName(group));
+        }
+        return found.orElse(null);
     }
 
+    /**
+     * state of an update : shared by the tasks of the runner
+     */
+    private static class UpdateContext {
+
+        private final String clientId;
+
+        private final ParallelRunner runner;
+
+        /**
+         * false : only find the processors that change (changedByGroup)
+         */
+        private final boolean apply;
+
+        private final AtomicInteger changed = new AtomicInteger();
+
+        private final AtomicInteger unchanged = new AtomicInteger();
+
+        /**
+         * processors on nifi by name, by group
+         */
+        private final ConcurrentMap<String, NameIndex<ProcessorEntity>> processorsByGroup = new ConcurrentHashMap<>();
+
+        /**
+         * sub groups on nifi by name, by group
+         */
+        private final ConcurrentMap<String, NameIndex<ProcessGroupEntity>> groupsByGroup = new ConcurrentHashMap<>();
+
+        /**
+         * the names not found on nifi (only on check)
+         */
+        private final Queue<String> errors = new ConcurrentLinkedQueue<>();
+
+        /**
+         * names of the processors on the configuration, by group
+         */
+        private final ConcurrentMap<String, Set<String>> configuredByGroup = new ConcurrentHashMap<>();
+
+        /**
+         * ids of the processors that change, by group
+         */
+        private final ConcurrentMap<String, Set<String>> changedByGroup = new ConcurrentHashMap<>();
+
+        private UpdateContext(String clientId, ParallelRunner runner, boolean apply) {
+            this.clientId = clientId;
+            this.runner = runner;
+            this.apply = apply;
+        }
+
+        private void change(String groupId, String processorId) {
+            changedByGroup.computeIfAbsent(groupId, id -> ConcurrentHashMap.newKeySet()).add(processorId);
+        }
+
+        private void visit(ProcessGroupFlowEntity group) {
+            processors(group);
+        }
+
+        /**
+         * @param group
+         * @return the index of the processors of the group (built once)
+         */
+        private NameIndex<ProcessorEntity> processors(ProcessGroupFlowEntity group) {
+            return processorsByGroup.computeIfAbsent(group.getProcessGroupFlow().getId(), id -> NameIndex.processors(group.getProcessGroupFlow().getFlow()));
+        }
+
+        /**
+         * @param group
+         * @return the index of the sub groups of the group (built once)
+         */
+        private NameIndex<ProcessGroupEntity> groups(ProcessGroupFlowEntity group) {
+            return groupsByGroup.computeIfAbsent(group.getProcessGroupFlow().getId(), id -> NameIndex.groups(group.getProcessGroupFlow().getFlow()));
+        }
+
+        /**
+         * a name of the configuration not found on nifi : the check continue (for report all the errors),
+         * the update stop
+         *
+         * @param message
+         */
+        private void error(String message) {
+            if (apply) {
+                throw new ConfigException(message);
+            }
+            errors.add(message);
+        }
+
+        private void configured(String groupId, String name) {
+            if (name != null) {
+                configuredByGroup.computeIfAbsent(groupId, id -> ConcurrentHashMap.newKeySet()).add(name.trim());
+            }
+        }
+
+        /**
+         * @return the number of processors of the updated groups that are not on the configuration
+         */
+        private long notConfigured() {
+            return processorsByGroup.entrySet().stream()
+                    .mapToLong(entry -> entry.getValue().names().stream()
+                            .filter(name -> !configuredByGroup.getOrDefault(entry.getKey(), Collections.emptySet()).contains(name))
+                            .count())
+                    .sum();
+        }
+    }
 }
@@ -0,0 +1,289 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.google.gson.stream.JsonWriter;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Interceptor of the http client that record for each endpoint of nifi (method and path where the ids and the alias
+ * root of the root group are replaced by {id}, ex : GET /flow/process-groups/{id}) the number of calls, the latencies, the bytes received and the errors.
+ * <p>
+ * The latency is the time until the headers of the response, the bytes are those of the bodies received on the
+ * network (before the decompression of gzip, see {@link #networkInterceptor()}). An error is a response with a status
+ * code 4xx/5xx or a call without response.
+ */
+public class ApiMetrics implements Interceptor {
+
+    private static final Pattern ID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[0-9]+|root");
+
+    private final String basePath;
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    private final long start = System.nanoTime();
+
+    /**
+     * @param basePath base path of the api (ex : http://localhost:8080/nifi-api), removed from the endpoints
+     */
+    public ApiMetrics(String basePath) {
+        HttpUrl url = basePath == null ? null : HttpUrl.parse(basePath);
+        String path = url == null ? "" : url.encodedPath();
+        this.basePath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    /**
+     * create the metrics and add them on the interceptors of the http client : the calls on the interceptors (a call
+     * without connection is seen), the bytes on the network interceptors (the bodies are still compressed).
+     *
+     * @param httpClient
+     * @param basePath   base path of the api
+     * @return the metrics
+     */
+    public static ApiMetrics register(OkHttpClient httpClient, String basePath) {
+        ApiMetrics metrics = new ApiMetrics(basePath);
+        httpClient.interceptors().add(metrics);
+        httpClient.networkInterceptors().add(metrics.networkInterceptor());
+        return metrics;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Endpoint endpoint = endpoint(request);
+        long begin = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            endpoint.record(System.nanoTime() - begin, true);
+            throw e;
+        }
+        endpoint.record(System.nanoTime() - begin, response.code() >= 400);
+        return response;
+    }
+
+    /**
+     * @return the interceptor (to add on the network interceptors) that count the bytes of the bodies received
+     */
+    public Interceptor networkInterceptor() {
+        return chain -> {
+            Request request = chain.request();
+            Response response = chain.proceed(request);
+            if (response.body() == null) {
+                return response;
+            }
+            return response.newBuilder().body(new CountingBody(response.body(), endpoint(request).bytes)).build();
+        };
+    }
+
+    private Endpoint endpoint(Request request) {
+        return endpoints.computeIfAbsent(template(request.method(), request.httpUrl().encodedPath()), Endpoint::new);
+    }
+
+    /**
+     * @param method
+     * @param path   encoded path of the url
+     * @return the endpoint : the method and the path without the base path, where the ids (and root) are replaced by {id}
+     */
+    public String template(String method, String path) {
+        if (path.startsWith(basePath)) {
+            path = path.substring(basePath.length());
+        }
+        return method + " " + Arrays.stream(path.split("/", -1))
+                .map(segment -> ID.matcher(segment).matches() ? "{id}" : segment)
+                .collect(Collectors.joining("/"));
+    }
+
+    /**
+     * @return the endpoints called, the most expensive (total latency) first
+     */
+    public List<Endpoint> getEndpoints() {
+        List<Endpoint> result = new ArrayList<>(endpoints.values());
+        result.sort(Comparator.comparingLong(Endpoint::getTotalNanos).reversed().thenComparing(Endpoint::getName));
+        return result;
+    }
+
+    /**
+     * write the report (json) of the calls since the creation of the metrics.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void writeReport(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+             JsonWriter jsonWriter = new JsonWriter(writer)) {
+            jsonWriter.setIndent("  ");
+            List<Endpoint> list = getEndpoints();
+            jsonWriter.beginObject();
+            jsonWriter.name("durationMillis").value(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            jsonWriter.name("calls").value(list.stream().mapToLong(Endpoint::getCalls).sum());
+            jsonWriter.name("errors").value(list.stream().mapToLong(Endpoint::getErrors).sum());
+            jsonWriter.name("bytesReceived").value(list.stream().mapToLong(Endpoint::getBytesReceived).sum());
+            jsonWriter.name("endpoints");
+            jsonWriter.beginArray();
+            for (Endpoint endpoint : list) {
+                long[] latencies = endpoint.latencies();
+                jsonWriter.beginObject();
+                jsonWriter.name("endpoint").value(endpoint.getName());
+                jsonWriter.name("calls").value(latencies.length);
+                jsonWriter.name("errors").value(endpoint.getErrors());
+                jsonWriter.name("bytesReceived").value(endpoint.getBytesReceived());
+                jsonWriter.name("latencyMillis");
+                jsonWriter.beginObject();
+                jsonWriter.name("p50").value(millis(percentile(latencies, 50)));
+                jsonWriter.name("p95").value(millis(percentile(latencies, 95)));
+                jsonWriter.name("max").value(millis(percentile(latencies, 100)));
+                jsonWriter.name("total").value(millis(endpoint.getTotalNanos()));
+                jsonWriter.endObject();
+                jsonWriter.endObject();
+            }
+            jsonWriter.endArray();
+            jsonWriter.endObject();
+        }
+    }
+
+    /**
+     * @param sorted     values sorted
+     * @param percentile between 0 and 100
+     * @return the value of the percentile (nearest rank), 0 without values
+     */
+    public static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    /**
+     * metrics of an endpoint
+     */
+    public static class Endpoint {
+
+        private final String name;
+
+        private final AtomicLong errors = new AtomicLong();
+
+        private final AtomicLong bytes = new AtomicLong();
+
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        private long[] latencies = new long[16];
+
+        private int calls = 0;
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos, boolean error) {
+            if (error) {
+                errors.incrementAndGet();
+            }
+            totalNanos.addAndGet(nanos);
+            synchronized (this) {
+                if (calls == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, calls * 2);
+                }
+                latencies[calls++] = nanos;
+            }
+        }
+
+        /**
+         * @return the latencies (nano seconds) sorted
+         */
+        public synchronized long[] latencies() {
+            long[] sorted = Arrays.copyOf(latencies, calls);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public synchronized long getCalls() {
+            return calls;
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public long getBytesReceived() {
+            return bytes.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+    }
+
+    /**
+     * body that count the bytes read
+     */
+    private static class CountingBody extends ResponseBody {
+
+        private final ResponseBody body;
+
+        private final BufferedSource source;
+
+        CountingBody(ResponseBody body, AtomicLong bytes) throws IOException {
+            this.body = body;
+            this.source = Okio.buffer(new ForwardingSource(body.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read > 0) {
+                        bytes.addAndGet(read);
+                    }
+                    return read;
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return body.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() throws IOException {
+            return source;
+        }
+    }
+}
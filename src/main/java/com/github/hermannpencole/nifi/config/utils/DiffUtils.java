@@ -0,0 +1,125 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorConfigDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.PropertyDescriptorDTO;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compare the configuration with the components of nifi, for update only what change.
+ * <p>
+ * A field without value (null) on the configuration is not sent to nifi, then it is never a change.
+ */
+public class DiffUtils {
+
+    /**
+     * the value given by nifi for a sensitive property that has a value (the value written by extractConfig)
+     */
+    public final static String SENSITIVE_MASK = "********";
+
+    /**
+     * @param processor       the processor on nifi
+     * @param processorOnConf the processor on the configuration
+     * @return true if the update of the processor with the configuration change nothing
+     */
+    public static boolean isUpToDate(ProcessorDTO processor, ProcessorDTO processorOnConf) {
+        if (!same(processor.getState(), processorOnConf.getState())
+                || !same(processor.getPosition(), processorOnConf.getPosition())) {
+            return false;
+        }
+        ProcessorConfigDTO config = processor.getConfig();
+        ProcessorConfigDTO configOnConf = processorOnConf.getConfig();
+        if (configOnConf == null) {
+            return true;
+        }
+        if (config == null) {
+            return false;
+        }
+        return same(config.getSchedulingPeriod(), configOnConf.getSchedulingPeriod())
+                && same(config.getSchedulingStrategy(), configOnConf.getSchedulingStrategy())
+                && same(config.getExecutionNode(), configOnConf.getExecutionNode())
+                && same(config.getPenaltyDuration(), configOnConf.getPenaltyDuration())
+                && same(config.getYieldDuration(), configOnConf.getYieldDuration())
+                && same(config.getBulletinLevel(), configOnConf.getBulletinLevel())
+                && same(config.getRunDurationMillis(), configOnConf.getRunDurationMillis())
+                && same(config.getConcurrentlySchedulableTaskCount(), configOnConf.getConcurrentlySchedulableTaskCount())
+                && same(config.getComments(), configOnConf.getComments())
+                && same(config.getLossTolerant(), configOnConf.getLossTolerant())
+                && same(config.getAnnotationData(), configOnConf.getAnnotationData())
+                && sameProperties(config.getProperties(), configOnConf.getProperties(), config.getDescriptors());
+    }
+
+    /**
+     * @param controllerService       the controller service on nifi
+     * @param controllerServiceOnConf the controller service on the configuration
+     * @return true if the update of the controller service with the configuration change nothing
+     */
+    public static boolean isUpToDate(ControllerServiceDTO controllerService, ControllerServiceDTO controllerServiceOnConf) {
+        return same(controllerService.getState(), controllerServiceOnConf.getState())
+                && same(controllerService.getComments(), controllerServiceOnConf.getComments())
+                && same(controllerService.getAnnotationData(), controllerServiceOnConf.getAnnotationData())
+                && sameProperties(controllerService.getProperties(), controllerServiceOnConf.getProperties(), controllerService.getDescriptors(), false);
+    }
+
+    /**
+     * compare the properties of the configuration with the properties on nifi.
+     * The properties that link a controller service are ignored (they are not updated), a property without value
+     * take the default value of its descriptor. A sensitive property is hidden by nifi, then it is always a change,
+     * except the mask of nifi (an extracted configuration keep the value of nifi).
+     *
+     * @param properties       properties on nifi
+     * @param propertiesOnConf properties on the configuration
+     * @param descriptors      descriptors on nifi
+     * @return
+     */
+    public static boolean sameProperties(Map<String, String> properties, Map<String, String> propertiesOnConf, Map<String, PropertyDescriptorDTO> descriptors) {
+        return sameProperties(properties, propertiesOnConf, descriptors, true);
+    }
+
+    /**
+     * @param properties                   properties on nifi
+     * @param propertiesOnConf             properties on the configuration
+     * @param descriptors                  descriptors on nifi
+     * @param ignoreControllerServiceLinks true if the properties that link a controller service are not updated
+     * @return
+     */
+    private static boolean sameProperties(Map<String, String> properties, Map<String, String> propertiesOnConf, Map<String, PropertyDescriptorDTO> descriptors,
+                                          boolean ignoreControllerServiceLinks) {
+        if (propertiesOnConf == null) {
+            return true;
+        }
+        Map<String, String> current = properties == null ? Collections.emptyMap() : properties;
+        Map<String, PropertyDescriptorDTO> descriptorByName = descriptors == null ? Collections.emptyMap() : descriptors;
+        for (Map.Entry<String, String> entry : propertiesOnConf.entrySet()) {
+            PropertyDescriptorDTO descriptor = descriptorByName.get(entry.getKey());
+            if (ignoreControllerServiceLinks && descriptor != null && descriptor.getIdentifiesControllerService() != null) {
+                continue;
+            }
+            if (descriptor != null && Boolean.TRUE.equals(descriptor.getSensitive()) && entry.getValue() != null) {
+                if (SENSITIVE_MASK.equals(entry.getValue())) {
+                    continue;
+                }
+                return false;
+            }
+            String defaultValue = descriptor == null ? null : descriptor.getDefaultValue();
+            String value = current.get(entry.getKey());
+            if (!Objects.equals(value == null ? defaultValue : value, entry.getValue() == null ? defaultValue : entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param value       value on nifi
+     * @param valueOnConf value on the configuration
+     * @return true if the value on the configuration is not given or equals
+     */
+    private static boolean same(Object value, Object valueOnConf) {
+        return valueOnConf == null || valueOnConf.equals(value);
+    }
+}
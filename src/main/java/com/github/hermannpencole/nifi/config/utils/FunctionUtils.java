@@ -5,10 +5,14 @@ import com.github.hermannpencole.nifi.config.model.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 public class FunctionUtils {
@@ -17,46 +21,103 @@ public class FunctionUtils {
      */
     private final static Logger LOG = LoggerFactory.getLogger(FunctionUtils.class);
 
-    public static void runTimeout(Runnable function, int timeout) {
-        java.util.concurrent.ExecutorService executor = Executors.newSingleThreadExecutor();
-        final Future future = executor.submit(function);
+    /**
+     * scheduler shared by all the polling, only for the delays between the calls and the timeouts : its thread never
+     * call nifi, then a timeout fire on time even when all the polls are waiting an answer
+     */
+    private final static ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+    /**
+     * run the calls of the polling (blocking http requests), a poll only hold a thread while the function run (not while waiting)
+     */
+    private final static ExecutorService POLLER = createPoller();
+
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "nifi-config-poll-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //the timeout of the polling that ended are cancelled, don't keep them in the queue
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private static ExecutorService createPoller() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "nifi-config-poll-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void runWhile(Supplier<Boolean> function, int interval, int timeout) {
+        runWhile(function, PollPolicy.fixed(interval), timeout);
+    }
+
+    /**
+     * call the function while it return true (see runWhileAsync), the caller thread wait the end of the polling
+     *
+     * @param function
+     * @param policy delay between the calls
+     * @param timeout in second
+     */
+    public static void runWhile(Supplier<Boolean> function, PollPolicy policy, int timeout) {
+        CompletableFuture<Void> future = runWhileAsync(function, policy, timeout);
         try {
-            if (timeout < 0 ) {
-                future.get();
-            } else {
-                future.get(timeout, TimeUnit.SECONDS);
-            }
+            future.get();
         } catch (ExecutionException e) {
-            LOG.debug(e.getMessage(),e);
-            future.cancel(true);
-            if (e.getCause() instanceof ConfigException) {
-                throw (ConfigException)e.getCause();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
             throw new ConfigException(e.getCause());
         } catch (InterruptedException e) {
-            future.cancel(true);
+            future.cancel(false);
             throw new ConfigException(e);
-        } catch (java.util.concurrent.TimeoutException e) {
-            future.cancel(true);
-            throw new TimeoutException(e);
-        } finally {
-            executor.shutdownNow();
         }
+    }
 
+    public static CompletableFuture<Void> runWhileAsync(Supplier<Boolean> function, int interval, int timeout) {
+        return runWhileAsync(function, PollPolicy.fixed(interval), timeout);
     }
 
-    public static void runWhile(Supplier<Boolean> function, int interval) {
-       while (function.get()) {
-           try {
-               //interval are in second
-               Thread.sleep(interval * 1000);
-           } catch (InterruptedException e) {
-               throw new ConfigException(e);
-           }
-       }
+    /**
+     * call the function while it return true, waiting the delay of the policy between the calls, without holding a
+     * thread between the calls (the calls run on the poll threads, the scheduler only wait the delays). The future fail with TimeoutException after timeout (no timeout if negative) and with ConfigException
+     * if the function fail. Cancel the future stop the polling.
+     *
+     * @param function
+     * @param policy delay between the calls
+     * @param timeout in second
+     * @return
+     */
+    public static CompletableFuture<Void> runWhileAsync(Supplier<Boolean> function, PollPolicy policy, int timeout) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (timeout >= 0) {
+            ScheduledFuture<?> timeoutTask = SCHEDULER.schedule(() ->
+                    future.completeExceptionally(new TimeoutException(new java.util.concurrent.TimeoutException())), timeout, TimeUnit.SECONDS);
+            future.whenComplete((result, e) -> timeoutTask.cancel(false));
+        }
+        POLLER.execute(() -> poll(function, policy, 1, future));
+        return future;
     }
 
-    public static void runWhile(Supplier<Boolean> function, int interval, int timeout) {
-        runTimeout(() -> runWhile(function, interval ), timeout);
+    private static void poll(Supplier<Boolean> function, PollPolicy policy, int attempt, CompletableFuture<Void> future) {
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            if (!function.get()) {
+                future.complete(null);
+            } else if (!future.isDone()) {
+                SCHEDULER.schedule(() -> POLLER.execute(() -> poll(function, policy, attempt + 1, future)), policy.delay(attempt), TimeUnit.MILLISECONDS);
+            }
+        } catch (ConfigException e) {
+            future.completeExceptionally(e);
+        } catch (Throwable e) {
+            LOG.debug(e.getMessage(),e);
+            future.completeExceptionally(new ConfigException(e));
+        }
     }
 }
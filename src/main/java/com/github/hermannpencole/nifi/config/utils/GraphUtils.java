@@ -0,0 +1,227 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Graph algorithms used for schedule the components of a process group.
+ */
+public class GraphUtils {
+
+    /**
+     * Levels of the nodes of a directed graph.
+     * <p>
+     * The nodes of a cycle (strongly connected component) are collapsed in a single level, then
+     * the level of a node is the length of the longest path from a node without predecessor.
+     *
+     * @param <T> type of the node
+     */
+    public static class Levels<T> {
+
+        private final Map<T, Integer> index;
+        private final int[] component;
+        private final int[] componentLevel;
+        private final int size;
+
+        private Levels(Map<T, Integer> index, int[] component, int[] componentLevel, int size) {
+            this.index = index;
+            this.component = component;
+            this.componentLevel = componentLevel;
+            this.size = size;
+        }
+
+        /**
+         * @return the number of levels
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param node
+         * @return the level of the node, -1 if the node is unknown
+         */
+        public int level(T node) {
+            Integer i = index.get(node);
+            return i == null ? -1 : componentLevel[component[i]];
+        }
+
+        /**
+         * @param node1
+         * @param node2
+         * @return true if the two nodes are on the same cycle (or are the same node)
+         */
+        public boolean sameComponent(T node1, T node2) {
+            Integer i1 = index.get(node1);
+            Integer i2 = index.get(node2);
+            return i1 != null && i2 != null && component[i1] == component[i2];
+        }
+
+        /**
+         * @param node
+         * @return the cycle (strongly connected component) of the node, -1 if the node is unknown
+         */
+        public int component(T node) {
+            Integer i = index.get(node);
+            return i == null ? -1 : component[i];
+        }
+    }
+
+    /**
+     * compute the levels of the graph in linear time : strongly connected components (Tarjan) then Kahn on the
+     * condensed graph.
+     *
+     * @param nodes       the nodes, the nodes of the edges are added if needed
+     * @param edges       the edges
+     * @param source      give the source of an edge
+     * @param destination give the destination of an edge
+     * @param <T>         type of the node
+     * @param <E>         type of the edge
+     * @return the levels
+     */
+    public static <T, E> Levels<T> levels(Collection<T> nodes, Collection<E> edges, Function<E, T> source, Function<E, T> destination) {
+        Map<T, Integer> index = new HashMap<>();
+        for (T node : nodes) {
+            index.putIfAbsent(node, index.size());
+        }
+        int[] from = new int[edges.size()];
+        int[] to = new int[edges.size()];
+        int e = 0;
+        for (E edge : edges) {
+            from[e] = index.computeIfAbsent(source.apply(edge), key -> index.size());
+            to[e] = index.computeIfAbsent(destination.apply(edge), key -> index.size());
+            e++;
+        }
+        int n = index.size();
+
+        //adjacency list (compressed)
+        int[] start = new int[n + 1];
+        for (int i = 0; i < from.length; i++) {
+            start[from[i] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] adjacency = new int[from.length];
+        int[] fill = Arrays.copyOf(start, n);
+        for (int i = 0; i < from.length; i++) {
+            adjacency[fill[from[i]]++] = to[i];
+        }
+
+        int[] component = new int[n];
+        int components = stronglyConnectedComponents(n, start, adjacency, component);
+
+        //Kahn on the condensed graph, the level is the longest path
+        int[] inDegree = new int[components];
+        for (int i = 0; i < from.length; i++) {
+            if (component[from[i]] != component[to[i]]) {
+                inDegree[component[to[i]]]++;
+            }
+        }
+        int[] componentStart = new int[components + 1];
+        for (int i = 0; i < n; i++) {
+            componentStart[component[i] + 1]++;
+        }
+        for (int c = 0; c < components; c++) {
+            componentStart[c + 1] += componentStart[c];
+        }
+        int[] componentNodes = new int[n];
+        int[] componentFill = Arrays.copyOf(componentStart, components);
+        for (int i = 0; i < n; i++) {
+            componentNodes[componentFill[component[i]]++] = i;
+        }
+
+        int[] componentLevel = new int[components];
+        int[] queue = new int[components];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < components; c++) {
+            if (inDegree[c] == 0) {
+                queue[tail++] = c;
+            }
+        }
+        int size = 0;
+        while (head < tail) {
+            int c = queue[head++];
+            size = Math.max(size, componentLevel[c] + 1);
+            for (int k = componentStart[c]; k < componentStart[c + 1]; k++) {
+                int node = componentNodes[k];
+                for (int j = start[node]; j < start[node + 1]; j++) {
+                    int next = component[adjacency[j]];
+                    if (next != c) {
+                        componentLevel[next] = Math.max(componentLevel[next], componentLevel[c] + 1);
+                        if (--inDegree[next] == 0) {
+                            queue[tail++] = next;
+                        }
+                    }
+                }
+            }
+        }
+        return new Levels<>(index, component, componentLevel, size);
+    }
+
+    /**
+     * Tarjan algorithm without recursion (no stack overflow on big graph)
+     *
+     * @param n         number of nodes
+     * @param start     start of the successors of each node in adjacency
+     * @param adjacency successors
+     * @param component result : component of each node
+     * @return the number of components
+     */
+    private static int stronglyConnectedComponents(int n, int[] start, int[] adjacency, int[] component) {
+        int[] order = new int[n];
+        int[] low = new int[n];
+        Arrays.fill(order, -1);
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int stackSize = 0;
+        int[] callStack = new int[n];
+        int[] nextEdge = new int[n];
+        int counter = 0;
+        int components = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (order[root] != -1) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth] = root;
+            nextEdge[root] = start[root];
+            order[root] = low[root] = counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            while (depth >= 0) {
+                int node = callStack[depth];
+                if (nextEdge[node] < start[node + 1]) {
+                    int next = adjacency[nextEdge[node]++];
+                    if (order[next] == -1) {
+                        order[next] = low[next] = counter++;
+                        stack[stackSize++] = next;
+                        onStack[next] = true;
+                        nextEdge[next] = start[next];
+                        callStack[++depth] = next;
+                    } else if (onStack[next]) {
+                        low[node] = Math.min(low[node], order[next]);
+                    }
+                } else {
+                    if (low[node] == order[node]) {
+                        int member;
+                        do {
+                            member = stack[--stackSize];
+                            onStack[member] = false;
+                            component[member] = components;
+                        } while (member != node);
+                        components++;
+                    }
+                    depth--;
+                    if (depth >= 0) {
+                        int parent = callStack[depth];
+                        low[parent] = Math.min(low[parent], low[node]);
+                    }
+                }
+            }
+        }
+        return components;
+    }
+}
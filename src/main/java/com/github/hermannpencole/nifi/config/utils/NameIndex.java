@@ -0,0 +1,110 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServicesEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.FlowDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorEntity;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Index of the components of a group by name (trimmed), built once for find the components of the configuration
+ * without browse the list for each name.
+ * <p>
+ * Nifi accept several components with the same name, then a name used by several components can't be found :
+ * find throw an error instead of return one of them.
+ *
+ * @param <T> type of the component
+ */
+public class NameIndex<T> {
+
+    private final Map<String, T> byName;
+
+    private final Map<String, Integer> duplicates;
+
+    private NameIndex(Map<String, T> byName, Map<String, Integer> duplicates) {
+        this.byName = byName;
+        this.duplicates = duplicates;
+    }
+
+    /**
+     * @param components
+     * @param name       give the name of a component
+     * @param <T>        type of the component
+     * @return the index
+     */
+    public static <T> NameIndex<T> of(Collection<T> components, Function<T, String> name) {
+        Map<String, T> byName = new HashMap<>();
+        Map<String, Integer> duplicates = new HashMap<>();
+        if (components != null) {
+            for (T component : components) {
+                String componentName = name.apply(component);
+                if (componentName == null) {
+                    continue;
+                }
+                componentName = componentName.trim();
+                if (byName.putIfAbsent(componentName, component) != null) {
+                    duplicates.merge(componentName, 2, (count, one) -> count + 1);
+                }
+            }
+        }
+        return new NameIndex<>(byName, duplicates.isEmpty() ? Collections.emptyMap() : duplicates);
+    }
+
+    /**
+     * @param flow
+     * @return the index of the processors of the flow
+     */
+    public static NameIndex<ProcessorEntity> processors(FlowDTO flow) {
+        return of(flow.getProcessors(), processor -> processor.getComponent().getName());
+    }
+
+    /**
+     * @param flow
+     * @return the index of the sub groups of the flow
+     */
+    public static NameIndex<ProcessGroupEntity> groups(FlowDTO flow) {
+        return of(flow.getProcessGroups(), group -> group.getComponent().getName());
+    }
+
+    /**
+     * @param controllerServices
+     * @return the index of the controller services
+     */
+    public static NameIndex<ControllerServiceEntity> controllerServices(ControllerServicesEntity controllerServices) {
+        return of(controllerServices.getControllerServices(), controllerService -> controllerService.getComponent().getName());
+    }
+
+    /**
+     * @param name
+     * @return the component with this name, empty if there is no component with this name
+     * @throws ConfigException if several components have this name
+     */
+    public Optional<T> find(String name) {
+        if (name == null) {
+            return Optional.empty();
+        }
+        String key = name.trim();
+        Integer count = duplicates.get(key);
+        if (count != null) {
+            throw new ConfigException("cannot choose between the " + count + " components with the name " + key);
+        }
+        return Optional.ofNullable(byName.get(key));
+    }
+
+    /**
+     * @return the names (trimmed) of the components
+     */
+    public Set<String> names() {
+        return new HashSet<>(byName.keySet());
+    }
+}
@@ -0,0 +1,372 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Run tasks on a bounded pool of threads and wait for all of them.
+ * <p>
+ * Tasks may submit other tasks (recursion on process group), await() return when all the tasks
+ * (nested included) are finished. With a parallelism of 1 (or less) the tasks are run directly by
+ * the caller thread, in the order of submission.
+ * <p>
+ * Only the caller thread must call await(), a task must never wait for another task : a task that need the result
+ * of a fetch is submitted with the fetch ({@link #submit(Result, After)}), it is run when the fetch is done.
+ * <p>
+ * The caller thread wait on submit while {@link #PENDING_BY_THREAD} tasks by thread are pending (the tasks are not
+ * kept in memory faster than they are run), the tasks themselves never wait on submit.
+ */
+public class ParallelRunner implements AutoCloseable {
+
+    /**
+     * The logger.
+     */
+    private final static Logger LOG = LoggerFactory.getLogger(ParallelRunner.class);
+
+    private final static AtomicInteger poolNumber = new AtomicInteger();
+
+    /**
+     * the pending tasks by thread of the pool before the caller wait on submit
+     */
+    public final static int PENDING_BY_THREAD = 4;
+
+    /**
+     * task that can be run by the runner
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * task that give a result
+     *
+     * @param <T> type of the result
+     */
+    @FunctionalInterface
+    public interface Fetch<T> {
+        T get() throws Exception;
+    }
+
+    /**
+     * task that use the result of a fetch
+     *
+     * @param <T> type of the result of the fetch
+     */
+    @FunctionalInterface
+    public interface After<T> {
+        void run(T input) throws Exception;
+    }
+
+    /**
+     * task that give a result from the result of a fetch
+     *
+     * @param <T> type of the result of the fetch
+     * @param <R> type of the result
+     */
+    @FunctionalInterface
+    public interface FetchAfter<T, R> {
+        R get(T input) throws Exception;
+    }
+
+    /**
+     * result of a fetch, read with get() (that wait the end of the fetch and throw its error)
+     *
+     * @param <T> type of the result
+     */
+    public static class Result<T> implements Supplier<T> {
+
+        private final CompletableFuture<T> future;
+
+        private Result(CompletableFuture<T> future) {
+            this.future = future;
+        }
+
+        /**
+         * @param value
+         * @param <T>
+         * @return a result already known
+         */
+        public static <T> Result<T> of(T value) {
+            return new Result<>(CompletableFuture.completedFuture(value));
+        }
+
+        @Override
+        public T get() {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                throw cause(e);
+            }
+        }
+    }
+
+    private final ExecutorService executor;
+
+    private final Object lock = new Object();
+
+    private int pending = 0;
+
+    private final int maxPending;
+
+    /**
+     * true on the threads of the pool
+     */
+    private final ThreadLocal<Boolean> worker = ThreadLocal.withInitial(() -> false);
+
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    public ParallelRunner(int parallelism) {
+        if (parallelism > 1) {
+            String prefix = "nifi-config-" + poolNumber.incrementAndGet() + "-";
+            AtomicInteger threadNumber = new AtomicInteger();
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(() -> {
+                    worker.set(true);
+                    runnable.run();
+                }, prefix + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            executor = Executors.newFixedThreadPool(parallelism, threadFactory);
+            maxPending = parallelism * PENDING_BY_THREAD;
+        } else {
+            executor = null;
+            maxPending = 0;
+        }
+    }
+
+    /**
+     * submit a task. In sequential mode the task is run immediately and the error is thrown to the caller.
+     *
+     * @param task
+     */
+    public void submit(Task task) {
+        if (executor == null) {
+            run(task);
+            return;
+        }
+        if (failure.get() != null) {
+            //an other task is in error, don't start new work
+            return;
+        }
+        reserve();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (failure.get() == null) {
+                        run(task);
+                    }
+                } catch (Throwable e) {
+                    LOG.debug(e.getMessage(), e);
+                    failure.compareAndSet(null, cause(e));
+                } finally {
+                    synchronized (lock) {
+                        pending--;
+                        lock.notifyAll();
+                    }
+                }
+            });
+        } catch (Throwable e) {
+            synchronized (lock) {
+                pending--;
+                lock.notifyAll();
+            }
+            throw new ConfigException(e);
+        }
+    }
+
+    /**
+     * start a task giving a result. In sequential mode the task is run immediately and its error is kept in the result.
+     * The fetch are not counted by await(), the caller must read all of them (or submit a task with them).
+     *
+     * @param fetch
+     * @param <T>
+     * @return
+     */
+    public <T> Result<T> fetch(Fetch<T> fetch) {
+        if (executor == null) {
+            return completed(fetch);
+        }
+        try {
+            return new Result<>(CompletableFuture.supplyAsync(() -> call(fetch), executor));
+        } catch (Throwable e) {
+            throw new ConfigException(e);
+        }
+    }
+
+    /**
+     * start a task giving a result when the input is done (the error of the input is the error of the result).
+     * In sequential mode the task is run immediately.
+     *
+     * @param input
+     * @param fetch
+     * @param <T>
+     * @param <R>
+     * @return
+     */
+    public <T, R> Result<R> fetch(Result<T> input, FetchAfter<T, R> fetch) {
+        if (executor == null) {
+            return completed(() -> fetch.get(input.get()));
+        }
+        try {
+            return new Result<>(input.future.thenApplyAsync(value -> call(() -> fetch.get(value)), executor));
+        } catch (Throwable e) {
+            throw new ConfigException(e);
+        }
+    }
+
+    /**
+     * submit a task that use the result of a fetch, counted by await() like the other tasks. The task is run when the
+     * fetch is done, by the thread that end the fetch (or by the caller if the fetch is already done) : it must be short,
+     * the long work (a request to nifi) is submitted by the task. In sequential mode the task is run immediately and
+     * the error (of the task or of the fetch) is thrown to the caller.
+     *
+     * @param input
+     * @param task
+     * @param <T>
+     */
+    public <T> void submit(Result<T> input, After<T> task) {
+        if (executor == null) {
+            run(() -> task.run(input.get()));
+            return;
+        }
+        if (failure.get() != null) {
+            return;
+        }
+        reserve();
+        input.future.whenComplete((value, error) -> {
+            try {
+                if (error != null) {
+                    failure.compareAndSet(null, cause(error));
+                } else if (failure.get() == null) {
+                    run(() -> task.run(value));
+                }
+            } catch (Throwable e) {
+                LOG.debug(e.getMessage(), e);
+                failure.compareAndSet(null, cause(e));
+            } finally {
+                synchronized (lock) {
+                    pending--;
+                    lock.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * count a new pending task. The caller thread wait while too many tasks are pending, a thread of the pool never
+     * wait (the tasks that would free the places could be queued behind it).
+     */
+    private void reserve() {
+        synchronized (lock) {
+            while (!worker.get() && pending >= maxPending && failure.get() == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                    throw new ConfigException(e);
+                }
+            }
+            pending++;
+        }
+    }
+
+    /**
+     * wait the end of all the submitted tasks, and throw the first error reported by a task (an Error thrown by a task
+     * is thrown as a ConfigException)
+     */
+    public void await() {
+        if (executor != null) {
+            synchronized (lock) {
+                while (pending > 0) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        executor.shutdownNow();
+                        Thread.currentThread().interrupt();
+                        throw new ConfigException(e);
+                    }
+                }
+            }
+        }
+        RuntimeException e = failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> Result<T> completed(Fetch<T> fetch) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(call(fetch));
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+        return new Result<>(future);
+    }
+
+    /**
+     * @param error error of a future
+     * @return the error of the task
+     */
+    private static RuntimeException cause(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new ConfigException(cause);
+    }
+
+    /**
+     * run the task and convert the error as the services do
+     *
+     * @param task
+     */
+    private static void run(Task task) {
+        call(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * call the task and convert the error as the services do
+     *
+     * @param fetch
+     * @param <T>
+     * @return
+     */
+    private static <T> T call(Fetch<T> fetch) {
+        try {
+            return fetch.get();
+        } catch (ConfigException e) {
+            throw e;
+        } catch (ApiException e) {
+            throw new ConfigException(e.getMessage() + ": " + e.getResponseBody(), e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ConfigException(e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delay between two calls of a polling : begin small (most of the state changes of nifi are quick) and grow
+ * exponentially until the max delay. A random part (jitter) avoid that the concurrent polling call nifi together.
+ */
+public class PollPolicy {
+
+    private final long initialDelay;
+    private final double multiplier;
+    private final long maxDelay;
+    private final double jitter;
+
+    /**
+     * default policy : 100 ms, 200 ms, 400 ms ... until 2 seconds, with 20% of jitter
+     */
+    public PollPolicy() {
+        this(100, 2, 2000, 0.2);
+    }
+
+    /**
+     * @param initialDelay delay before the second call in millisecond
+     * @param multiplier   growth of the delay between two calls (1 for a fixed delay)
+     * @param maxDelay     max delay in millisecond
+     * @param jitter       part of the delay removed randomly, between 0 (none) and 1
+     */
+    public PollPolicy(long initialDelay, double multiplier, long maxDelay, double jitter) {
+        if (initialDelay < 0 || multiplier < 1 || maxDelay < 0 || jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("invalid poll policy : initialDelay=" + initialDelay + " multiplier=" + multiplier
+                    + " maxDelay=" + maxDelay + " jitter=" + jitter);
+        }
+        this.initialDelay = initialDelay;
+        this.multiplier = multiplier;
+        this.maxDelay = maxDelay;
+        this.jitter = jitter;
+    }
+
+    /**
+     * policy of the old polling : always the same delay
+     *
+     * @param interval in second
+     * @return
+     */
+    public static PollPolicy fixed(int interval) {
+        long delay = Math.max(0, interval) * 1000L;
+        return new PollPolicy(delay, 1, delay, 0);
+    }
+
+    /**
+     * @param attempt number of calls already done (begin at 1)
+     * @return the delay in millisecond before the next call
+     */
+    public long delay(int attempt) {
+        double delay = initialDelay * Math.pow(multiplier, Math.max(0, attempt - 1));
+        delay = Math.min(delay, maxDelay);
+        if (jitter > 0) {
+            delay -= delay * jitter * ThreadLocalRandom.current().nextDouble();
+        }
+        return (long) delay;
+    }
+
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+}
@@ -0,0 +1,270 @@
+package com.github.hermannpencole.nifi.config.utils;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Timeline of the phases of a run (spans by thread), written on the chrome trace event format
+ * (open the file with chrome://tracing or https://ui.perfetto.dev).
+ * <p>
+ * The recording is global like the api client (see {@link com.github.hermannpencole.nifi.swagger.Configuration}) :
+ * disabled by default, a span is then a shared no-op.
+ * <pre>
+ * try (Trace.Span span = Trace.span("ProcessGroupService.stop", "group", name)) {
+ *     ...
+ *     span.attribute("processors", count);
+ * }
+ * </pre>
+ * A phase that doesn't use its span (all the attributes known at the beginning) is run with
+ * {@link #run(Span, Phase)} or {@link #call(Span, Call)} :
+ * <pre>
+ * Trace.run(Trace.span("ProcessGroupService.stopLevel", "group", name), () -&gt; ...);
+ * </pre>
+ */
+public class Trace {
+
+    private static final Span NOOP = new Span(null, null, null, null);
+
+    private static volatile Trace current = null;
+
+    private final long origin = System.nanoTime();
+
+    private final ConcurrentLinkedQueue<Span> spans = new ConcurrentLinkedQueue<>();
+
+    private final Map<Long, String> threads = new ConcurrentHashMap<>();
+
+    private Trace() {
+    }
+
+    /**
+     * phase run in a span
+     *
+     * @param <E> exception of the phase
+     */
+    @FunctionalInterface
+    public interface Phase<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * phase that give a result, run in a span
+     *
+     * @param <T> type of the result
+     * @param <E> exception of the phase
+     */
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * start a new recording, the spans recorded before are lost
+     */
+    public static void enable() {
+        current = new Trace();
+    }
+
+    /**
+     * stop the recording and forget the spans
+     */
+    public static void disable() {
+        current = null;
+    }
+
+    /**
+     * @return true if the spans are recorded
+     */
+    public static boolean isEnabled() {
+        return current != null;
+    }
+
+    /**
+     * begin a span on the current thread, to close at the end of the phase.
+     *
+     * @param name       name of the phase, the category is the part before the first '.' (the service)
+     * @param attributes pairs of name and value (ex : "group", "my group")
+     * @return the span
+     */
+    public static Span span(String name, Object... attributes) {
+        Trace trace = current;
+        if (trace == null) {
+            return NOOP;
+        }
+        Map<String, String> args = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < attributes.length; i += 2) {
+            args.put(String.valueOf(attributes[i]), String.valueOf(attributes[i + 1]));
+        }
+        Thread thread = Thread.currentThread();
+        trace.threads.putIfAbsent(thread.getId(), thread.getName());
+        return new Span(trace, name, args, thread.getId());
+    }
+
+    /**
+     * run a phase and close its span at the end (also on exception)
+     *
+     * @param span  the span of the phase, see {@link #span(String, Object...)}
+     * @param phase
+     * @param <E>   exception of the phase
+     * @throws E
+     */
+    public static <E extends Exception> void run(Span span, Phase<E> phase) throws E {
+        try {
+            phase.run();
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * run a phase and close its span at the end (also on exception)
+     *
+     * @param span the span of the phase, see {@link #span(String, Object...)}
+     * @param call
+     * @param <T>  type of the result
+     * @param <E>  exception of the phase
+     * @return the result of the phase
+     * @throws E
+     */
+    public static <T, E extends Exception> T call(Span span, Call<T, E> call) throws E {
+        try {
+            return call.call();
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * @return the spans closed of the current recording, empty if disabled
+     */
+    public static List<Span> spans() {
+        Trace trace = current;
+        return trace == null ? Collections.emptyList() : new ArrayList<>(trace.spans);
+    }
+
+    /**
+     * write the spans closed of the current recording (nothing if disabled) on the chrome trace event format
+     *
+     * @param file
+     * @throws IOException
+     */
+    public static void write(File file) throws IOException {
+        Trace trace = current;
+        if (trace == null) {
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+             JsonWriter jsonWriter = new JsonWriter(writer)) {
+            jsonWriter.beginObject();
+            jsonWriter.name("displayTimeUnit").value("ms");
+            jsonWriter.name("traceEvents");
+            jsonWriter.beginArray();
+            for (Map.Entry<Long, String> thread : trace.threads.entrySet()) {
+                jsonWriter.beginObject();
+                jsonWriter.name("name").value("thread_name");
+                jsonWriter.name("ph").value("M");
+                jsonWriter.name("pid").value(1);
+                jsonWriter.name("tid").value(thread.getKey());
+                jsonWriter.name("args").beginObject().name("name").value(thread.getValue()).endObject();
+                jsonWriter.endObject();
+            }
+            for (Span span : trace.spans) {
+                jsonWriter.beginObject();
+                jsonWriter.name("name").value(span.name);
+                jsonWriter.name("cat").value(span.getCategory());
+                jsonWriter.name("ph").value("X");
+                jsonWriter.name("ts").value((span.begin - trace.origin) / 1000);
+                jsonWriter.name("dur").value(Math.max(1, (span.end - span.begin) / 1000));
+                jsonWriter.name("pid").value(1);
+                jsonWriter.name("tid").value(span.threadId);
+                jsonWriter.name("args");
+                jsonWriter.beginObject();
+                for (Map.Entry<String, String> arg : span.args.entrySet()) {
+                    jsonWriter.name(arg.getKey()).value(arg.getValue());
+                }
+                jsonWriter.endObject();
+                jsonWriter.endObject();
+            }
+            jsonWriter.endArray();
+            jsonWriter.endObject();
+        }
+    }
+
+    /**
+     * a phase on a thread
+     */
+    public static class Span implements AutoCloseable {
+
+        private final Trace trace;
+
+        private final String name;
+
+        private final Map<String, String> args;
+
+        private final Long threadId;
+
+        private final long begin = System.nanoTime();
+
+        private long end = -1;
+
+        private Span(Trace trace, String name, Map<String, String> args, Long threadId) {
+            this.trace = trace;
+            this.name = name;
+            this.args = args;
+            this.threadId = threadId;
+        }
+
+        /**
+         * add an attribute known during the phase
+         *
+         * @param name
+         * @param value
+         * @return the span
+         */
+        public Span attribute(String name, Object value) {
+            if (trace != null) {
+                args.put(name, String.valueOf(value));
+            }
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getCategory() {
+            int dot = name.indexOf('.');
+            return dot < 0 ? name : name.substring(0, dot);
+        }
+
+        public Map<String, String> getArgs() {
+            return args;
+        }
+
+        /**
+         * @return duration in nano seconds, -1 if not closed
+         */
+        public long getDuration() {
+            return end < 0 ? -1 : end - begin;
+        }
+
+        @Override
+        public void close() {
+            if (trace != null && end < 0) {
+                end = System.nanoTime();
+                trace.spans.add(this);
+            }
+        }
+    }
+}
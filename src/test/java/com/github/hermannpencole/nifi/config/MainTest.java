@@ -3,11 +3,14 @@ package com.github.hermannpencole.nifi.config;
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.service.*;
 import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.Configuration;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
 import org.apache.commons.cli.UnrecognizedOptionException;
 import org.junit.Before;
 import org.junit.Test;
@@ -23,6 +26,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.Arrays;
 
+import static org.junit.Assert.assertNotSame;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
@@ -61,6 +65,8 @@ public class MainTest {
                 bind(TemplateService.class).toInstance(templateServiceMock);
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
             }
         });
@@ -81,6 +87,8 @@ public class MainTest {
                 bind(TemplateService.class).toInstance(templateServiceMock);
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
             }
         });
@@ -101,6 +109,8 @@ public class MainTest {
                 bind(TemplateService.class).toInstance(templateServiceMock);
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
             }
         });
@@ -121,6 +131,8 @@ public class MainTest {
                 bind(UpdateProcessorService.class).toInstance(updateProcessorServiceMock);
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
             }
         });
@@ -141,6 +153,8 @@ public class MainTest {
                 bind(ExtractProcessorService.class).toInstance(extractProcessorServiceMock);
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
             }
         });
@@ -228,6 +242,8 @@ public class MainTest {
                 bind(TemplateService.class).toInstance(templateServiceMock);
                 bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(10);
                 bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(10);
+                bind(Integer.class).annotatedWith(Names.named("parallelism")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("scopedStop")).toInstance(false);
                 bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
             }
         });
@@ -238,4 +254,12 @@ public class MainTest {
         Main.main(new String[]{"-nifi","http://localhost:8080/nifi-api","-branch","\"root>N2\"","-conf","adr","-m","undeploy"});
 
     }
+
+    @Test
+    public void setHttpConfigurationTest() throws Exception {
+        Main.setConfiguration("http://localhost:8080/nifi-api", true, false, 10000, 10000, 10000);
+        Main.setHttpConfiguration(8, 60, true);
+        OkHttpClient httpClient = Configuration.getDefaultApiClient().getHttpClient();
+        assertNotSame(ConnectionPool.getDefault(), httpClient.getConnectionPool());
+    }
 }
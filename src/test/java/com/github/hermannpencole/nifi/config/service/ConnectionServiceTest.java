@@ -37,6 +37,9 @@ public class ConnectionServiceTest {
     @Mock
     private FlowfileQueuesApi flowfileQueuesApiMock;
 
+    @Mock
+    private FlowApi flowApiMock;
+
     @Test
     public void waitEmptyQueueTest() throws ApiException, IOException, URISyntaxException {
         Injector injector = Guice.createInjector(new AbstractModule() {
@@ -108,4 +111,95 @@ public class ConnectionServiceTest {
         when(connectionsApiMock.getConnection("id")).thenReturn(connection);
         connectionService.waitEmptyQueue(connection);
     }
-}
\ No newline at end of file
+
+    private ConnectionService createConnectionService(boolean forceMode) {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(ConnectionsApi.class).toInstance(connectionsApiMock);
+                bind(FlowfileQueuesApi.class).toInstance(flowfileQueuesApiMock);
+                bind(FlowApi.class).toInstance(flowApiMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(0);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(forceMode);
+            }
+        });
+        return injector.getInstance(ConnectionService.class);
+    }
+
+    private static ProcessGroupStatusEntity createStatus(String... idAndCounts) {
+        ProcessGroupStatusEntity status = new ProcessGroupStatusEntity();
+        status.setProcessGroupStatus(new ProcessGroupStatusDTO());
+        status.getProcessGroupStatus().setAggregateSnapshot(new ProcessGroupStatusSnapshotDTO());
+        for (int i = 0; i < idAndCounts.length; i += 2) {
+            ConnectionStatusSnapshotEntity connection = new ConnectionStatusSnapshotEntity();
+            connection.setId(idAndCounts[i]);
+            connection.setConnectionStatusSnapshot(new ConnectionStatusSnapshotDTO());
+            connection.getConnectionStatusSnapshot().setId(idAndCounts[i]);
+            connection.getConnectionStatusSnapshot().setQueuedCount(idAndCounts[i + 1]);
+            connection.getConnectionStatusSnapshot().setQueuedSize("0");
+            status.getProcessGroupStatus().getAggregateSnapshot().addConnectionStatusSnapshotsItem(connection);
+        }
+        return status;
+    }
+
+    @Test
+    public void waitEmptyQueuesTest() throws ApiException, IOException, URISyntaxException {
+        ConnectionService connectionService = createConnectionService(false);
+        List<ConnectionEntity> connections = Arrays.asList(
+                TestUtils.createConnectionEntity("id1","sourceId","destinationId"),
+                TestUtils.createConnectionEntity("id2","sourceId","destinationId"));
+        when(flowApiMock.getProcessGroupStatus("idGroup", false, false, null))
+                .thenReturn(createStatus("id1", "0", "id2", "5", "id3", "9"))
+                .thenReturn(createStatus("id1", "3", "id2", "0", "id3", "9"));
+        connectionService.waitEmptyQueues("idGroup", connections);
+        //one request by tick for all the connections, id1 is released on the first tick
+        verify(flowApiMock, times(2)).getProcessGroupStatus("idGroup", false, false, null);
+        verify(connectionsApiMock, never()).getConnection(anyString());
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void waitEmptyQueuesNoStatusTest() throws ApiException, IOException, URISyntaxException {
+        ConnectionService connectionService = createConnectionService(false);
+        when(flowApiMock.getProcessGroupStatus("idGroup", false, false, null))
+                .thenReturn(createStatus("id1", "0"));
+        //id2 has no status on the group : its queue is asked alone, it is not empty
+        ConnectionEntity connection = TestUtils.createConnectionEntity("id2","sourceId","destinationId");
+        connection.setStatus(new ConnectionStatusDTO());
+        connection.getStatus().setAggregateSnapshot(new ConnectionStatusSnapshotDTO());
+        connection.getStatus().getAggregateSnapshot().setQueuedCount("1");
+        connection.getStatus().getAggregateSnapshot().setQueuedSize("0");
+        when(connectionsApiMock.getConnection("id2")).thenReturn(connection);
+        connectionService.waitEmptyQueues("idGroup", Arrays.asList(
+                TestUtils.createConnectionEntity("id1","sourceId","destinationId"), connection));
+    }
+
+    @Test
+    public void waitEmptyQueuesForceTest() throws ApiException, IOException, URISyntaxException {
+        ConnectionService connectionService = createConnectionService(true);
+        List<ConnectionEntity> connections = Arrays.asList(
+                TestUtils.createConnectionEntity("id1","sourceId","destinationId"),
+                TestUtils.createConnectionEntity("id2","sourceId","destinationId"));
+        when(flowApiMock.getProcessGroupStatus("idGroup", false, false, null))
+                .thenReturn(createStatus("id1", "0", "id2", "5"));
+
+        DropRequestEntity dropRequest = new DropRequestEntity();
+        dropRequest.setDropRequest(new DropRequestDTO());
+        dropRequest.getDropRequest().setId("idDrop");
+        dropRequest.getDropRequest().setFinished(true);
+        when(flowfileQueuesApiMock.createDropRequest("id2")).thenReturn(dropRequest);
+        when(flowfileQueuesApiMock.getDropRequest("id2", "idDrop")).thenReturn(dropRequest);
+
+        connectionService.waitEmptyQueues("idGroup", connections);
+        verify(flowfileQueuesApiMock).createDropRequest("id2");
+        verify(flowfileQueuesApiMock, never()).createDropRequest("id1");
+        verify(flowfileQueuesApiMock).removeDropRequest("id2", "idDrop");
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void waitEmptyQueuesTimeOutTest() throws ApiException, IOException, URISyntaxException {
+        ConnectionService connectionService = createConnectionService(false);
+        when(flowApiMock.getProcessGroupStatus("idGroup", false, false, null))
+                .thenReturn(createStatus("id1", "1"));
+        connectionService.waitEmptyQueues("idGroup", Arrays.asList(TestUtils.createConnectionEntity("id1","sourceId","destinationId")));
+    }
+}
@@ -1,9 +1,12 @@
 package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.TimeoutException;
+import com.github.hermannpencole.nifi.config.utils.ParallelRunner;
+import com.github.hermannpencole.nifi.config.utils.PollPolicy;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.ConnectionsApi;
 import com.github.hermannpencole.nifi.swagger.client.ControllerServicesApi;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.FlowfileQueuesApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
 import com.google.inject.AbstractModule;
@@ -18,10 +21,19 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -94,4 +106,116 @@ public class ControllerServicesServiceTest {
         assertEquals(UpdateControllerServiceReferenceRequestEntity.StateEnum.RUNNING, updateControllerServiceReferenceRequestCapture.getValue().getState());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void wavesTest() {
+        //1 <- 2 <- 3, 1 <- 3, 4 alone
+        List<String[]> references = new ArrayList<>();
+        references.add(new String[]{"1", "2"});
+        references.add(new String[]{"2", "3"});
+        references.add(new String[]{"1", "3"});
+        List<List<String>> waves = ControllerServicesService.waves(Arrays.asList("1", "2", "3", "4"), references);
+        assertEquals(3, waves.size());
+        assertEquals(Arrays.asList("1", "4"), waves.get(0));
+        assertEquals(Arrays.asList("2"), waves.get(1));
+        assertEquals(Arrays.asList("3"), waves.get(2));
+    }
+
+    @Test
+    public void updateControllerServicesTest() throws ApiException {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(ControllerServicesApi.class).toInstance(controllerServicesApiMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(PollPolicy.class).toInstance(new PollPolicy(0, 1, 0, 0));
+            }
+        });
+        //ssl (updated) is used by http (enabled), http is used by client (disabled, read on nifi)
+        ControllerServiceEntity ssl = TestUtils.createControllerServiceEntity("ssl", "ssl");
+        ssl.getComponent().setState(ControllerServiceDTO.StateEnum.ENABLED);
+        ssl.getComponent().getReferencingComponents().add(createReference("http"));
+        ControllerServiceEntity http = TestUtils.createControllerServiceEntity("http", "http");
+        http.getComponent().setState(ControllerServiceDTO.StateEnum.ENABLED);
+        http.getComponent().getReferencingComponents().add(createReference("client"));
+        ControllerServiceEntity client = TestUtils.createControllerServiceEntity("client", "client");
+        client.getComponent().setState(ControllerServiceDTO.StateEnum.DISABLED);
+        when(controllerServicesApiMock.getControllerService("client")).thenReturn(client);
+
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        Map<String, ControllerServiceDTO.StateEnum> states = new ConcurrentHashMap<>();
+        when(controllerServicesApiMock.updateControllerService(any(), any())).then(invocation -> {
+            String id = (String) invocation.getArguments()[0];
+            ControllerServiceEntity body = (ControllerServiceEntity) invocation.getArguments()[1];
+            ControllerServiceDTO.StateEnum state = body.getComponent().getState();
+            calls.add(id + ":" + (state == null ? "UPDATE" : state));
+            if (state != null) {
+                states.put(id, state);
+            }
+            return TestUtils.createControllerServiceEntity(id, id);
+        });
+        for (String id : Arrays.asList("ssl", "http")) {
+            when(controllerServicesApiMock.getControllerService(id)).then(invocation -> {
+                ControllerServiceEntity controllerService = TestUtils.createControllerServiceEntity(id, id);
+                controllerService.getComponent().setState(states.get(id));
+                return controllerService;
+            });
+        }
+
+        ControllerServicesService controllerServicesService = injector.getInstance(ControllerServicesService.class);
+        Map<String, ControllerServiceDTO> updates = new HashMap<>();
+        updates.put("ssl", new ControllerServiceDTO());
+        try (ParallelRunner runner = new ParallelRunner(1)) {
+            controllerServicesService.updateControllerServices(updates, Arrays.asList(ssl, http), runner);
+        }
+
+        assertEquals(Arrays.asList("http:DISABLED", "ssl:DISABLED", "ssl:UPDATE", "ssl:ENABLED", "http:ENABLED"), calls);
+    }
+
+    private static ControllerServiceReferencingComponentEntity createReference(String id) {
+        ControllerServiceReferencingComponentEntity reference = new ControllerServiceReferencingComponentEntity();
+        reference.setId(id);
+        reference.setComponent(new ControllerServiceReferencingComponentDTO());
+        reference.getComponent().setId(id);
+        reference.getComponent().setReferenceType(ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE);
+        return reference;
+    }
+
+    @Test
+    public void waitStatesTest() throws ApiException {
+        FlowApi flowApiMock = mock(FlowApi.class);
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(ControllerServicesApi.class).toInstance(controllerServicesApiMock);
+                bind(FlowApi.class).toInstance(flowApiMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+                bind(PollPolicy.class).toInstance(new PollPolicy(0, 1, 0, 0));
+            }
+        });
+        //id1 and id2 on the group, id3 without group
+        ControllerServicesEntity tick1 = new ControllerServicesEntity();
+        tick1.getControllerServices().add(createControllerServiceEntity("id1", ControllerServiceDTO.StateEnum.DISABLED));
+        tick1.getControllerServices().add(createControllerServiceEntity("id2", ControllerServiceDTO.StateEnum.DISABLING));
+        ControllerServicesEntity tick2 = new ControllerServicesEntity();
+        tick2.getControllerServices().add(createControllerServiceEntity("id1", ControllerServiceDTO.StateEnum.DISABLED));
+        tick2.getControllerServices().add(createControllerServiceEntity("id2", ControllerServiceDTO.StateEnum.DISABLED));
+        when(flowApiMock.getControllerServicesFromGroup("group")).thenReturn(tick1).thenReturn(tick2);
+        when(controllerServicesApiMock.getControllerService("id3")).thenReturn(createControllerServiceEntity("id3", ControllerServiceDTO.StateEnum.DISABLED));
+        Map<String, String> groups = new HashMap<>();
+        groups.put("id1", "group");
+        groups.put("id2", "group");
+
+        ControllerServicesService controllerServicesService = injector.getInstance(ControllerServicesService.class);
+        controllerServicesService.waitStates(Arrays.asList("id1", "id2", "id3"), groups, ControllerServiceDTO.StateEnum.DISABLED);
+
+        verify(flowApiMock, times(2)).getControllerServicesFromGroup("group");
+        verify(controllerServicesApiMock, times(1)).getControllerService("id3");
+        verify(controllerServicesApiMock, never()).getControllerService("id1");
+    }
+
+    private static ControllerServiceEntity createControllerServiceEntity(String id, ControllerServiceDTO.StateEnum state) {
+        ControllerServiceEntity controllerService = TestUtils.createControllerServiceEntity(id, id);
+        controllerService.getComponent().setState(state);
+        return controllerService;
+    }
+}
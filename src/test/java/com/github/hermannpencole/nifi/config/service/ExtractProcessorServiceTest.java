@@ -4,9 +4,7 @@ import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
-import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceEntity;
-import com.github.hermannpencole.nifi.swagger.client.model.ControllerServicesEntity;
-import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
 import com.google.gson.Gson;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -16,12 +14,17 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.*;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.when;
 /**
  * API tests for AccessApi
@@ -113,7 +116,101 @@ public class ExtractProcessorServiceTest {
         }
     }
 
+    @Test
+    public void extractBranchParallelOrderTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        File temp = File.createTempFile("tempfile", ".tmp");
+
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        for (int i = 0; i < 10; i++) {
+            response.getProcessGroupFlow().getFlow()
+                    .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup" + i, "nameSubGroup" + i));
+            ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup" + i, "nameSubGroup" + i);
+            subGroupResponse.getProcessGroupFlow().getFlow()
+                    .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubSubGroup" + i, "nameSubSubGroup" + i));
+            when(flowapiMock.getFlow("idSubGroup" + i)).thenReturn(subGroupResponse);
+            when(flowapiMock.getFlow("idSubSubGroup" + i)).thenReturn(TestUtils.createProcessGroupFlowEntity("idSubSubGroup" + i, "nameSubSubGroup" + i));
+        }
 
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(new ControllerServicesEntity());
+
+        extractService.parallelism = 4;
+        extractService.extractByBranch(branch, temp.getAbsolutePath());
+        Gson gson = new Gson();
+        try (Reader reader = new InputStreamReader(new FileInputStream(temp), "UTF-8")) {
+            GroupProcessorsEntity result = gson.fromJson(reader, GroupProcessorsEntity.class);
+            assertEquals(10, result.getGroupProcessorsEntity().size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals("nameSubGroup" + i, result.getGroupProcessorsEntity().get(i).getName());
+                assertEquals("nameSubSubGroup" + i, result.getGroupProcessorsEntity().get(i).getGroupProcessorsEntity().get(0).getName());
+            }
+        }
+    }
+
+    private static ProcessorEntity createConfiguredProcessor(String id, String name) {
+        ProcessorEntity processor = TestUtils.createProcessorEntity(id, name);
+        processor.getComponent().getConfig().getProperties().put("prop", "value " + name);
+        processor.getComponent().getConfig().getProperties().put("ctrl", "idCtrl");
+        processor.getComponent().getConfig().getDescriptors().put("prop", new PropertyDescriptorDTO());
+        PropertyDescriptorDTO controllerDescriptor = new PropertyDescriptorDTO();
+        controllerDescriptor.setIdentifiesControllerService("ControllerService");
+        processor.getComponent().getConfig().getDescriptors().put("ctrl", controllerDescriptor);
+        processor.getComponent().getConfig().setSchedulingPeriod("1 sec");
+        processor.getComponent().getConfig().setConcurrentlySchedulableTaskCount(2);
+        processor.getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+        return processor;
+    }
+
+    @Test
+    public void extractBranchFormatTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        File temp = File.createTempFile("tempfile", ".tmp");
 
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        response.getProcessGroupFlow().getFlow().getProcessors().add(createConfiguredProcessor("idProc1", "nameProc1"));
+        response.getProcessGroupFlow().getFlow().getProcessors().add(createConfiguredProcessor("idProc2", "nameProc2"));
+        response.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup1", "nameSubGroup1"));
+        response.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup2", "nameSubGroup2"));
+        ProcessGroupFlowEntity subGroup1 = TestUtils.createProcessGroupFlowEntity("idSubGroup1", "nameSubGroup1");
+        subGroup1.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubSubGroup", "nameSubSubGroup"));
+        ProcessGroupFlowEntity subSubGroup = TestUtils.createProcessGroupFlowEntity("idSubSubGroup", "nameSubSubGroup");
+        subSubGroup.getProcessGroupFlow().getFlow().getProcessors().add(createConfiguredProcessor("idProc3", "nameProc3"));
+        ProcessGroupFlowEntity subGroup2 = TestUtils.createProcessGroupFlowEntity("idSubGroup2", "nameSubGroup2");
+        when(flowapiMock.getFlow("idSubGroup1")).thenReturn(subGroup1);
+        when(flowapiMock.getFlow("idSubSubGroup")).thenReturn(subSubGroup);
+        when(flowapiMock.getFlow("idSubGroup2")).thenReturn(subGroup2);
+
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        ControllerServicesEntity controllerServicesEntity = new ControllerServicesEntity();
+        controllerServicesEntity.getControllerServices().add(TestUtils.createControllerServiceEntity("idCtrl", "nameCtrl"));
+        when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(controllerServicesEntity);
+
+        extractService.extractByBranch(branch, temp.getAbsolutePath());
+        String expected = new String(Files.readAllBytes(Paths.get("src/test/resources/extractFormat.json")), StandardCharsets.UTF_8);
+        String result = new String(Files.readAllBytes(temp.toPath()), StandardCharsets.UTF_8);
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void extractBranchErrorTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        File temp = File.createTempFile("tempfile", ".tmp");
+
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        response.getProcessGroupFlow().getFlow()
+                .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup", "nameSubGroup"));
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(flowapiMock.getFlow("idSubGroup")).thenThrow(new ApiException());
+
+        extractService.parallelism = 4;
+        try {
+            extractService.extractByBranch(branch, temp.getAbsolutePath());
+            fail("ConfigException expected");
+        } catch (ConfigException e) {
+            //the truncated file is removed
+            assertFalse(temp.exists());
+        }
+    }
 
-}
\ No newline at end of file
+}
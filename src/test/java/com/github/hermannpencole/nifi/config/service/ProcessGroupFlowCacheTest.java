@@ -0,0 +1,94 @@
+package com.github.hermannpencole.nifi.config.service;
+
+import com.github.hermannpencole.nifi.config.utils.ParallelRunner;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessGroupFlowEntity;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for ProcessGroupFlowCache
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ProcessGroupFlowCacheTest {
+    @Mock
+    private FlowApi flowapiMock;
+
+    @InjectMocks
+    private ProcessGroupFlowCache flowCache;
+
+    @Test
+    public void getFlowCachedTest() throws ApiException {
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
+        when(flowapiMock.getFlow("idElt1")).thenReturn(response);
+
+        assertSame(response, flowCache.getFlow("idElt1"));
+        assertSame(response, flowCache.getFlow("idElt1"));
+        verify(flowapiMock, times(1)).getFlow("idElt1");
+
+        flowCache.invalidate("idElt1");
+        assertSame(response, flowCache.getFlow("idElt1"));
+        verify(flowapiMock, times(2)).getFlow("idElt1");
+    }
+
+    @Test
+    public void getFlowRootAliasTest() throws ApiException {
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idRoot", "root");
+        when(flowapiMock.getFlow("root")).thenReturn(response);
+
+        assertSame(response, flowCache.getFlow("root"));
+        assertSame(response, flowCache.getFlow("idRoot"));
+        verify(flowapiMock, never()).getFlow("idRoot");
+
+        //invalidate the id invalidate also the alias
+        flowCache.invalidate("idRoot");
+        flowCache.getFlow("root");
+        verify(flowapiMock, times(2)).getFlow("root");
+    }
+
+    @Test
+    public void getFlowErrorNotCachedTest() throws ApiException {
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
+        when(flowapiMock.getFlow("idElt1")).thenThrow(new ApiException()).thenReturn(response);
+        try {
+            flowCache.getFlow("idElt1");
+            fail("ApiException expected");
+        } catch (ApiException e) {
+            //the error is not kept in cache
+        }
+        assertSame(response, flowCache.getFlow("idElt1"));
+    }
+
+    @Test
+    public void getFlowSingleFlightTest() throws Exception {
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
+        CountDownLatch release = new CountDownLatch(1);
+        when(flowapiMock.getFlow("idElt1")).thenAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return response;
+        });
+
+        try (ParallelRunner runner = new ParallelRunner(8)) {
+            for (int i = 0; i < 8; i++) {
+                runner.submit(() -> assertSame(response, flowCache.getFlow("idElt1")));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            runner.await();
+        }
+        verify(flowapiMock, times(1)).getFlow("idElt1");
+        assertEquals(response, flowCache.getFlow("idElt1"));
+    }
+}
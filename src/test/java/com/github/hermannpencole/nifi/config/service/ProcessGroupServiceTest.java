@@ -1,5 +1,7 @@
 package com.github.hermannpencole.nifi.config.service;
 
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.utils.Trace;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessGroupsApi;
@@ -18,6 +20,7 @@ import java.util.*;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 /**
@@ -37,6 +40,9 @@ public class ProcessGroupServiceTest {
     @Mock
     private ConnectionService connectionServiceMock;
 
+    @Mock
+    private ProcessGroupFlowCache flowCacheMock;
+
     @InjectMocks
     private ProcessGroupService processGroupService;
 
@@ -47,7 +53,7 @@ public class ProcessGroupServiceTest {
         ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "root");
         responseRoot.getProcessGroupFlow().getFlow()
                 .getProcessGroups().add(TestUtils.createProcessGroupEntity("idElt1", "elt1"));
-        when(flowapiMock.getFlow(responseRoot.getProcessGroupFlow().getId())).thenReturn(responseRoot);
+        when(flowCacheMock.getFlow(responseRoot.getProcessGroupFlow().getId())).thenReturn(responseRoot);
 
         Optional<ProcessGroupFlowEntity> response = processGroupService.changeDirectory(branch);
         assertFalse(response.isPresent());
@@ -60,9 +66,9 @@ public class ProcessGroupServiceTest {
         ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "root");
         responseRoot.getProcessGroupFlow().getFlow()
                 .getProcessGroups().add(TestUtils.createProcessGroupEntity("idElt1", "elt1"));
-        when(flowapiMock.getFlow(responseRoot.getProcessGroupFlow().getId())).thenReturn(responseRoot);
+        when(flowCacheMock.getFlow(responseRoot.getProcessGroupFlow().getId())).thenReturn(responseRoot);
         ProcessGroupFlowEntity responseElt = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
-        when(flowapiMock.getFlow(responseElt.getProcessGroupFlow().getId())).thenReturn(responseElt);
+        when(flowCacheMock.getFlow(responseElt.getProcessGroupFlow().getId())).thenReturn(responseElt);
 
         Optional<ProcessGroupFlowEntity> response = processGroupService.changeDirectory(branch);
         assertTrue(response.isPresent());
@@ -76,10 +82,10 @@ public class ProcessGroupServiceTest {
         ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "root");
         responseRoot.getProcessGroupFlow().getFlow()
                 .getProcessGroups().add(TestUtils.createProcessGroupEntity("idElt1", "elt1"));
-        when(flowapiMock.getFlow(responseRoot.getProcessGroupFlow().getId())).thenReturn(responseRoot);
+        when(flowCacheMock.getFlow(responseRoot.getProcessGroupFlow().getId())).thenReturn(responseRoot);
         ProcessGroupFlowEntity responseElt = TestUtils.createProcessGroupFlowEntity("idElt2", "elt2");
         when(processGroupsApiMock.createProcessGroup(any(), any())).thenReturn(TestUtils.createProcessGroupEntity("idElt2", "elt2"));
-        when(flowapiMock.getFlow(responseElt.getProcessGroupFlow().getId())).thenReturn(responseElt);
+        when(flowCacheMock.getFlow(responseElt.getProcessGroupFlow().getId())).thenReturn(responseElt);
 
         ProcessGroupFlowEntity response = processGroupService.createDirectory(branch);
         assertEquals("idElt2", response.getProcessGroupFlow().getId());
@@ -92,9 +98,9 @@ public class ProcessGroupServiceTest {
         ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "root");
         responseRoot.getProcessGroupFlow().getFlow()
                 .getProcessGroups().add(TestUtils.createProcessGroupEntity("idElt1", "elt1"));
-        when(flowapiMock.getFlow(responseRoot.getProcessGroupFlow().getId())).thenReturn(responseRoot);
+        when(flowCacheMock.getFlow(responseRoot.getProcessGroupFlow().getId())).thenReturn(responseRoot);
         ProcessGroupFlowEntity responseElt = TestUtils.createProcessGroupFlowEntity("idElt1", "elt1");
-        when(flowapiMock.getFlow(responseElt.getProcessGroupFlow().getId())).thenReturn(responseElt);
+        when(flowCacheMock.getFlow(responseElt.getProcessGroupFlow().getId())).thenReturn(responseElt);
 
         ProcessGroupFlowEntity response = processGroupService.createDirectory(branch);
         assertEquals("idElt1", response.getProcessGroupFlow().getId());
@@ -122,10 +128,10 @@ public class ProcessGroupServiceTest {
         responseRoot.getProcessGroupFlow().getFlow()
                 .getProcessors().add(TestUtils.createProcessorEntity("idProc2","nameProc2") );
         processGroupService.start(responseRoot);
-        ArgumentCaptor<ProcessorEntity> processorCapture = ArgumentCaptor.forClass(ProcessorEntity.class);
-        verify(processorServiceMock, times(2)).setState(processorCapture.capture(), eq(ProcessorDTO.StateEnum.RUNNING));
-        assertEquals("idProc2", processorCapture.getAllValues().get(0).getId());
-        assertEquals("idProc", processorCapture.getAllValues().get(1).getId());
+        ArgumentCaptor<Collection<ProcessorEntity>> processorCapture = collectionCaptor();
+        verify(processorServiceMock, times(2)).setState(eq("root"), processorCapture.capture(), eq(ProcessorDTO.StateEnum.RUNNING));
+        assertEquals(new HashSet<>(Arrays.asList("idProc2")), ids(processorCapture.getAllValues().get(0)));
+        assertEquals(new HashSet<>(Arrays.asList("idProc")), ids(processorCapture.getAllValues().get(1)));
     }
 
     @Test
@@ -139,16 +145,134 @@ public class ProcessGroupServiceTest {
         responseRoot.getProcessGroupFlow().getFlow()
                 .getProcessors().add(TestUtils.createProcessorEntity("idProc2","nameProc2") );
         processGroupService.stop(responseRoot);
-        ArgumentCaptor<ProcessorEntity> processorCapture = ArgumentCaptor.forClass(ProcessorEntity.class);
-        verify(processorServiceMock, times(2)).setState(processorCapture.capture(), eq(ProcessorDTO.StateEnum.STOPPED));
-        assertEquals("idProc", processorCapture.getAllValues().get(0).getId());
-        assertEquals("idProc2", processorCapture.getAllValues().get(1).getId());
-        ArgumentCaptor<ConnectionEntity> connectionCapture = ArgumentCaptor.forClass(ConnectionEntity.class);
-        verify(connectionServiceMock).waitEmptyQueue(connectionCapture.capture());
-        assertEquals("idProc", connectionCapture.getValue().getSourceId());
+        ArgumentCaptor<Collection<ProcessorEntity>> processorCapture = collectionCaptor();
+        verify(processorServiceMock, times(2)).setState(eq("root"), processorCapture.capture(), eq(ProcessorDTO.StateEnum.STOPPED));
+        assertEquals(new HashSet<>(Arrays.asList("idProc")), ids(processorCapture.getAllValues().get(0)));
+        assertEquals(new HashSet<>(Arrays.asList("idProc2")), ids(processorCapture.getAllValues().get(1)));
+        ArgumentCaptor<Collection<ConnectionEntity>> connectionCapture = collectionCaptor();
+        verify(connectionServiceMock).waitEmptyQueues(eq("root"), connectionCapture.capture());
+        assertEquals(new HashSet<>(Arrays.asList("idCnx")), ids(connectionCapture.getValue()));
+        verify(connectionServiceMock, never()).waitEmptyQueue(any());
 
     }
 
+    @Test
+    public void stopDisabledTest() throws ApiException, IOException, URISyntaxException {
+        //a disabled processor is never stopped : the flow of the group don't change
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        ProcessorEntity stopped = TestUtils.createProcessorEntity("idProc", "nameProc");
+        stopped.getComponent().setState(ProcessorDTO.StateEnum.STOPPED);
+        ProcessorEntity disabled = TestUtils.createProcessorEntity("idProc2", "nameProc2");
+        disabled.getComponent().setState(ProcessorDTO.StateEnum.DISABLED);
+        responseRoot.getProcessGroupFlow().getFlow().getProcessors().add(stopped);
+        responseRoot.getProcessGroupFlow().getFlow().getProcessors().add(disabled);
+        processGroupService.stop(responseRoot);
+        verify(processorServiceMock).setState(eq("root"), any(), eq(ProcessorDTO.StateEnum.STOPPED));
+        verify(flowCacheMock, never()).invalidate(any());
+        disabled.getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+        processGroupService.stop(responseRoot);
+        verify(flowCacheMock).invalidate("root");
+    }
+
+    @Test
+    public void stopSubGroupNotStartedTest() throws ApiException, IOException, URISyntaxException {
+        //stop() recursed on the sub groups with start() : the sub groups (and their own sub groups) were started
+        //instead of stopped
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc","nameProc") );
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup", "nameSubGroup"));
+        ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
+        subGroupResponse.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc2","nameProc2") );
+        subGroupResponse.getProcessGroupFlow().getFlow()
+                .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubSubGroup", "nameSubSubGroup"));
+        ProcessGroupFlowEntity subSubGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubSubGroup", "nameSubSubGroup");
+        subSubGroupResponse.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc3","nameProc3") );
+        when(flowCacheMock.getFlow("idSubGroup")).thenReturn(subGroupResponse);
+        when(flowCacheMock.getFlow("idSubSubGroup")).thenReturn(subSubGroupResponse);
+
+        processGroupService.stop(responseRoot);
+        ArgumentCaptor<Collection<ProcessorEntity>> processorCapture = collectionCaptor();
+        verify(processorServiceMock).setState(eq("root"), processorCapture.capture(), eq(ProcessorDTO.StateEnum.STOPPED));
+        verify(processorServiceMock).setState(eq("idSubGroup"), processorCapture.capture(), eq(ProcessorDTO.StateEnum.STOPPED));
+        verify(processorServiceMock).setState(eq("idSubSubGroup"), processorCapture.capture(), eq(ProcessorDTO.StateEnum.STOPPED));
+        verify(processorServiceMock, never()).setState(any(), any(), eq(ProcessorDTO.StateEnum.RUNNING));
+        verify(flowapiMock, never()).scheduleComponents(any(), any());
+        assertEquals(new HashSet<>(Arrays.asList("idProc")), ids(processorCapture.getAllValues().get(0)));
+        assertEquals(new HashSet<>(Arrays.asList("idProc2")), ids(processorCapture.getAllValues().get(1)));
+        assertEquals(new HashSet<>(Arrays.asList("idProc3")), ids(processorCapture.getAllValues().get(2)));
+    }
+
+    @Test
+    public void startLevelTest() throws ApiException, IOException, URISyntaxException {
+        //3 sources connected to 1 destination : the 3 sources are started with one request after the destination
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        List<Set<String>> started = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 1; i <= 3; i++) {
+            responseRoot.getProcessGroupFlow().getFlow()
+                    .getProcessors().add(TestUtils.createProcessorEntity("idProc" + i,"nameProc" + i));
+            responseRoot.getProcessGroupFlow().getFlow()
+                    .getConnections().add(TestUtils.createConnectionEntity("idCnx" + i, "idProc" + i,"idProcDest"));
+        }
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProcDest","nameProcDest"));
+        doAnswer(invocation -> {
+            started.add(ids((Collection<?>) invocation.getArguments()[1]));
+            return null;
+        }).when(processorServiceMock).setState(eq("root"), any(), eq(ProcessorDTO.StateEnum.RUNNING));
+
+        processGroupService.start(responseRoot);
+        assertEquals(2, started.size());
+        assertEquals(new HashSet<>(Arrays.asList("idProcDest")), started.get(0));
+        assertEquals(new HashSet<>(Arrays.asList("idProc1", "idProc2", "idProc3")), started.get(1));
+    }
+
+    @Test
+    public void startTraceTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        responseRoot.getProcessGroupFlow().getFlow().getConnections().add(TestUtils.createConnectionEntity("idCnx1", "1","2"));
+        responseRoot.getProcessGroupFlow().getFlow().getProcessors().add(TestUtils.createProcessorEntity("1","name1"));
+        responseRoot.getProcessGroupFlow().getFlow().getProcessors().add(TestUtils.createProcessorEntity("2","name2"));
+        Trace.enable();
+        try {
+            processGroupService.start(responseRoot);
+            List<Trace.Span> spans = Trace.spans();
+            assertEquals(3, spans.size());
+            assertEquals("ProcessGroupService.startLevel", spans.get(0).getName());
+            assertEquals("1", spans.get(0).getArgs().get("level"));
+            assertEquals("ProcessGroupService.startLevel", spans.get(1).getName());
+            assertEquals("0", spans.get(1).getArgs().get("level"));
+            assertEquals("ProcessGroupService.start", spans.get(2).getName());
+            assertEquals("rootName", spans.get(2).getArgs().get("group"));
+        } finally {
+            Trace.disable();
+        }
+    }
+
+    @Test
+    public void stopErrorTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc1","nameProc1") );
+        responseRoot.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc2","nameProc2") );
+        doThrow(new ConfigException("error")).when(processorServiceMock).setState(any(), any(), eq(ProcessorDTO.StateEnum.STOPPED));
+
+        try {
+            processGroupService.stop(responseRoot);
+            fail("ConfigException expected");
+        } catch (ConfigException e) {
+            ScheduleComponentsEntity body = new ScheduleComponentsEntity();
+            body.setId("root");
+            body.setState(ScheduleComponentsEntity.StateEnum.RUNNING);
+            body.setComponents(null);
+            verify(flowapiMock).scheduleComponents("root", body);
+        }
+    }
+
     @Test
 //    1 - 2
 //    2 - 7
@@ -188,6 +312,194 @@ public class ProcessGroupServiceTest {
         assertEquals("idCnx6", ((ConnectionEntity)result.get(5).toArray()[0]).getId());
     }
 
+    @Test(timeout = 5000)
+//    1 - 2
+//    2 - 3
+//    3 - 2 (retry loop)
+//    3 - 4
+//    5 (not connected)
+//
+//    1,5 - 2,3 - 4
+    public void reorderCycleTest() throws ApiException, IOException, URISyntaxException {
+        FlowDTO flow = new FlowDTO();
+        flow.getConnections().add(TestUtils.createConnectionEntity("idCnx1", "1","2"));
+        flow.getConnections().add(TestUtils.createConnectionEntity("idCnx2", "2","3"));
+        flow.getConnections().add(TestUtils.createConnectionEntity("idCnx3", "3","2"));
+        flow.getConnections().add(TestUtils.createConnectionEntity("idCnx4", "3","4"));
+        for (int i = 1; i <= 5; i++) {
+            flow.getProcessors().add(TestUtils.createProcessorEntity(String.valueOf(i),"name" + i));
+        }
+        List<Set<?>> result = processGroupService.reorder(flow);
+        assertEquals(5, result.size());
+        assertEquals(new HashSet<>(Arrays.asList("1", "5")), ids(result.get(0)));
+        assertEquals(new HashSet<>(Arrays.asList("idCnx1")), ids(result.get(1)));
+        assertEquals(new HashSet<>(Arrays.asList("2", "3")), ids(result.get(2)));
+        assertEquals(new HashSet<>(Arrays.asList("idCnx4")), ids(result.get(3)));
+        assertEquals(new HashSet<>(Arrays.asList("4")), ids(result.get(4)));
+    }
+
+    @Test
+    public void reorderWithoutConnectionTest() throws ApiException, IOException, URISyntaxException {
+        FlowDTO flow = new FlowDTO();
+        flow.getProcessors().add(TestUtils.createProcessorEntity("1","name1"));
+        flow.getProcessors().add(TestUtils.createProcessorEntity("2","name2"));
+        List<Set<?>> result = processGroupService.reorder(flow);
+        assertEquals(1, result.size());
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), ids(result.get(0)));
+    }
+
+    @Test(timeout = 10000)
+    public void reorderChainScalingTest() throws ApiException, IOException, URISyntaxException {
+        int size = 20000;
+        FlowDTO flow = new FlowDTO();
+        for (int i = 0; i < size; i++) {
+            flow.getProcessors().add(TestUtils.createProcessorEntity(String.valueOf(i),"name" + i));
+            if (i > 0) {
+                flow.getConnections().add(TestUtils.createConnectionEntity("idCnx" + i, String.valueOf(i - 1), String.valueOf(i)));
+            }
+        }
+        List<Set<?>> result = processGroupService.reorder(flow);
+        assertEquals(2 * size - 1, result.size());
+        assertEquals(new HashSet<>(Arrays.asList("0")), ids(result.get(0)));
+        assertEquals(new HashSet<>(Arrays.asList(String.valueOf(size - 1))), ids(result.get(2 * size - 2)));
+    }
+
+    @Test(timeout = 10000)
+    public void reorderGridWithLoopScalingTest() throws ApiException, IOException, URISyntaxException {
+        //100 lines of 100 processors, each processor connected to the next one and to the next line
+        //and a retry loop on each line
+        int width = 100;
+        FlowDTO flow = new FlowDTO();
+        for (int line = 0; line < width; line++) {
+            for (int column = 0; column < width; column++) {
+                String id = line + "-" + column;
+                flow.getProcessors().add(TestUtils.createProcessorEntity(id, "name" + id));
+                if (column > 0) {
+                    flow.getConnections().add(TestUtils.createConnectionEntity("c" + id, line + "-" + (column - 1), id));
+                }
+                if (line > 0) {
+                    flow.getConnections().add(TestUtils.createConnectionEntity("l" + id, (line - 1) + "-" + column, id));
+                }
+            }
+            flow.getConnections().add(TestUtils.createConnectionEntity("r" + line, line + "-" + (width - 1), line + "-" + (width - 2)));
+        }
+        List<Set<?>> result = processGroupService.reorder(flow);
+        //each retry loop collapse the two last processors of the line
+        Set<String> processors = new HashSet<>();
+        int connections = 0;
+        for (Set<?> set : result) {
+            for (Object object : set) {
+                if (object instanceof ProcessorEntity) {
+                    processors.add(((ProcessorEntity) object).getId());
+                } else {
+                    connections++;
+                }
+            }
+        }
+        assertEquals(width * width, processors.size());
+        //all the connections except the retry loop and the connections inside the collapsed loops
+        assertEquals(2 * width * (width - 1) - width, connections);
+        assertEquals(new HashSet<>(Arrays.asList("0-0")), ids(result.get(0)));
+    }
+
+    @Test
+    public void scopeTest() throws ApiException, IOException, URISyntaxException {
+        FlowDTO flow = new FlowDTO();
+        flow.getConnections().add(TestUtils.createConnectionEntity("idCnx1", "1","2"));
+        flow.getConnections().add(TestUtils.createConnectionEntity("idCnx2", "2","3"));
+        flow.getConnections().add(TestUtils.createConnectionEntity("idCnx3", "3","2"));
+        flow.getConnections().add(TestUtils.createConnectionEntity("idCnx4", "3","4"));
+        for (int i = 1; i <= 4; i++) {
+            flow.getProcessors().add(TestUtils.createProcessorEntity(String.valueOf(i),"name" + i));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("2", "3")), processGroupService.scope(flow, new HashSet<>(Arrays.asList("3"))));
+        assertEquals(new HashSet<>(Arrays.asList("1", "4")), processGroupService.scope(flow, new HashSet<>(Arrays.asList("1", "4"))));
+    }
+
+    @Test
+    public void stopScopeTest() throws ApiException, IOException, URISyntaxException {
+        //1 -> 2 -> 3 -> 4, 2, 3 and 4 are on the scope, 4 is already stopped : the queue to 4 can't be drained
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        responseRoot.getProcessGroupFlow().getFlow().getConnections().add(TestUtils.createConnectionEntity("idCnx1", "1","2"));
+        responseRoot.getProcessGroupFlow().getFlow().getConnections().add(TestUtils.createConnectionEntity("idCnx2", "2","3"));
+        responseRoot.getProcessGroupFlow().getFlow().getConnections().add(TestUtils.createConnectionEntity("idCnx3", "3","4"));
+        for (int i = 1; i <= 4; i++) {
+            ProcessorEntity processor = TestUtils.createProcessorEntity(String.valueOf(i),"name" + i);
+            processor.getComponent().setState(i == 4 ? ProcessorDTO.StateEnum.STOPPED : ProcessorDTO.StateEnum.RUNNING);
+            responseRoot.getProcessGroupFlow().getFlow().getProcessors().add(processor);
+        }
+        Set<String> stopped = processGroupService.stop(responseRoot, new HashSet<>(Arrays.asList("2", "3", "4")));
+        assertEquals(new HashSet<>(Arrays.asList("2", "3")), stopped);
+        ArgumentCaptor<Collection<ProcessorEntity>> processorCapture = collectionCaptor();
+        verify(processorServiceMock, times(2)).setState(eq("root"), processorCapture.capture(), eq(ProcessorDTO.StateEnum.STOPPED));
+        assertEquals(new HashSet<>(Arrays.asList("2")), ids(processorCapture.getAllValues().get(0)));
+        assertEquals(new HashSet<>(Arrays.asList("3")), ids(processorCapture.getAllValues().get(1)));
+        ArgumentCaptor<Collection<ConnectionEntity>> connectionCapture = collectionCaptor();
+        verify(connectionServiceMock).waitEmptyQueues(eq("root"), connectionCapture.capture());
+        assertEquals(new HashSet<>(Arrays.asList("idCnx2")), ids(connectionCapture.getValue()));
+        verify(flowCacheMock).invalidate("root");
+        verify(flowapiMock, never()).scheduleComponents(any(), any());
+    }
+
+    @Test
+    public void stopScopeErrorTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        responseRoot.getProcessGroupFlow().getFlow().getConnections().add(TestUtils.createConnectionEntity("idCnx1", "1","2"));
+        for (int i = 1; i <= 2; i++) {
+            ProcessorEntity processor = TestUtils.createProcessorEntity(String.valueOf(i),"name" + i);
+            processor.getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+            responseRoot.getProcessGroupFlow().getFlow().getProcessors().add(processor);
+        }
+        when(flowCacheMock.getFlow("root")).thenReturn(responseRoot);
+        doThrow(new ConfigException("error")).when(connectionServiceMock).waitEmptyQueues(eq("root"), any());
+        try {
+            processGroupService.stop(responseRoot, new HashSet<>(Arrays.asList("1", "2")));
+            fail("ConfigException expected");
+        } catch (ConfigException e) {
+            //only the scope is restarted
+            ArgumentCaptor<Collection<ProcessorEntity>> processorCapture = collectionCaptor();
+            verify(processorServiceMock, times(2)).setState(eq("root"), processorCapture.capture(), eq(ProcessorDTO.StateEnum.RUNNING));
+            assertEquals(new HashSet<>(Arrays.asList("2")), ids(processorCapture.getAllValues().get(0)));
+            assertEquals(new HashSet<>(Arrays.asList("1")), ids(processorCapture.getAllValues().get(1)));
+            verify(flowapiMock, never()).scheduleComponents(any(), any());
+        }
+    }
+
+    @Test
+    public void startScopeTest() throws ApiException, IOException, URISyntaxException {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "rootName");
+        responseRoot.getProcessGroupFlow().getFlow().getConnections().add(TestUtils.createConnectionEntity("idCnx1", "1","2"));
+        for (int i = 1; i <= 3; i++) {
+            responseRoot.getProcessGroupFlow().getFlow().getProcessors().add(TestUtils.createProcessorEntity(String.valueOf(i),"name" + i));
+        }
+        when(flowCacheMock.getFlow("root")).thenReturn(responseRoot);
+        processGroupService.start(responseRoot, new HashSet<>(Arrays.asList("1", "2")));
+        ArgumentCaptor<Collection<ProcessorEntity>> processorCapture = collectionCaptor();
+        verify(processorServiceMock, times(2)).setState(eq("root"), processorCapture.capture(), eq(ProcessorDTO.StateEnum.RUNNING));
+        assertEquals(new HashSet<>(Arrays.asList("2")), ids(processorCapture.getAllValues().get(0)));
+        assertEquals(new HashSet<>(Arrays.asList("1")), ids(processorCapture.getAllValues().get(1)));
+    }
+
+    private static Set<String> ids(Collection<?> set) {
+        Set<String> result = new HashSet<>();
+        for (Object object : set) {
+            if (object instanceof ProcessorEntity) {
+                result.add(((ProcessorEntity) object).getId());
+            } else {
+                result.add(((ConnectionEntity) object).getId());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * captor of a collection of components (ArgumentCaptor.forClass can't give the type of the elements)
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> ArgumentCaptor<Collection<T>> collectionCaptor() {
+        return ArgumentCaptor.forClass((Class) Collection.class);
+    }
+
     @Test
     public void getNextPositionTest() throws ApiException, IOException, URISyntaxException {
         ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "root");
@@ -220,5 +532,47 @@ public class ProcessGroupServiceTest {
         assertEquals(200d, result.getY(), 0);
     }
 
+    @Test
+    public void findByComponentNameTest() {
+        List<ProcessGroupEntity> groups = Arrays.asList(TestUtils.createProcessGroupEntity("idGroupA", "groupA"),
+                TestUtils.createProcessGroupEntity("idGroupB", "groupB"));
+        assertEquals("idGroupB", ProcessGroupService.findByComponentName(groups, " groupB ").get().getId());
+        assertFalse(ProcessGroupService.findByComponentName(groups, "groupC").isPresent());
+    }
+
+    @Test
+    public void findGroupTest() {
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        response.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idGroupA", "groupA"));
+        assertEquals("idGroupA", processGroupService.findGroup(response, " groupA ").get().getId());
+        //the index of the flow is reused
+        response.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idGroupB", "groupB"));
+        assertFalse(processGroupService.findGroup(response, "groupB").isPresent());
+        //a new flow of the group (invalidated on the cache) is indexed again
+        ProcessGroupFlowEntity reloaded = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        reloaded.getProcessGroupFlow().getFlow().setProcessGroups(response.getProcessGroupFlow().getFlow().getProcessGroups());
+        assertEquals("idGroupB", processGroupService.findGroup(reloaded, "groupB").get().getId());
+    }
+
+    @Test
+    public void getNextPositionOffGridTest() {
+        ProcessGroupFlowEntity responseRoot = TestUtils.createProcessGroupFlowEntity("root", "root");
+        double[][] positions = {{0.4, -0.2}, {399.6, 0}, {800, 0.1}, {0, 199.7}, {1200, 200}};
+        for (int i = 0; i < positions.length; i++) {
+            ProcessorEntity processor = TestUtils.createProcessorEntity("idProc" + i, "nameProc" + i);
+            PositionDTO position = new PositionDTO();
+            position.setX(positions[i][0]);
+            position.setY(positions[i][1]);
+            processor.setPosition(position);
+            responseRoot.getProcessGroupFlow().getFlow().getProcessors().add(processor);
+        }
+        //without position
+        responseRoot.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idElt1", "elt1"));
+
+        PositionDTO result = processGroupService.getNextPosition(responseRoot);
+        assertEquals(400d, result.getX(), 0);
+        assertEquals(200d, result.getY(), 0);
+    }
+
 
 }
\ No newline at end of file
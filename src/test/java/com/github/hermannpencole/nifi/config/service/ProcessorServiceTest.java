@@ -3,9 +3,11 @@ package com.github.hermannpencole.nifi.config.service;
 import com.github.hermannpencole.nifi.config.model.ConfigException;
 import com.github.hermannpencole.nifi.swagger.ApiException;
 import com.github.hermannpencole.nifi.swagger.client.ControllerServicesApi;
+import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessorsApi;
 import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
 import com.github.hermannpencole.nifi.swagger.client.model.ProcessorEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ScheduleComponentsEntity;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -18,11 +20,16 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,6 +42,9 @@ public class ProcessorServiceTest {
     @Mock
     private ProcessorsApi processorsApiMock;
 
+    @Mock
+    private FlowApi flowApiMock;
+
     @Test
     public void setStateAlreadyTest() {
         Injector injector = Guice.createInjector(new AbstractModule() {
@@ -96,4 +106,96 @@ public class ProcessorServiceTest {
         processorService.setState(processor, ProcessorDTO.StateEnum.RUNNING);
     }
 
-}
\ No newline at end of file
+    private ProcessorService createProcessorServiceWithFlowApi() {
+        Injector injector = Guice.createInjector(new AbstractModule() {
+            protected void configure() {
+                bind(ProcessorsApi.class).toInstance(processorsApiMock);
+                bind(FlowApi.class).toInstance(flowApiMock);
+                bind(Integer.class).annotatedWith(Names.named("timeout")).toInstance(1);
+                bind(Integer.class).annotatedWith(Names.named("interval")).toInstance(0);
+                bind(Boolean.class).annotatedWith(Names.named("forceMode")).toInstance(false);
+            }
+        });
+        return injector.getInstance(ProcessorService.class);
+    }
+
+    @Test
+    public void setStateGroupTest() {
+        ProcessorService processorService = createProcessorServiceWithFlowApi();
+        ProcessorEntity processor1 = TestUtils.createProcessorEntity("id1", "name1");
+        processor1.getComponent().setState(ProcessorDTO.StateEnum.STOPPED);
+        ProcessorEntity processor2 = TestUtils.createProcessorEntity("id2", "name2");
+        processor2.getComponent().setState(ProcessorDTO.StateEnum.STOPPED);
+        processor2.getRevision().setVersion(7L);
+        ProcessorEntity processor3 = TestUtils.createProcessorEntity("id3", "name3");
+        processor3.getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+
+        processorService.setState("idGroup", Arrays.asList(processor1, processor2, processor3), ProcessorDTO.StateEnum.RUNNING);
+        ArgumentCaptor<ScheduleComponentsEntity> body = ArgumentCaptor.forClass(ScheduleComponentsEntity.class);
+        verify(flowApiMock).scheduleComponents(eq("idGroup"), body.capture());
+        assertEquals("idGroup", body.getValue().getId());
+        assertEquals(ScheduleComponentsEntity.StateEnum.RUNNING, body.getValue().getState());
+        assertEquals(2, body.getValue().getComponents().size());
+        assertEquals(processor1.getRevision(), body.getValue().getComponents().get("id1"));
+        assertEquals(Long.valueOf(7L), body.getValue().getComponents().get("id2").getVersion());
+        verify(processorsApiMock, never()).updateProcessor(anyString(), anyObject());
+    }
+
+    @Test
+    public void setStateGroupDisabledTest() {
+        //nifi reject the whole request if a disabled processor is scheduled
+        ProcessorService processorService = createProcessorServiceWithFlowApi();
+        ProcessorEntity stopped = TestUtils.createProcessorEntity("idStopped", "nameStopped");
+        stopped.getComponent().setState(ProcessorDTO.StateEnum.STOPPED);
+        ProcessorEntity running = TestUtils.createProcessorEntity("idRunning", "nameRunning");
+        running.getComponent().setState(ProcessorDTO.StateEnum.RUNNING);
+        ProcessorEntity disabled = TestUtils.createProcessorEntity("idDisabled", "nameDisabled");
+        disabled.getComponent().setState(ProcessorDTO.StateEnum.DISABLED);
+        List<ProcessorEntity> level = Arrays.asList(stopped, running, disabled);
+
+        processorService.setState("idGroup", level, ProcessorDTO.StateEnum.RUNNING);
+        processorService.setState("idGroup", level, ProcessorDTO.StateEnum.STOPPED);
+        ArgumentCaptor<ScheduleComponentsEntity> body = ArgumentCaptor.forClass(ScheduleComponentsEntity.class);
+        verify(flowApiMock, times(2)).scheduleComponents(eq("idGroup"), body.capture());
+        assertEquals(Collections.singleton("idStopped"), body.getAllValues().get(0).getComponents().keySet());
+        assertEquals(Collections.singleton("idRunning"), body.getAllValues().get(1).getComponents().keySet());
+
+        processorService.setState("idGroup", Arrays.asList(disabled), ProcessorDTO.StateEnum.RUNNING);
+        verify(flowApiMock, times(2)).scheduleComponents(anyString(), anyObject());
+    }
+
+    @Test
+    public void setStateGroupAlreadyTest() {
+        ProcessorService processorService = createProcessorServiceWithFlowApi();
+        ProcessorEntity processor = TestUtils.createProcessorEntity("id", "name");
+        processor.getComponent().setState(ProcessorDTO.StateEnum.STOPPED);
+        processorService.setState("idGroup", Arrays.asList(processor), ProcessorDTO.StateEnum.STOPPED);
+        verify(flowApiMock, never()).scheduleComponents(anyString(), anyObject());
+    }
+
+    @Test
+    public void setStateGroupStoppingTest() {
+        ProcessorService processorService = createProcessorServiceWithFlowApi();
+        ProcessorEntity processor = TestUtils.createProcessorEntity("id", "name");
+        processor.getComponent().setState(ProcessorDTO.StateEnum.STOPPED);
+        when(flowApiMock.scheduleComponents(eq("idGroup"), any()))
+                .thenThrow(new ApiException(409, "", null, "id cannot be started because it is not stopped. Current state is STOPPING"))
+                .thenReturn(new ScheduleComponentsEntity());
+
+        processorService.setState("idGroup", Arrays.asList(processor), ProcessorDTO.StateEnum.RUNNING);
+        verify(flowApiMock, times(2)).scheduleComponents(eq("idGroup"), any());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void setStateGroupExceptionTest() {
+        ProcessorService processorService = createProcessorServiceWithFlowApi();
+        ProcessorEntity processor = TestUtils.createProcessorEntity("id", "name");
+        processor.getComponent().setState(ProcessorDTO.StateEnum.STOPPED);
+        when(flowApiMock.scheduleComponents(eq("idGroup"), any())).thenThrow(new ApiException());
+        processor.getComponent().setValidationErrors(new ArrayList<>());
+        when(processorsApiMock.getProcessor("id")).thenReturn(processor);
+
+        processorService.setState("idGroup", Arrays.asList(processor), ProcessorDTO.StateEnum.RUNNING);
+    }
+
+}
@@ -33,6 +33,8 @@ public class TemplateServiceTest {
     private TemplatesApi templatesApiMock;
     @Mock
     private FlowApi flowApiMock;
+    @Mock
+    private ProcessGroupFlowCache flowCacheMock;
     @InjectMocks
     private TemplateService templateService;
 
@@ -94,6 +96,7 @@ public class TemplateServiceTest {
         verify(templatesApiMock).removeTemplate(template.getId());
         verify(processGroupServiceMock).stop(processGroupFlow.get());
         verify(processGroupsApiMock).removeProcessGroup(processGroupFlow.get().getProcessGroupFlow().getId(), "10", null);
+        verify(flowCacheMock).invalidate(processGroupFlow.get().getProcessGroupFlow().getId());
     }
 
     @Test
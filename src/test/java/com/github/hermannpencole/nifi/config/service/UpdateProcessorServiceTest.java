@@ -1,11 +1,14 @@
 package com.github.hermannpencole.nifi.config.service;
 
 import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.swagger.ApiClient;
 import com.github.hermannpencole.nifi.swagger.ApiException;
+import com.github.hermannpencole.nifi.swagger.JSON;
 import com.github.hermannpencole.nifi.swagger.client.ControllerServicesApi;
 import com.github.hermannpencole.nifi.swagger.client.FlowApi;
 import com.github.hermannpencole.nifi.swagger.client.ProcessorsApi;
 import com.github.hermannpencole.nifi.swagger.client.model.*;
+import com.google.gson.Gson;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -14,15 +17,25 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import javax.inject.Inject;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 /**
  * API tests for AccessApi
  */
@@ -40,6 +53,9 @@ public class UpdateProcessorServiceTest {
     @Mock
     private ControllerServicesService controllerServicesServiceMock;
 
+    @Mock
+    private ProcessGroupFlowCache flowCacheMock;
+
     @InjectMocks
     private UpdateProcessorService updateProcessorService;
 
@@ -59,12 +75,12 @@ public class UpdateProcessorServiceTest {
                 .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup", "nameSubGroup"));
 
         when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
-        when(flowapiMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+        when(flowCacheMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
 
         ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
         subGroupResponse.getProcessGroupFlow().getFlow()
                 .getProcessors().add(TestUtils.createProcessorEntity("idProc2", "nameProc2"));
-        when(flowapiMock.getFlow(subGroupResponse.getProcessGroupFlow().getId())).thenReturn(subGroupResponse);
+        when(flowCacheMock.getFlow(subGroupResponse.getProcessGroupFlow().getId())).thenReturn(subGroupResponse);
 
         updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytest1.json").getPath(), false);
 
@@ -73,6 +89,53 @@ public class UpdateProcessorServiceTest {
         verify(processorsApiMock).updateProcessor(eq("idProc2"), any());
     }
 
+    @Test
+    public void updateBranchParallelTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        response.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc", "nameProc"));
+        response.getProcessGroupFlow().getFlow()
+                .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup", "nameSubGroup"));
+
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(flowCacheMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+
+        ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
+        subGroupResponse.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc2", "nameProc2"));
+        when(flowCacheMock.getFlow(subGroupResponse.getProcessGroupFlow().getId())).thenReturn(subGroupResponse);
+
+        updateProcessorService.parallelism = 4;
+        updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytest1.json").getPath(), false);
+
+        verify(processorsApiMock, times(2)).updateProcessor(any(), any());
+        verify(processorsApiMock).updateProcessor(eq("idProc"), any());
+        verify(processorsApiMock).updateProcessor(eq("idProc2"), any());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void updateErrorBranchParallelTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        response.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc", "nameProc"));
+        response.getProcessGroupFlow().getFlow()
+                .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup", "nameSubGroup"));
+
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(flowCacheMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+
+        ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
+        subGroupResponse.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc2", "nameProc2"));
+        when(flowCacheMock.getFlow(subGroupResponse.getProcessGroupFlow().getId())).thenReturn(subGroupResponse);
+
+        when(processorsApiMock.updateProcessor(any(), any())).thenThrow(new ApiException());
+        updateProcessorService.parallelism = 4;
+        updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytest1.json").getPath(), false);
+    }
+
     @Test
     public void updateBranchWithAutoTerminateRelationshipTest() throws ApiException, IOException, URISyntaxException {
         List<String> branch = Arrays.asList("root", "elt1");
@@ -85,7 +148,7 @@ public class UpdateProcessorServiceTest {
         response.getProcessGroupFlow().getFlow().getProcessors().add(proc);
 
         when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
-        when(flowapiMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+        when(flowCacheMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
 
         updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytestAutoTerminateRelationShip.json").getPath(), false);
 
@@ -102,18 +165,17 @@ public class UpdateProcessorServiceTest {
         ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
 
         when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
-        when(flowapiMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+        when(flowCacheMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
         ControllerServicesEntity controllerServicesEntity = new ControllerServicesEntity();
         controllerServicesEntity.getControllerServices().add(TestUtils.createControllerServiceEntity("idCtrl", "nameCtrl"));
         when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(controllerServicesEntity);
 
         updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytestController.json").getPath(), false);
 
-        ArgumentCaptor<ControllerServiceEntity> controllerServiceEntity = ArgumentCaptor.forClass(ControllerServiceEntity.class);
-        ArgumentCaptor<ControllerServiceDTO> controllerServiceDTO = ArgumentCaptor.forClass(ControllerServiceDTO.class);
-        verify(controllerServicesServiceMock).updateControllerService(controllerServiceDTO.capture(), controllerServiceEntity.capture());
-        assertEquals("idCtrl", controllerServiceEntity.getValue().getComponent().getId());
-        assertEquals(2, controllerServiceDTO.getValue().getProperties().size());
+        ArgumentCaptor<Map<String, ControllerServiceDTO>> controllerServiceDTO = controllerServicesCaptor();
+        verify(controllerServicesServiceMock).updateControllerServices(controllerServiceDTO.capture(), eq(controllerServicesEntity.getControllerServices()), any());
+        assertEquals(1, controllerServiceDTO.getValue().size());
+        assertEquals(2, controllerServiceDTO.getValue().get("idCtrl").getProperties().size());
     }
 
     @Test(expected = ConfigException.class)
@@ -126,14 +188,332 @@ public class UpdateProcessorServiceTest {
                 .getProcessGroups().add(TestUtils.createProcessGroupEntity("idSubGroup", "nameSubGroup"));
 
         when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
-        when(flowapiMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+        when(flowCacheMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+
+        ProcessGroupFlowEntity subGroupResponse = TestUtils.createProcessGroupFlowEntity("idSubGroup", "nameSubGroup");
+        subGroupResponse.getProcessGroupFlow().getFlow()
+                .getProcessors().add(TestUtils.createProcessorEntity("idProc2", "nameProc2"));
+        when(flowCacheMock.getFlow(subGroupResponse.getProcessGroupFlow().getId())).thenReturn(subGroupResponse);
 
         when(processorsApiMock.updateProcessor(any(), any())).thenThrow(new ApiException());
         updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytest1.json").getPath(), false);
 
     }
 
+    @Test
+    public void updateErrorCachedProcessorUnchangedTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        ProcessorEntity proc = TestUtils.createProcessorEntity("idProc", "nameProc");
+        ProcessorDTO component = proc.getComponent();
+        response.getProcessGroupFlow().getFlow().getProcessors().add(proc);
+
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(flowCacheMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+        when(flowapiMock.generateClientId()).thenReturn("clientId");
+        when(processorsApiMock.updateProcessor(any(), any())).thenThrow(new ApiException());
+
+        try {
+            updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytestAutoTerminateRelationShip.json").getPath(), false);
+            fail("ConfigException expected");
+        } catch (ConfigException e) {
+            ArgumentCaptor<ProcessorEntity> processorEntity = ArgumentCaptor.forClass(ProcessorEntity.class);
+            verify(processorsApiMock).updateProcessor(eq("idProc"), processorEntity.capture());
+            assertEquals("clientId", processorEntity.getValue().getRevision().getClientId());
+            assertEquals(Long.valueOf(100L), processorEntity.getValue().getRevision().getVersion());
+            //the put failed : the cached processor is not modified
+            assertTrue(component == proc.getComponent());
+            assertEquals(null, proc.getRevision().getClientId());
+            verify(flowCacheMock, never()).invalidate(any());
+        }
+    }
+
+    /**
+     * captor of the controller services to update by id (ArgumentCaptor.forClass can't give the type of the map)
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArgumentCaptor<Map<String, ControllerServiceDTO>> controllerServicesCaptor() {
+        return ArgumentCaptor.forClass((Class) Map.class);
+    }
+
+    private ProcessGroupFlowEntity createStreamFlow(List<String> branch) throws ApiException {
+        //idComponent (proc1) > idGroupA (procA) > idGroupAA (procAA)
+        //                    > idGroupB (procB)
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+        response.getProcessGroupFlow().getFlow().getProcessors().add(TestUtils.createProcessorEntity("idProc1", "proc1"));
+        response.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idGroupA", "groupA"));
+        response.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idGroupB", "groupB"));
+        ProcessGroupFlowEntity groupA = TestUtils.createProcessGroupFlowEntity("idGroupA", "groupA");
+        groupA.getProcessGroupFlow().getFlow().getProcessors().add(TestUtils.createProcessorEntity("idProcA", "procA"));
+        groupA.getProcessGroupFlow().getFlow().getProcessGroups().add(TestUtils.createProcessGroupEntity("idGroupAA", "groupAA"));
+        ProcessGroupFlowEntity groupAA = TestUtils.createProcessGroupFlowEntity("idGroupAA", "groupAA");
+        groupAA.getProcessGroupFlow().getFlow().getProcessors().add(TestUtils.createProcessorEntity("idProcAA", "procAA"));
+        ProcessGroupFlowEntity groupB = TestUtils.createProcessGroupFlowEntity("idGroupB", "groupB");
+        groupB.getProcessGroupFlow().getFlow().getProcessors().add(TestUtils.createProcessorEntity("idProcB", "procB"));
+
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(flowCacheMock.getFlow("idComponent")).thenReturn(response);
+        when(flowCacheMock.getFlow("idGroupA")).thenReturn(groupA);
+        when(flowCacheMock.getFlow("idGroupAA")).thenReturn(groupAA);
+        when(flowCacheMock.getFlow("idGroupB")).thenReturn(groupB);
+        when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(new ControllerServicesEntity());
+        return response;
+    }
+
+    private static String processorJson(String name) {
+        return "{\"name\": \"" + name + "\", \"config\": {\"properties\": {\"key\": \"value\"}}}";
+    }
+
+    @Test
+    public void updateBranchStreamTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        createStreamFlow(branch);
+        //groupA give its name first (streamed), groupAA and groupB give it last (kept until the name)
+        String configuration = "{"
+                + "\"groupProcessorsEntity\": ["
+                + "  {\"name\": \"groupA\", \"processors\": [" + processorJson("procA") + "],"
+                + "   \"groupProcessorsEntity\": [{\"processors\": [" + processorJson("procAA") + "], \"name\": \"groupAA\"}]},"
+                + "  {\"processors\": [" + processorJson("procB") + "], \"controllerServices\": null, \"name\": \"groupB\"}"
+                + "],"
+                + "\"processors\": [" + processorJson("proc1") + "],"
+                + "\"name\": \"nameComponent\""
+                + "}";
+        File temp = File.createTempFile("tempfile", ".json");
+        Files.write(temp.toPath(), configuration.getBytes(StandardCharsets.UTF_8));
+
+        updateProcessorService.parallelism = 4;
+        updateProcessorService.updateByBranch(branch, temp.getAbsolutePath(), true);
+
+        verify(processorsApiMock, times(4)).updateProcessor(any(), any());
+        verify(processorsApiMock).updateProcessor(eq("idProc1"), any());
+        verify(processorsApiMock).updateProcessor(eq("idProcA"), any());
+        verify(processorsApiMock).updateProcessor(eq("idProcAA"), any());
+        verify(processorsApiMock).updateProcessor(eq("idProcB"), any());
+    }
+
+    @Test(timeout = 10000)
+    public void updateBranchStreamFetchTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = createStreamFlow(branch);
+        //the flows of groupA and groupB are fetched together while the file is read : each fetch wait the other
+        CountDownLatch fetching = new CountDownLatch(2);
+        for (ProcessGroupEntity group : response.getProcessGroupFlow().getFlow().getProcessGroups()) {
+            ProcessGroupFlowEntity flow = flowCacheMock.getFlow(group.getId());
+            when(flowCacheMock.getFlow(group.getId())).thenAnswer(invocation -> {
+                fetching.countDown();
+                if (!fetching.await(5, TimeUnit.SECONDS)) {
+                    throw new ConfigException("the flows of the groups are fetched one after the other");
+                }
+                return flow;
+            });
+        }
+        String configuration = "{\"name\": \"nameComponent\", \"groupProcessorsEntity\": ["
+                + "  {\"name\": \"groupA\", \"processors\": [" + processorJson("procA") + "]},"
+                + "  {\"name\": \"groupB\", \"processors\": [" + processorJson("procB") + "]}"
+                + "]}";
+        File temp = File.createTempFile("tempfile", ".json");
+        Files.write(temp.toPath(), configuration.getBytes(StandardCharsets.UTF_8));
+
+        updateProcessorService.parallelism = 4;
+        updateProcessorService.updateByBranch(branch, temp.getAbsolutePath(), true);
+
+        verify(processorsApiMock).updateProcessor(eq("idProcA"), any());
+        verify(processorsApiMock).updateProcessor(eq("idProcB"), any());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void updateBranchStreamWithoutNameTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        createStreamFlow(branch);
+        String configuration = "{\"groupProcessorsEntity\": [{\"processors\": [" + processorJson("procB") + "]}]}";
+        File temp = File.createTempFile("tempfile", ".json");
+        Files.write(temp.toPath(), configuration.getBytes(StandardCharsets.UTF_8));
+
+        updateProcessorService.updateByBranch(branch, temp.getAbsolutePath(), true);
+    }
+
+    @Test
+    public void updateBranchUnchangedTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = createStreamFlow(branch);
+        //proc1 has already the configuration, procOther is not on the configuration
+        ProcessorEntity proc1 = response.getProcessGroupFlow().getFlow().getProcessors().get(0);
+        proc1.getComponent().getConfig().setProperties(new HashMap<>());
+        proc1.getComponent().getConfig().getProperties().put("key", "value");
+        response.getProcessGroupFlow().getFlow().getProcessors().add(TestUtils.createProcessorEntity("idProcOther", "procOther"));
+        String configuration = "{\"groupProcessorsEntity\": [{\"name\": \"groupB\", \"processors\": [" + processorJson("procB") + "]}],"
+                + "\"processors\": [" + processorJson("proc1") + "], \"name\": \"nameComponent\"}";
+        File temp = File.createTempFile("tempfile", ".json");
+        Files.write(temp.toPath(), configuration.getBytes(StandardCharsets.UTF_8));
+
+        updateProcessorService.updateByBranch(branch, temp.getAbsolutePath(), true);
+
+        verify(processorsApiMock, times(1)).updateProcessor(any(), any());
+        verify(processorsApiMock).updateProcessor(eq("idProcB"), any());
+        verify(flowCacheMock, never()).invalidate("idComponent");
+        verify(flowCacheMock).invalidate("idGroupB");
+    }
+
+    @Test
+    public void updateBranchScopedStopTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = createStreamFlow(branch);
+        //proc1 has already the configuration, procB change
+        ProcessorEntity proc1 = response.getProcessGroupFlow().getFlow().getProcessors().get(0);
+        proc1.getComponent().getConfig().setProperties(new HashMap<>());
+        proc1.getComponent().getConfig().getProperties().put("key", "value");
+        //procA use the controller service of the configuration
+        ControllerServiceEntity controllerService = new ControllerServiceEntity();
+        controllerService.setComponent(new ControllerServiceDTO());
+        controllerService.getComponent().setName("service");
+        ControllerServiceReferencingComponentEntity reference = new ControllerServiceReferencingComponentEntity();
+        reference.setComponent(new ControllerServiceReferencingComponentDTO());
+        reference.getComponent().setId("idProcA");
+        reference.getComponent().setGroupId("idGroupA");
+        reference.getComponent().setReferenceType(ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR);
+        controllerService.getComponent().getReferencingComponents().add(reference);
+        ControllerServicesEntity controllerServices = new ControllerServicesEntity();
+        controllerServices.getControllerServices().add(controllerService);
+        when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(controllerServices);
+        when(processGroupServiceMock.scope(any(), any())).then(invocation -> invocation.getArguments()[1]);
+        when(processGroupServiceMock.stop(any(), any())).then(invocation -> invocation.getArguments()[1]);
+
+        String configuration = "{\"groupProcessorsEntity\": [{\"name\": \"groupB\", \"processors\": [" + processorJson("procB") + "]}],"
+                + "\"processors\": [" + processorJson("proc1") + "], \"name\": \"nameComponent\","
+                + "\"controllerServices\": [{\"name\": \"service\"}]}";
+        File temp = File.createTempFile("tempfile", ".json");
+        Files.write(temp.toPath(), configuration.getBytes(StandardCharsets.UTF_8));
+
+        updateProcessorService.scopedStop = true;
+        updateProcessorService.updateByBranch(branch, temp.getAbsolutePath(), false);
+
+        verify(processGroupServiceMock, never()).stop(any());
+        verify(processGroupServiceMock, never()).start(any());
+        verify(processGroupServiceMock, times(2)).stop(any(), any());
+        verify(processGroupServiceMock).stop(any(), eq(new HashSet<>(Arrays.asList("idProcB"))));
+        verify(processGroupServiceMock).stop(any(), eq(new HashSet<>(Arrays.asList("idProcA"))));
+        verify(processGroupServiceMock).start(any(), eq(new HashSet<>(Arrays.asList("idProcB"))));
+        verify(processGroupServiceMock).start(any(), eq(new HashSet<>(Arrays.asList("idProcA"))));
+        verify(processorsApiMock, times(1)).updateProcessor(any(), any());
+        verify(processorsApiMock).updateProcessor(eq("idProcB"), any());
+    }
+
+    @Test
+    public void updateBranchScopedStopNestedReferenceTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        createStreamFlow(branch);
+        //the controller service of the configuration is used by a controller service, used by procA
+        ControllerServiceReferencingComponentEntity processorReference = new ControllerServiceReferencingComponentEntity();
+        processorReference.setComponent(new ControllerServiceReferencingComponentDTO());
+        processorReference.getComponent().setId("idProcA");
+        processorReference.getComponent().setGroupId("idGroupA");
+        processorReference.getComponent().setReferenceType(ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR);
+        ControllerServiceReferencingComponentEntity serviceReference = new ControllerServiceReferencingComponentEntity();
+        serviceReference.setComponent(new ControllerServiceReferencingComponentDTO());
+        serviceReference.getComponent().setId("idService2");
+        serviceReference.getComponent().setReferenceType(ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE);
+        serviceReference.getComponent().setReferencingComponents(new HashSet<>(Arrays.asList(processorReference)));
+        ControllerServiceEntity controllerService = new ControllerServiceEntity();
+        controllerService.setComponent(new ControllerServiceDTO());
+        controllerService.getComponent().setName("service");
+        controllerService.getComponent().getReferencingComponents().add(serviceReference);
+        ControllerServicesEntity controllerServices = new ControllerServicesEntity();
+        controllerServices.getControllerServices().add(controllerService);
+        //as read from nifi : the elements of the raw set of the nested references are maps
+        Gson gson = new JSON(new ApiClient()).getGson();
+        ControllerServicesEntity fromNifi = gson.fromJson(gson.toJson(controllerServices), ControllerServicesEntity.class);
+        when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(fromNifi);
+        when(processGroupServiceMock.scope(any(), any())).then(invocation -> invocation.getArguments()[1]);
+        when(processGroupServiceMock.stop(any(), any())).then(invocation -> invocation.getArguments()[1]);
+
+        String configuration = "{\"name\": \"nameComponent\", \"controllerServices\": [{\"name\": \"service\"}]}";
+        File temp = File.createTempFile("tempfile", ".json");
+        Files.write(temp.toPath(), configuration.getBytes(StandardCharsets.UTF_8));
+
+        updateProcessorService.scopedStop = true;
+        updateProcessorService.updateByBranch(branch, temp.getAbsolutePath(), false);
+
+        verify(processGroupServiceMock).stop(any(), eq(new HashSet<>(Arrays.asList("idProcA"))));
+        verify(processGroupServiceMock).start(any(), eq(new HashSet<>(Arrays.asList("idProcA"))));
+    }
+
+    @Test
+    public void updateBranchCheckTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        createStreamFlow(branch);
+        //all the names not found are reported, before stop anything
+        String configuration = "{\"groupProcessorsEntity\": ["
+                + "  {\"name\": \"groupA\", \"processors\": [" + processorJson("procA") + ", " + processorJson("procUnknown") + "]},"
+                + "  {\"processors\": [" + processorJson("procB") + "], \"name\": \"groupUnknown\"}"
+                + "],"
+                + "\"processors\": [" + processorJson("proc1") + "], \"name\": \"nameComponent\","
+                + "\"controllerServices\": [{\"name\": \"serviceUnknown\"}]}";
+        File temp = File.createTempFile("tempfile", ".json");
+        Files.write(temp.toPath(), configuration.getBytes(StandardCharsets.UTF_8));
 
+        try {
+            updateProcessorService.updateByBranch(branch, temp.getAbsolutePath(), false);
+            fail("ConfigException expected");
+        } catch (ConfigException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("cannot find processor procUnknown on group groupA"));
+            assertTrue(e.getMessage(), e.getMessage().contains("cannot find group groupUnknown on group nameComponent"));
+            assertTrue(e.getMessage(), e.getMessage().contains("cannot find controller service serviceUnknown on group nameComponent"));
+        }
+        verify(processGroupServiceMock, never()).stop(any());
+        verify(processorsApiMock, never()).updateProcessor(any(), any());
+    }
 
+    @Test
+    public void updateBranchCheckDuplicateTest() throws ApiException, IOException, URISyntaxException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = createStreamFlow(branch);
+        response.getProcessGroupFlow().getFlow().getProcessors().add(TestUtils.createProcessorEntity("idProc1Bis", "proc1"));
+        String configuration = "{\"processors\": [" + processorJson("proc1") + "], \"name\": \"nameComponent\"}";
+        File temp = File.createTempFile("tempfile", ".json");
+        Files.write(temp.toPath(), configuration.getBytes(StandardCharsets.UTF_8));
 
-}
\ No newline at end of file
+        try {
+            updateProcessorService.updateByBranch(branch, temp.getAbsolutePath(), false);
+            fail("ConfigException expected");
+        } catch (ConfigException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("cannot choose between the 2 components with the name proc1 on group nameComponent"));
+        }
+        verify(processGroupServiceMock, never()).stop(any());
+        verify(processorsApiMock, never()).updateProcessor(any(), any());
+    }
+
+    @Test
+    public void updateBranchControllerUnchangedTest() throws ApiException, IOException, URISyntaxException, InterruptedException {
+        List<String> branch = Arrays.asList("root", "elt1");
+        ProcessGroupFlowEntity response = TestUtils.createProcessGroupFlowEntity("idComponent", "nameComponent");
+
+        when(processGroupServiceMock.changeDirectory(branch)).thenReturn(Optional.of(response));
+        when(flowCacheMock.getFlow(response.getProcessGroupFlow().getId())).thenReturn(response);
+        ControllerServicesEntity controllerServicesEntity = new ControllerServicesEntity();
+        ControllerServiceEntity controllerService = TestUtils.createControllerServiceEntity("idCtrl", "nameCtrl");
+        controllerService.getComponent().setState(ControllerServiceDTO.StateEnum.ENABLED);
+        controllerService.getComponent().getProperties().put("key", "value1");
+        controllerService.getComponent().getProperties().put("key2", "value2");
+        controllerServicesEntity.getControllerServices().add(controllerService);
+        when(flowapiMock.getControllerServicesFromGroup("idComponent")).thenReturn(controllerServicesEntity);
+
+        updateProcessorService.updateByBranch(branch, getClass().getClassLoader().getResource("mytestController.json").getPath(), false);
+
+        ArgumentCaptor<Map<String, ControllerServiceDTO>> controllerServiceDTO = controllerServicesCaptor();
+        verify(controllerServicesServiceMock).updateControllerServices(controllerServiceDTO.capture(), any(), any());
+        assertTrue(controllerServiceDTO.getValue().isEmpty());
+    }
+
+    @Test
+    public void findProcByComponentNameTest() {
+        List<ProcessorEntity> processors = Arrays.asList(TestUtils.createProcessorEntity("idProc1", "proc1"),
+                TestUtils.createProcessorEntity("idProc2", "proc2"));
+        assertEquals("idProc2", UpdateProcessorService.findProcByComponentName(processors, " proc2 ").getId());
+        try {
+            UpdateProcessorService.findProcByComponentName(processors, "proc3");
+            fail("ConfigException expected");
+        } catch (ConfigException e) {
+            assertEquals("cannot find proc3", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.github.hermannpencole.nifi.config.standin;
+
+import com.github.hermannpencole.nifi.config.Main;
+import com.google.gson.Gson;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Budget of requests to nifi by endpoint for each mode, as a function of the size of the flow : a change that add
+ * round-trips (ex : a reload of the flow by processor) fail here with the calls by endpoint.
+ * <p>
+ * The modes run on the stand-in without delay, then the polls end on the first request. The flows are those of
+ * {@link NifiStandIn#createFlow(String, int, boolean)} : chains of CHAIN processors (CHAIN levels), flat or on sub
+ * groups of GROUP processors, the configuration change one processor out of 10 and the controller service.
+ */
+public class ApiCallBudgetTest {
+
+    private static final int[] SIZES = {20, 200};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void extractConfigTest() throws Exception {
+        for (Flow flow : flows()) {
+            check(flow, run(flow, "extractConfig", "root > flow"), budget(
+                    "GET /flow/about", 1,
+                    //the root, the branch and each sub group
+                    "GET /flow/process-groups/{id}", 2 + flow.groups,
+                    "GET /flow/process-groups/{id}/controller-services", 1));
+        }
+    }
+
+    @Test
+    public void updateConfigTest() throws Exception {
+        for (Flow flow : flows()) {
+            check(flow, run(flow, "updateConfig", "root > flow"), budget(
+                    "GET /flow/about", 1,
+                    "GET /flow/client-id", 1,
+                    //the root, the branch (before and after the stop, before the start), each sub group (stop, start)
+                    "GET /flow/process-groups/{id}", 4 + 2 * flow.groups,
+                    //check, update, wait disabled, wait enabled
+                    "GET /flow/process-groups/{id}/controller-services", 4,
+                    //one poll by level of connections
+                    "GET /flow/process-groups/{id}/status", (NifiStandIn.CHAIN - 1) * flow.parents,
+                    //one stop and one start by level
+                    "PUT /flow/process-groups/{id}", 2 * NifiStandIn.CHAIN * flow.parents,
+                    "PUT /processors/{id}", flow.changed,
+                    //disable, update, enable
+                    "PUT /controller-services/{id}", 3));
+        }
+    }
+
+    @Test
+    public void updateConfigScopedStopTest() throws Exception {
+        for (Flow flow : flows()) {
+            check(flow, run(flow, "updateConfig", "root > flow", "-scopedStop"), budget(
+                    "GET /flow/about", 1,
+                    "GET /flow/client-id", 1,
+                    //the root, the branch, each sub group, each group changed again after the stop, before and after the start
+                    "GET /flow/process-groups/{id}", 2 + flow.groups + 3 * flow.parents,
+                    "GET /flow/process-groups/{id}/controller-services", 4,
+                    //the first processor of each chain change : one stop and one start by group
+                    "PUT /flow/process-groups/{id}", 2 * flow.parents,
+                    "PUT /processors/{id}", flow.changed,
+                    "PUT /controller-services/{id}", 3));
+        }
+    }
+
+    @Test
+    public void deployTemplateTest() throws Exception {
+        for (Flow flow : flows()) {
+            check(flow, run(flow, "deployTemplate", "root > template"), budget(
+                    "GET /flow/about", 1,
+                    "GET /flow/client-id", 1,
+                    //the root and the parent of the template
+                    "GET /flow/process-groups/{id}", 2,
+                    "POST /process-groups/{id}/process-groups", 1,
+                    "POST /process-groups/{id}/templates/upload", 1,
+                    "POST /process-groups/{id}/template-instance", 1));
+        }
+    }
+
+    @Test
+    public void undeployTest() throws Exception {
+        for (Flow flow : flows()) {
+            check(flow, run(flow, "undeploy", "root > flow"), budget(
+                    "GET /flow/about", 1,
+                    "GET /flow/process-groups/{id}", 2 + flow.groups,
+                    "GET /flow/templates", 1,
+                    "GET /flow/process-groups/{id}/status", (NifiStandIn.CHAIN - 1) * flow.parents,
+                    "PUT /flow/process-groups/{id}", NifiStandIn.CHAIN * flow.parents,
+                    "GET /process-groups/{id}", 1,
+                    "DELETE /process-groups/{id}", 1));
+        }
+    }
+
+    /**
+     * run a mode on a new stand-in with the flow "root > flow"
+     *
+     * @param flow
+     * @param mode
+     * @param branch
+     * @param options
+     * @return the calls by endpoint of the mode
+     * @throws Exception
+     */
+    private Map<String, Integer> run(Flow flow, String mode, String branch, String... options) throws Exception {
+        try (NifiStandIn nifi = new NifiStandIn()) {
+            String groupId = nifi.createFlow("flow", flow.processors, flow.flat);
+            File file = folder.newFile();
+            try (Writer writer = new FileWriter(file)) {
+                if ("deployTemplate".equals(mode)) {
+                    writer.write(NifiStandIn.template("template", flow.processors));
+                } else if ("updateConfig".equals(mode)) {
+                    new Gson().toJson(nifi.configuration(groupId, 10), writer);
+                }
+            }
+            nifi.resetCalls();
+            List<String> args = new ArrayList<>(Arrays.asList("-nifi", nifi.getBasePath(), "-branch", branch, "-m", mode, "-conf", file.getPath(),
+                    "-pollInitialDelay", "10"));
+            args.addAll(Arrays.asList(options));
+            Main.main(args.toArray(new String[0]));
+            return nifi.getCalls();
+        }
+    }
+
+    /**
+     * @param calls
+     * @param budget
+     */
+    private static void check(Flow flow, Map<String, Integer> calls, Map<String, Integer> budget) {
+        List<String> errors = new ArrayList<>();
+        for (Map.Entry<String, Integer> call : calls.entrySet()) {
+            int max = budget.getOrDefault(call.getKey(), 0);
+            if (call.getValue() > max) {
+                errors.add(call.getKey() + " is called " + call.getValue() + " times (budget " + max + ")");
+            }
+        }
+        if (!errors.isEmpty()) {
+            StringBuilder message = new StringBuilder().append(flow).append(" : ").append(String.join(", ", errors)).append("\ncalls :");
+            calls.forEach((endpoint, count) -> message.append("\n  ").append(endpoint).append(" = ").append(count)
+                    .append(" (budget ").append(budget.getOrDefault(endpoint, 0)).append(")"));
+            fail(message.toString());
+        }
+    }
+
+    private static Map<String, Integer> budget(Object... endpointsAndCalls) {
+        Map<String, Integer> budget = new TreeMap<>();
+        for (int i = 0; i + 1 < endpointsAndCalls.length; i += 2) {
+            budget.put((String) endpointsAndCalls[i], (Integer) endpointsAndCalls[i + 1]);
+        }
+        return budget;
+    }
+
+    private static List<Flow> flows() {
+        List<Flow> flows = new ArrayList<>();
+        for (int size : SIZES) {
+            flows.add(new Flow(size, true));
+            flows.add(new Flow(size, false));
+        }
+        return flows;
+    }
+
+    /**
+     * the shape of the flow created by the stand-in
+     */
+    private static class Flow {
+
+        private final int processors;
+
+        private final boolean flat;
+
+        /**
+         * sub groups of the branch
+         */
+        private final int groups;
+
+        /**
+         * groups with processors
+         */
+        private final int parents;
+
+        /**
+         * processors changed by the configuration
+         */
+        private final int changed;
+
+        private Flow(int processors, boolean flat) {
+            this.processors = processors;
+            this.flat = flat;
+            this.groups = flat ? 0 : (processors + NifiStandIn.GROUP - 1) / NifiStandIn.GROUP;
+            this.parents = Math.max(1, groups);
+            this.changed = (processors + 9) / 10;
+        }
+
+        @Override
+        public String toString() {
+            return processors + " processors " + (flat ? "on the branch" : "on " + groups + " sub groups");
+        }
+    }
+}
@@ -0,0 +1,1401 @@
+package com.github.hermannpencole.nifi.config.standin;
+
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.config.utils.ApiMetrics;
+import com.github.hermannpencole.nifi.swagger.ApiClient;
+import com.github.hermannpencole.nifi.swagger.JSON;
+import com.github.hermannpencole.nifi.swagger.client.model.*;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in of the rest api of nifi (the endpoints used by this tool) on a local http server, for run the modes
+ * end to end without a nifi.
+ * <p>
+ * The flow is kept in memory : a tree of process groups with processors, connections (only a number of flow files
+ * queued), controller services and templates. Like nifi, each component has a revision checked on update (409 if
+ * stale), a processor stay STOPPING during stateDelay after its stop (409 "Current state is STOPPING" on start),
+ * a disabled processor can't be started and a processor scheduled to stop must run (409, the whole request is rejected),
+ * a controller service stay ENABLING/DISABLING during stateDelay, the queue of a connection is drained drainDelay
+ * after the stop of its source if its destination is running, and a group can't be deleted while a processor runs
+ * or a queue is not empty.
+ * <p>
+ * Each request wait latency before the answer and fail (503) with the probability errorRate. The calls are counted
+ * by endpoint (see {@link ApiMetrics#template(String, String)}).
+ * <pre>
+ * try (NifiStandIn nifi = new NifiStandIn()) {
+ *     String groupId = nifi.createFlow("my group", 100);
+ *     Main.main(new String[]{"-nifi", nifi.getBasePath(), "-branch", "root>my group", "-conf", file, "-m", "extractConfig"});
+ * }
+ * </pre>
+ */
+public class NifiStandIn implements AutoCloseable {
+
+    public static final String CONTEXT = "/nifi-api";
+
+    /**
+     * processors by chain (connected one after the other) on the flows created
+     */
+    public static final int CHAIN = 10;
+
+    /**
+     * one chain out of LOOP loop on itself
+     */
+    public static final int LOOP = 50;
+
+    /**
+     * processors by sub group on the flows created
+     */
+    public static final int GROUP = 100;
+
+    private static final Pattern ID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|root");
+
+    private static final String STOPPING = "Current state is STOPPING";
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final String basePath;
+
+    private final ApiMetrics endpoints;
+
+    private final Gson gson = new JSON(new ApiClient()).getGson();
+
+    private final Random random = new Random(0);
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private final Map<String, Integer> calls = new TreeMap<>();
+
+    private final Map<String, Group> groups = new LinkedHashMap<>();
+
+    private final Map<String, Processor> processors = new LinkedHashMap<>();
+
+    private final Map<String, Connection> connections = new LinkedHashMap<>();
+
+    private final Map<String, Service> services = new LinkedHashMap<>();
+
+    private final Map<String, Template> templates = new LinkedHashMap<>();
+
+    private volatile long latency = 0;
+
+    private volatile long stateDelay = 0;
+
+    private volatile long drainDelay = 0;
+
+    private volatile double errorRate = 0;
+
+    private volatile int flowFilesByQueue = 10;
+
+    private String rootId;
+
+    /**
+     * start the stand-in on a free port of localhost, with an empty root group
+     *
+     * @throws IOException
+     */
+    public NifiStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(16, runnable -> {
+            Thread thread = new Thread(runnable, "nifi-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(CONTEXT, this::handle);
+        server.start();
+        basePath = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + CONTEXT;
+        endpoints = new ApiMetrics(basePath);
+        reset();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the address of the api (ex : http://127.0.0.1:34567/nifi-api)
+     */
+    public String getBasePath() {
+        return basePath;
+    }
+
+    /**
+     * @param latency time in millisecond before each answer
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @param stateDelay time in millisecond a processor stay STOPPING and a controller service ENABLING/DISABLING
+     */
+    public void setStateDelay(long stateDelay) {
+        this.stateDelay = stateDelay;
+    }
+
+    /**
+     * @param drainDelay time in millisecond for empty a queue after the stop of its source
+     */
+    public void setDrainDelay(long drainDelay) {
+        this.drainDelay = drainDelay;
+    }
+
+    /**
+     * @param errorRate probability (between 0 and 1) that a request fail with the status 503
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param flowFilesByQueue flow files queued on the connections of the flows created
+     */
+    public void setFlowFilesByQueue(int flowFilesByQueue) {
+        this.flowFilesByQueue = flowFilesByQueue;
+    }
+
+    /**
+     * remove all the components and forget the calls
+     */
+    public synchronized void reset() {
+        groups.clear();
+        processors.clear();
+        connections.clear();
+        services.clear();
+        templates.clear();
+        calls.clear();
+        Group root = new Group(newId(), null, "NiFi Flow", position(0, 0));
+        groups.put(root.id, root);
+        rootId = root.id;
+    }
+
+    /**
+     * @return the number of calls by endpoint (ex : GET /flow/process-groups/{id})
+     */
+    public synchronized Map<String, Integer> getCalls() {
+        return new TreeMap<>(calls);
+    }
+
+    /**
+     * @return the number of calls
+     */
+    public synchronized int getCallCount() {
+        return calls.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * forget the calls (the components are kept)
+     */
+    public synchronized void resetCalls() {
+        calls.clear();
+    }
+
+    public synchronized String getRootId() {
+        return rootId;
+    }
+
+    /**
+     * @param parentId
+     * @param name
+     * @return the id of the group created
+     */
+    public synchronized String addGroup(String parentId, String name) {
+        Group parent = group(parentId);
+        Group group = new Group(newId(), parent.id, name, position(0, parent.children.size() * 200d));
+        groups.put(group.id, group);
+        parent.children.add(group.id);
+        return group.id;
+    }
+
+    /**
+     * add a processor RUNNING with the relationships success (connected) and failure (auto terminated).
+     * A property that give the id of a controller service identifies a controller service.
+     *
+     * @param groupId
+     * @param name
+     * @param properties
+     * @return the id of the processor
+     */
+    public synchronized String addProcessor(String groupId, String name, Map<String, String> properties) {
+        Group group = group(groupId);
+        ProcessorEntity entity = new ProcessorEntity();
+        entity.setId(newId());
+        entity.setRevision(revision(0));
+        entity.setPosition(position((group.processors.size() % 3) * 400d, (group.processors.size() / 3) * 200d));
+        ProcessorDTO component = new ProcessorDTO();
+        component.setId(entity.getId());
+        component.setParentGroupId(groupId);
+        component.setName(name);
+        component.setType("org.apache.nifi.processors.standard.UpdateAttribute");
+        component.setPosition(entity.getPosition());
+        component.setState(ProcessorDTO.StateEnum.RUNNING);
+        component.setConfig(new ProcessorConfigDTO());
+        component.getConfig().setSchedulingPeriod("0 sec");
+        component.getConfig().setSchedulingStrategy("TIMER_DRIVEN");
+        component.getConfig().setConcurrentlySchedulableTaskCount(1);
+        component.getConfig().setAutoTerminatedRelationships(new ArrayList<>(Collections.singletonList("failure")));
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            component.getConfig().getProperties().put(property.getKey(), property.getValue());
+            PropertyDescriptorDTO descriptor = new PropertyDescriptorDTO();
+            descriptor.setName(property.getKey());
+            descriptor.setDisplayName(property.getKey());
+            if (services.containsKey(property.getValue())) {
+                descriptor.setIdentifiesControllerService("org.apache.nifi.controller.ControllerService");
+            }
+            component.getConfig().getDescriptors().put(property.getKey(), descriptor);
+        }
+        component.setRelationships(new ArrayList<>());
+        for (String relationshipName : new String[]{"success", "failure"}) {
+            RelationshipDTO relationship = new RelationshipDTO();
+            relationship.setName(relationshipName);
+            relationship.setAutoTerminate("failure".equals(relationshipName));
+            component.getRelationships().add(relationship);
+        }
+        component.setValidationErrors(new ArrayList<>());
+        entity.setComponent(component);
+        processors.put(entity.getId(), new Processor(entity));
+        group.processors.add(entity.getId());
+        return entity.getId();
+    }
+
+    /**
+     * @param groupId
+     * @param sourceId      id of the processor source
+     * @param destinationId id of the processor destination
+     * @param queued        flow files on the queue
+     * @return the id of the connection
+     */
+    public synchronized String connect(String groupId, String sourceId, String destinationId, int queued) {
+        Group group = group(groupId);
+        Connection connection = new Connection(newId(), groupId, sourceId, destinationId, queued);
+        connections.put(connection.id, connection);
+        group.connections.add(connection.id);
+        return connection.id;
+    }
+
+    /**
+     * @param groupId
+     * @param name
+     * @param properties
+     * @return the id of the controller service ENABLED
+     */
+    public synchronized String addControllerService(String groupId, String name, Map<String, String> properties) {
+        Group group = group(groupId);
+        ControllerServiceEntity entity = new ControllerServiceEntity();
+        entity.setId(newId());
+        entity.setRevision(revision(0));
+        ControllerServiceDTO component = new ControllerServiceDTO();
+        component.setId(entity.getId());
+        component.setParentGroupId(groupId);
+        component.setName(name);
+        component.setType("org.apache.nifi.distributed.cache.client.DistributedMapCacheClientService");
+        component.setState(ControllerServiceDTO.StateEnum.ENABLED);
+        component.setProperties(new LinkedHashMap<>(properties));
+        component.setDescriptors(new LinkedHashMap<>());
+        for (String property : properties.keySet()) {
+            PropertyDescriptorDTO descriptor = new PropertyDescriptorDTO();
+            descriptor.setName(property);
+            descriptor.setDisplayName(property);
+            component.getDescriptors().put(property, descriptor);
+        }
+        component.setValidationErrors(new ArrayList<>());
+        entity.setComponent(component);
+        services.put(entity.getId(), new Service(entity));
+        group.services.add(entity.getId());
+        return entity.getId();
+    }
+
+    /**
+     * create under root a group with a synthetic flow : sub groups of GROUP processors on chains of CHAIN processors
+     * (one chain out of LOOP loop on itself, its queues are empty), the first processor of each chain use the
+     * controller service of the group, each queue outside the loops has flowFilesByQueue flow files. The last group
+     * has also a processor disabled, not connected (not counted on processors).
+     *
+     * @param name       name of the group created
+     * @param processors number of processors
+     * @return the id of the group
+     */
+    public synchronized String createFlow(String name, int processors) {
+        return createFlow(name, processors, false);
+    }
+
+    /**
+     * create under root a group with a synthetic flow, see {@link #createFlow(String, int)}
+     *
+     * @param name       name of the group created
+     * @param processors number of processors
+     * @param flat       true for put the processors on the group instead of sub groups of GROUP processors
+     * @return the id of the group
+     */
+    public synchronized String createFlow(String name, int processors, boolean flat) {
+        String groupId = addGroup(rootId, name);
+        String serviceId = addControllerService(groupId, name + " cache", properties("Server Hostname", "localhost", "Server Port", "4557"));
+        String subGroupId = null;
+        String first = null;
+        String previous = null;
+        for (int i = 0; i < processors; i++) {
+            if (flat) {
+                subGroupId = groupId;
+            } else if (i % GROUP == 0) {
+                subGroupId = addGroup(groupId, "group " + (i / GROUP));
+            }
+            Map<String, String> properties = new LinkedHashMap<>();
+            properties.put("property 0", i % CHAIN == 0 ? serviceId : "value 0 of " + i);
+            for (int p = 1; p < 5; p++) {
+                properties.put("property " + p, "value " + p + " of " + i);
+            }
+            String processorId = addProcessor(subGroupId, "processor " + i, properties);
+            boolean loop = (i / CHAIN) % LOOP == 0;
+            if (i % CHAIN == 0) {
+                first = processorId;
+            } else {
+                connect(subGroupId, previous, processorId, loop ? 0 : flowFilesByQueue);
+            }
+            if (loop && (i % CHAIN == CHAIN - 1 || i == processors - 1)) {
+                connect(subGroupId, processorId, first, 0);
+            }
+            previous = processorId;
+        }
+        if (subGroupId != null) {
+            //a processor disabled, not connected : it is never scheduled
+            String disabledId = addProcessor(subGroupId, "processor disabled", properties("property 1", "value 1 of disabled"));
+            this.processors.get(disabledId).entity.getComponent().setState(ProcessorDTO.StateEnum.DISABLED);
+        }
+        return groupId;
+    }
+
+    /**
+     * the configuration of a group as extractConfig write it, with some changes
+     *
+     * @param groupId
+     * @param changeEvery change the property 1 of one processor out of changeEvery and the controller services of the
+     *                    group (0 for no change)
+     * @return the configuration
+     */
+    public synchronized GroupProcessorsEntity configuration(String groupId, int changeEvery) {
+        GroupProcessorsEntity configuration = configuration(group(groupId), changeEvery, new int[]{0});
+        for (String serviceId : group(groupId).services) {
+            ControllerServiceDTO component = services.get(serviceId).entity.getComponent();
+            ControllerServiceDTO controllerService = new ControllerServiceDTO();
+            controllerService.setName(component.getName());
+            controllerService.setProperties(new LinkedHashMap<>(component.getProperties()));
+            if (changeEvery > 0) {
+                controllerService.getProperties().put("Server Port", "4558");
+            }
+            controllerService.setDescriptors(null);
+            controllerService.setReferencingComponents(null);
+            controllerService.setValidationErrors(null);
+            configuration.getControllerServicesDTO().add(controllerService);
+        }
+        return configuration;
+    }
+
+    /**
+     * @param name       name of the template
+     * @param processors number of processors, on chains of CHAIN processors
+     * @return the xml of the template (as exported by nifi, with only the elements read by the stand-in)
+     */
+    public static String template(String name, int processors) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        xml.append("<template encoding-version=\"1.0\"><description></description><name>").append(name).append("</name><snippet>\n");
+        for (int i = 0; i < processors; i++) {
+            if (i % CHAIN != 0) {
+                xml.append("<connections><id>c").append(i).append("</id><destination><id>p").append(i).append("</id></destination>")
+                        .append("<source><id>p").append(i - 1).append("</id></source></connections>\n");
+            }
+        }
+        for (int i = 0; i < processors; i++) {
+            xml.append("<processors><id>p").append(i).append("</id><config><properties><entry><key>property 1</key><value>value 1 of ")
+                    .append(i).append("</value></entry></properties></config><name>processor ").append(i).append("</name></processors>\n");
+        }
+        xml.append("</snippet></template>\n");
+        return xml.toString();
+    }
+
+    /**
+     * @param parentId
+     * @param name
+     * @return the id of the sub group with this name, null if there is none
+     */
+    public synchronized String findGroup(String parentId, String name) {
+        return group(parentId).children.stream().filter(id -> groups.get(id).name.equals(name)).findFirst().orElse(null);
+    }
+
+    /**
+     * @param groupId
+     * @return the processors of the group and its sub groups
+     */
+    public synchronized List<ProcessorEntity> getProcessors(String groupId) {
+        List<ProcessorEntity> result = new ArrayList<>();
+        for (Group group : subTree(group(groupId))) {
+            group.processors.forEach(id -> result.add(processors.get(id).entity));
+        }
+        return result;
+    }
+
+    /**
+     * @param groupId
+     * @return the number of flow files queued on the group and its sub groups
+     */
+    public synchronized long getQueued(String groupId) {
+        long queued = 0;
+        for (Group group : subTree(group(groupId))) {
+            for (String id : group.connections) {
+                queued += queued(connections.get(id));
+            }
+        }
+        return queued;
+    }
+
+    public synchronized ControllerServiceEntity getControllerService(String id) {
+        return controllerServiceEntity(service(id));
+    }
+
+    public synchronized int getTemplateCount() {
+        return templates.size();
+    }
+
+    public static Map<String, String> properties(String... keyValues) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            result.put(keyValues[i], keyValues[i + 1]);
+        }
+        return result;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getRawPath();
+            String body = read(exchange.getRequestBody());
+            synchronized (this) {
+                calls.merge(endpoints.template(method, path), 1, Integer::sum);
+            }
+            if (latency > 0) {
+                TimeUnit.MILLISECONDS.sleep(latency);
+            }
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                answer(exchange, 503, "text/plain", "injected error");
+                return;
+            }
+            List<String> pathIds = new ArrayList<>();
+            StringBuilder route = new StringBuilder(method);
+            for (String segment : path.substring(CONTEXT.length()).split("/")) {
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                if (ID.matcher(segment).matches()) {
+                    pathIds.add(segment);
+                    route.append("/{id}");
+                } else {
+                    route.append("/").append(segment);
+                }
+            }
+            Object result;
+            synchronized (this) {
+                result = route(route.toString(), pathIds, query(exchange.getRequestURI().getRawQuery()), body);
+            }
+            if (result instanceof String) {
+                answer(exchange, 200, "text/plain", (String) result);
+            } else {
+                answer(exchange, 200, "application/json", gson.toJson(result));
+            }
+        } catch (StandInException e) {
+            answer(exchange, e.code, "text/plain", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            answer(exchange, 503, "text/plain", "interrupted");
+        } catch (RuntimeException e) {
+            answer(exchange, 500, "text/plain", String.valueOf(e));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Object route(String route, List<String> pathIds, Map<String, String> query, String body) {
+        String id = pathIds.isEmpty() ? null : pathIds.get(0);
+        switch (route) {
+            case "GET/flow/client-id":
+                return UUID.randomUUID().toString();
+            case "GET/flow/about":
+                return about();
+            case "GET/flow/process-groups/{id}":
+                return flow(group(id));
+            case "PUT/flow/process-groups/{id}":
+                return schedule(group(id), gson.fromJson(body, ScheduleComponentsEntity.class));
+            case "GET/flow/process-groups/{id}/controller-services":
+                return controllerServices(group(id));
+            case "GET/flow/process-groups/{id}/status":
+                return status(group(id));
+            case "GET/flow/templates":
+                return templates();
+            case "GET/processors/{id}":
+                return processor(id).entity;
+            case "PUT/processors/{id}":
+                return updateProcessor(processor(id), gson.fromJson(body, ProcessorEntity.class));
+            case "GET/connections/{id}":
+                return connectionEntity(connection(id));
+            case "GET/controller-services/{id}":
+                return controllerServiceEntity(service(id));
+            case "PUT/controller-services/{id}":
+                return updateControllerService(service(id), gson.fromJson(body, ControllerServiceEntity.class));
+            case "PUT/controller-services/{id}/references":
+                return updateReferences(service(id), gson.fromJson(body, UpdateControllerServiceReferenceRequestEntity.class));
+            case "POST/flowfile-queues/{id}/drop-requests":
+            case "GET/flowfile-queues/{id}/drop-requests/{id}":
+            case "DELETE/flowfile-queues/{id}/drop-requests/{id}":
+                return drop(connection(id), pathIds.size() > 1 ? pathIds.get(1) : newId());
+            case "GET/process-groups/{id}":
+                return processGroupEntity(group(id));
+            case "POST/process-groups/{id}/process-groups":
+                return createGroup(group(id), gson.fromJson(body, ProcessGroupEntity.class));
+            case "DELETE/process-groups/{id}":
+                return removeGroup(group(id), query.get("version"));
+            case "POST/process-groups/{id}/templates/upload":
+                return uploadTemplate(group(id), body);
+            case "POST/process-groups/{id}/template-instance":
+                return instantiateTemplate(group(id), gson.fromJson(body, InstantiateTemplateRequestEntity.class));
+            case "DELETE/templates/{id}":
+                return removeTemplate(id);
+            default:
+                throw new StandInException(404, "The stand-in doesn't know " + route);
+        }
+    }
+
+    private AboutEntity about() {
+        AboutEntity about = new AboutEntity();
+        about.setAbout(new AboutDTO());
+        about.getAbout().setTitle("NiFi");
+        about.getAbout().setVersion("1.1.0 (stand-in)");
+        return about;
+    }
+
+    private ProcessGroupFlowEntity flow(Group group) {
+        ProcessGroupFlowEntity entity = new ProcessGroupFlowEntity();
+        ProcessGroupFlowDTO processGroupFlow = new ProcessGroupFlowDTO();
+        processGroupFlow.setId(group.id);
+        processGroupFlow.setParentGroupId(group.parentId);
+        processGroupFlow.setBreadcrumb(new FlowBreadcrumbEntity());
+        processGroupFlow.getBreadcrumb().setId(group.id);
+        processGroupFlow.getBreadcrumb().setBreadcrumb(new FlowBreadcrumbDTO());
+        processGroupFlow.getBreadcrumb().getBreadcrumb().setId(group.id);
+        processGroupFlow.getBreadcrumb().getBreadcrumb().setName(group.name);
+        FlowDTO flow = new FlowDTO();
+        group.children.forEach(id -> flow.getProcessGroups().add(processGroupEntity(groups.get(id))));
+        group.processors.forEach(id -> flow.getProcessors().add(processors.get(id).entity));
+        group.connections.forEach(id -> flow.getConnections().add(connectionEntity(connections.get(id))));
+        processGroupFlow.setFlow(flow);
+        entity.setProcessGroupFlow(processGroupFlow);
+        return entity;
+    }
+
+    private ScheduleComponentsEntity schedule(Group group, ScheduleComponentsEntity body) {
+        ProcessorDTO.StateEnum state = ScheduleComponentsEntity.StateEnum.RUNNING.equals(body.getState()) ? ProcessorDTO.StateEnum.RUNNING : ProcessorDTO.StateEnum.STOPPED;
+        List<Processor> toSchedule = new ArrayList<>();
+        if (body.getComponents() == null) {
+            //the whole group : nifi schedule only the processors that can change
+            for (Group inTree : subTree(group)) {
+                inTree.processors.stream().map(processors::get).filter(processor -> isToChange(processor, state)).forEach(toSchedule::add);
+            }
+        } else {
+            for (Map.Entry<String, RevisionDTO> component : body.getComponents().entrySet()) {
+                Processor processor = processor(component.getKey());
+                checkRevision(processor.entity.getRevision(), component.getValue(), processor.entity.getComponent().getName());
+                toSchedule.add(processor);
+            }
+        }
+        //all or nothing, like nifi
+        for (Processor processor : toSchedule) {
+            checkSchedulable(processor, state);
+            checkStoppable(processor, state);
+        }
+        for (Processor processor : toSchedule) {
+            setState(processor, state);
+        }
+        return body;
+    }
+
+    private ControllerServicesEntity controllerServices(Group group) {
+        ControllerServicesEntity entity = new ControllerServicesEntity();
+        for (Group ancestor = group; ancestor != null; ancestor = ancestor.parentId == null ? null : groups.get(ancestor.parentId)) {
+            ancestor.services.forEach(id -> entity.getControllerServices().add(controllerServiceEntity(services.get(id))));
+        }
+        return entity;
+    }
+
+    private ProcessGroupStatusEntity status(Group group) {
+        ProcessGroupStatusSnapshotDTO snapshot = new ProcessGroupStatusSnapshotDTO();
+        snapshot.setId(group.id);
+        snapshot.setName(group.name);
+        snapshot.setConnectionStatusSnapshots(new ArrayList<>());
+        for (String id : group.connections) {
+            ConnectionStatusSnapshotEntity connection = new ConnectionStatusSnapshotEntity();
+            connection.setId(id);
+            connection.setConnectionStatusSnapshot(connectionSnapshot(connections.get(id)));
+            snapshot.getConnectionStatusSnapshots().add(connection);
+        }
+        ProcessGroupStatusEntity entity = new ProcessGroupStatusEntity();
+        entity.setProcessGroupStatus(new ProcessGroupStatusDTO());
+        entity.getProcessGroupStatus().setId(group.id);
+        entity.getProcessGroupStatus().setName(group.name);
+        entity.getProcessGroupStatus().setAggregateSnapshot(snapshot);
+        return entity;
+    }
+
+    private TemplatesEntity templates() {
+        TemplatesEntity entity = new TemplatesEntity();
+        entity.setTemplates(new ArrayList<>());
+        templates.values().forEach(template -> entity.getTemplates().add(templateEntity(template)));
+        return entity;
+    }
+
+    private ProcessorEntity updateProcessor(Processor processor, ProcessorEntity body) {
+        ProcessorDTO component = processor.entity.getComponent();
+        checkRevision(processor.entity.getRevision(), body.getRevision(), component.getName());
+        ProcessorDTO update = body.getComponent();
+        if (update.getConfig() != null || update.getName() != null) {
+            if (ProcessorDTO.StateEnum.RUNNING.equals(component.getState())) {
+                throw new StandInException(409, component.getId() + " is not stopped.");
+            }
+            if (update.getName() != null) {
+                component.setName(update.getName());
+            }
+            if (update.getConfig() != null) {
+                updateConfig(component.getConfig(), update.getConfig());
+            }
+        }
+        if (update.getState() != null && !update.getState().equals(component.getState())) {
+            checkSchedulable(processor, update.getState());
+            setState(processor, update.getState());
+        } else {
+            increment(processor.entity.getRevision());
+        }
+        processor.entity.getRevision().setClientId(body.getRevision().getClientId());
+        return processor.entity;
+    }
+
+    private void updateConfig(ProcessorConfigDTO config, ProcessorConfigDTO update) {
+        if (update.getProperties() != null) {
+            for (Map.Entry<String, String> property : update.getProperties().entrySet()) {
+                if (property.getValue() == null) {
+                    config.getProperties().remove(property.getKey());
+                } else {
+                    config.getProperties().put(property.getKey(), property.getValue());
+                }
+            }
+        }
+        if (update.getSchedulingPeriod() != null) {
+            config.setSchedulingPeriod(update.getSchedulingPeriod());
+        }
+        if (update.getSchedulingStrategy() != null) {
+            config.setSchedulingStrategy(update.getSchedulingStrategy());
+        }
+        if (update.getConcurrentlySchedulableTaskCount() != null) {
+            config.setConcurrentlySchedulableTaskCount(update.getConcurrentlySchedulableTaskCount());
+        }
+        if (update.getPenaltyDuration() != null) {
+            config.setPenaltyDuration(update.getPenaltyDuration());
+        }
+        if (update.getYieldDuration() != null) {
+            config.setYieldDuration(update.getYieldDuration());
+        }
+        if (update.getBulletinLevel() != null) {
+            config.setBulletinLevel(update.getBulletinLevel());
+        }
+        if (update.getRunDurationMillis() != null) {
+            config.setRunDurationMillis(update.getRunDurationMillis());
+        }
+        if (update.getComments() != null) {
+            config.setComments(update.getComments());
+        }
+        if (update.getAutoTerminatedRelationships() != null) {
+            config.setAutoTerminatedRelationships(update.getAutoTerminatedRelationships());
+        }
+    }
+
+    private ControllerServiceEntity updateControllerService(Service service, ControllerServiceEntity body) {
+        ControllerServiceDTO component = service.entity.getComponent();
+        checkRevision(service.entity.getRevision(), body.getRevision(), component.getName());
+        ControllerServiceDTO update = body.getComponent();
+        ControllerServiceDTO.StateEnum state = state(service);
+        //the properties absent of the request are deserialized as an empty map
+        boolean configure = (update.getProperties() != null && !update.getProperties().isEmpty()) || update.getName() != null || update.getComments() != null;
+        if (configure) {
+            if (!ControllerServiceDTO.StateEnum.DISABLED.equals(state)) {
+                throw new StandInException(409, "Cannot modify Controller Service configuration because it is currently enabled.");
+            }
+            if (update.getName() != null) {
+                component.setName(update.getName());
+            }
+            if (update.getComments() != null) {
+                component.setComments(update.getComments());
+            }
+            if (update.getProperties() != null) {
+                for (Map.Entry<String, String> property : update.getProperties().entrySet()) {
+                    if (property.getValue() == null) {
+                        component.getProperties().remove(property.getKey());
+                    } else {
+                        component.getProperties().put(property.getKey(), property.getValue());
+                    }
+                }
+            }
+        }
+        if (ControllerServiceDTO.StateEnum.DISABLED.equals(update.getState()) && !ControllerServiceDTO.StateEnum.DISABLED.equals(state)) {
+            for (ControllerServiceReferencingComponentEntity referencing : referencingComponents(service.entity.getId())) {
+                if (ProcessorDTO.StateEnum.RUNNING.toString().equals(referencing.getComponent().getState())
+                        || ControllerServiceDTO.StateEnum.ENABLED.toString().equals(referencing.getComponent().getState())) {
+                    throw new StandInException(409, component.getId() + " cannot be disabled because it is referenced by at least one component that is currently running");
+                }
+            }
+            transition(service, ControllerServiceDTO.StateEnum.DISABLING, ControllerServiceDTO.StateEnum.DISABLED);
+        } else if (ControllerServiceDTO.StateEnum.ENABLED.equals(update.getState()) && ControllerServiceDTO.StateEnum.DISABLED.equals(state)) {
+            transition(service, ControllerServiceDTO.StateEnum.ENABLING, ControllerServiceDTO.StateEnum.ENABLED);
+        }
+        increment(service.entity.getRevision());
+        service.entity.getRevision().setClientId(body.getRevision().getClientId());
+        return controllerServiceEntity(service);
+    }
+
+    private ControllerServiceReferencingComponentsEntity updateReferences(Service service, UpdateControllerServiceReferenceRequestEntity body) {
+        List<ControllerServiceReferencingComponentEntity> referencing = referencingComponents(service.entity.getId());
+        if (UpdateControllerServiceReferenceRequestEntity.StateEnum.RUNNING.equals(body.getState())
+                || UpdateControllerServiceReferenceRequestEntity.StateEnum.STOPPED.equals(body.getState())) {
+            ProcessorDTO.StateEnum state = UpdateControllerServiceReferenceRequestEntity.StateEnum.RUNNING.equals(body.getState())
+                    ? ProcessorDTO.StateEnum.RUNNING : ProcessorDTO.StateEnum.STOPPED;
+            List<Processor> toSchedule = new ArrayList<>();
+            for (ControllerServiceReferencingComponentEntity component : referencing) {
+                if (processors.containsKey(component.getId()) && isToChange(processors.get(component.getId()), state)) {
+                    toSchedule.add(processors.get(component.getId()));
+                }
+            }
+            for (Processor processor : toSchedule) {
+                checkSchedulable(processor, state);
+            }
+            for (Processor processor : toSchedule) {
+                setState(processor, state);
+            }
+            referencing = referencingComponents(service.entity.getId());
+        }
+        ControllerServiceReferencingComponentsEntity entity = new ControllerServiceReferencingComponentsEntity();
+        entity.setControllerServiceReferencingComponents(referencing);
+        return entity;
+    }
+
+    private DropRequestEntity drop(Connection connection, String dropId) {
+        DropRequestEntity entity = new DropRequestEntity();
+        entity.setDropRequest(new DropRequestDTO());
+        entity.getDropRequest().setId(dropId);
+        entity.getDropRequest().setCurrentCount((int) queued(connection));
+        entity.getDropRequest().setCurrentSize(queued(connection) * 1024L);
+        entity.getDropRequest().setFinished(true);
+        entity.getDropRequest().setState("Completed successfully");
+        connection.queued = 0;
+        return entity;
+    }
+
+    private ProcessGroupEntity createGroup(Group parent, ProcessGroupEntity body) {
+        if (body.getRevision() == null || body.getRevision().getVersion() == null || body.getRevision().getVersion() != 0) {
+            throw new StandInException(400, "A revision of 0 must be specified when creating a new Process Group.");
+        }
+        PositionDTO position = body.getComponent().getPosition() == null ? body.getPosition() : body.getComponent().getPosition();
+        Group group = new Group(newId(), parent.id, body.getComponent().getName(), position == null ? position(0, 0) : position);
+        groups.put(group.id, group);
+        parent.children.add(group.id);
+        increment(group.revision);
+        return processGroupEntity(group);
+    }
+
+    private ProcessGroupEntity removeGroup(Group group, String version) {
+        if (version == null || Long.parseLong(version) != group.revision.getVersion()) {
+            throw new StandInException(409, group.id + " is not the most up-to-date revision. This component appears to have been modified");
+        }
+        if (group.parentId == null) {
+            throw new StandInException(409, "The root process group cannot be removed");
+        }
+        List<Group> subTree = subTree(group);
+        for (Group inTree : subTree) {
+            for (String id : inTree.processors) {
+                if (ProcessorDTO.StateEnum.RUNNING.equals(processors.get(id).entity.getComponent().getState())) {
+                    throw new StandInException(409, "Cannot delete Process Group because Processor " + id + " is running");
+                }
+            }
+            for (String id : inTree.connections) {
+                if (queued(connections.get(id)) > 0) {
+                    throw new StandInException(409, "Cannot delete Process Group because Connection " + id + " has data queued");
+                }
+            }
+        }
+        ProcessGroupEntity entity = processGroupEntity(group);
+        for (Group inTree : subTree) {
+            inTree.processors.forEach(processors::remove);
+            inTree.connections.forEach(connections::remove);
+            inTree.services.forEach(services::remove);
+            templates.values().removeIf(template -> template.groupId.equals(inTree.id));
+            groups.remove(inTree.id);
+        }
+        groups.get(group.parentId).children.remove(group.id);
+        return entity;
+    }
+
+    private TemplateEntity uploadTemplate(Group group, String body) {
+        int begin = body.indexOf("<template");
+        int end = body.lastIndexOf("</template>");
+        if (begin < 0 || end < 0) {
+            throw new StandInException(400, "The specified template is not in a valid format.");
+        }
+        Document document;
+        try {
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(new InputSource(new StringReader(body.substring(begin, end + "</template>".length()))));
+        } catch (Exception e) {
+            throw new StandInException(400, "The specified template is not in a valid format : " + e.getMessage());
+        }
+        Template template = new Template(newId(), group.id, text(document.getDocumentElement(), "name"));
+        for (Template existing : templates.values()) {
+            if (existing.name.equals(template.name)) {
+                throw new StandInException(409, "A template named '" + template.name + "' already exists.");
+            }
+        }
+        Element snippet = child(document.getDocumentElement(), "snippet");
+        for (Element processor : children(snippet, "processors")) {
+            Element config = child(processor, "config");
+            Map<String, String> properties = new LinkedHashMap<>();
+            Element propertiesElement = config == null ? null : child(config, "properties");
+            if (propertiesElement != null) {
+                for (Element entry : children(propertiesElement, "entry")) {
+                    properties.put(text(entry, "key"), text(entry, "value"));
+                }
+            }
+            template.processors.put(text(processor, "id"), new AbstractMap.SimpleEntry<>(text(processor, "name"), properties));
+        }
+        for (Element connection : children(snippet, "connections")) {
+            template.connections.add(new String[]{text(child(connection, "source"), "id"), text(child(connection, "destination"), "id")});
+        }
+        templates.put(template.id, template);
+        return templateEntity(template);
+    }
+
+    private FlowEntity instantiateTemplate(Group group, InstantiateTemplateRequestEntity body) {
+        Template template = templates.get(body.getTemplateId());
+        if (template == null) {
+            throw new StandInException(404, "Unable to find template with id '" + body.getTemplateId() + "'.");
+        }
+        FlowEntity entity = new FlowEntity();
+        entity.setFlow(new FlowDTO());
+        Map<String, String> created = new HashMap<>();
+        for (Map.Entry<String, Map.Entry<String, Map<String, String>>> processor : template.processors.entrySet()) {
+            String id = addProcessor(group.id, processor.getValue().getKey(), processor.getValue().getValue());
+            //the processors of a template are not started
+            processors.get(id).entity.getComponent().setState(ProcessorDTO.StateEnum.STOPPED);
+            created.put(processor.getKey(), id);
+            entity.getFlow().getProcessors().add(processors.get(id).entity);
+        }
+        for (String[] connection : template.connections) {
+            if (created.containsKey(connection[0]) && created.containsKey(connection[1])) {
+                String id = connect(group.id, created.get(connection[0]), created.get(connection[1]), 0);
+                entity.getFlow().getConnections().add(connectionEntity(connections.get(id)));
+            }
+        }
+        return entity;
+    }
+
+    private TemplateEntity removeTemplate(String id) {
+        Template template = templates.remove(id);
+        if (template == null) {
+            throw new StandInException(404, "Unable to find template with id '" + id + "'.");
+        }
+        return templateEntity(template);
+    }
+
+    private void checkRevision(RevisionDTO current, RevisionDTO revision, String name) {
+        if (revision == null || revision.getVersion() == null || !revision.getVersion().equals(current.getVersion())) {
+            throw new StandInException(409, "[" + (revision == null ? null : revision.getVersion()) + ", " + name
+                    + "] is not the most up-to-date revision. This component appears to have been modified");
+        }
+    }
+
+    private void checkSchedulable(Processor processor, ProcessorDTO.StateEnum state) {
+        ProcessorDTO component = processor.entity.getComponent();
+        if (ProcessorDTO.StateEnum.RUNNING.equals(state) && ProcessorDTO.StateEnum.DISABLED.equals(component.getState())) {
+            throw new StandInException(409, component.getName() + " cannot be started because it is disabled");
+        }
+        if (ProcessorDTO.StateEnum.RUNNING.equals(state) && !state.equals(component.getState()) && now() < processor.stoppingUntil) {
+            throw new StandInException(409, component.getName() + " cannot be started because it is not stopped. " + STOPPING);
+        }
+    }
+
+    /**
+     * on a schedule of components, a processor to stop must run (a disabled processor can't be stopped)
+     *
+     * @param processor
+     * @param state
+     */
+    private void checkStoppable(Processor processor, ProcessorDTO.StateEnum state) {
+        ProcessorDTO component = processor.entity.getComponent();
+        if (ProcessorDTO.StateEnum.STOPPED.equals(state) && !ProcessorDTO.StateEnum.RUNNING.equals(component.getState())) {
+            throw new StandInException(409, component.getName() + " cannot be stopped because it is not running. Current state is " + component.getState());
+        }
+    }
+
+    /**
+     * @param processor
+     * @param state
+     * @return true if the processor can go to the state : a stopped processor to start, a running processor to stop
+     */
+    private static boolean isToChange(Processor processor, ProcessorDTO.StateEnum state) {
+        ProcessorDTO.StateEnum current = processor.entity.getComponent().getState();
+        return ProcessorDTO.StateEnum.RUNNING.equals(state) ? ProcessorDTO.StateEnum.STOPPED.equals(current) : ProcessorDTO.StateEnum.RUNNING.equals(current);
+    }
+
+    private void setState(Processor processor, ProcessorDTO.StateEnum state) {
+        ProcessorDTO component = processor.entity.getComponent();
+        if (state.equals(component.getState())) {
+            return;
+        }
+        if (ProcessorDTO.StateEnum.RUNNING.equals(component.getState())) {
+            processor.stoppedAt = now();
+            processor.stoppingUntil = processor.stoppedAt + stateDelay;
+        }
+        component.setState(state);
+        increment(processor.entity.getRevision());
+    }
+
+    private void transition(Service service, ControllerServiceDTO.StateEnum during, ControllerServiceDTO.StateEnum target) {
+        service.entity.getComponent().setState(stateDelay > 0 ? during : target);
+        service.target = target;
+        service.transitionUntil = now() + stateDelay;
+    }
+
+    private ControllerServiceDTO.StateEnum state(Service service) {
+        if (service.target != null && now() >= service.transitionUntil) {
+            service.entity.getComponent().setState(service.target);
+            service.target = null;
+        }
+        return service.entity.getComponent().getState();
+    }
+
+    /**
+     * the flow files on the queue, the queue is drained drainDelay after the stop of its source if its destination run
+     *
+     * @param connection
+     * @return
+     */
+    private long queued(Connection connection) {
+        if (connection.queued > 0) {
+            Processor source = processors.get(connection.sourceId);
+            Processor destination = processors.get(connection.destinationId);
+            if (source != null && destination != null
+                    && !ProcessorDTO.StateEnum.RUNNING.equals(source.entity.getComponent().getState())
+                    && ProcessorDTO.StateEnum.RUNNING.equals(destination.entity.getComponent().getState())
+                    && now() >= source.stoppedAt + drainDelay) {
+                connection.queued = 0;
+            }
+        }
+        return connection.queued;
+    }
+
+    private ProcessGroupEntity processGroupEntity(Group group) {
+        ProcessGroupEntity entity = new ProcessGroupEntity();
+        entity.setId(group.id);
+        entity.setRevision(group.revision);
+        entity.setPosition(group.position);
+        ProcessGroupDTO component = new ProcessGroupDTO();
+        component.setId(group.id);
+        component.setParentGroupId(group.parentId);
+        component.setName(group.name);
+        component.setPosition(group.position);
+        int running = 0;
+        int stopped = 0;
+        for (Group inTree : subTree(group)) {
+            for (String id : inTree.processors) {
+                if (ProcessorDTO.StateEnum.RUNNING.equals(processors.get(id).entity.getComponent().getState())) {
+                    running++;
+                } else {
+                    stopped++;
+                }
+            }
+        }
+        component.setRunningCount(running);
+        component.setStoppedCount(stopped);
+        entity.setRunningCount(running);
+        entity.setStoppedCount(stopped);
+        entity.setComponent(component);
+        return entity;
+    }
+
+    private ConnectionEntity connectionEntity(Connection connection) {
+        ConnectionEntity entity = new ConnectionEntity();
+        entity.setId(connection.id);
+        entity.setRevision(connection.revision);
+        entity.setSourceId(connection.sourceId);
+        entity.setSourceGroupId(connection.groupId);
+        entity.setSourceType(ConnectionEntity.SourceTypeEnum.PROCESSOR);
+        entity.setDestinationId(connection.destinationId);
+        entity.setDestinationGroupId(connection.groupId);
+        entity.setDestinationType(ConnectionEntity.DestinationTypeEnum.PROCESSOR);
+        entity.setStatus(new ConnectionStatusDTO());
+        entity.getStatus().setId(connection.id);
+        entity.getStatus().setGroupId(connection.groupId);
+        entity.getStatus().setAggregateSnapshot(connectionSnapshot(connection));
+        return entity;
+    }
+
+    private ConnectionStatusSnapshotDTO connectionSnapshot(Connection connection) {
+        long queued = queued(connection);
+        ConnectionStatusSnapshotDTO snapshot = new ConnectionStatusSnapshotDTO();
+        snapshot.setId(connection.id);
+        snapshot.setGroupId(connection.groupId);
+        snapshot.setSourceId(connection.sourceId);
+        snapshot.setDestinationId(connection.destinationId);
+        snapshot.setFlowFilesQueued((int) queued);
+        snapshot.setBytesQueued(queued * 1024);
+        snapshot.setQueuedCount(String.valueOf(queued));
+        snapshot.setQueuedSize(queued + " KB");
+        snapshot.setQueued(queued + " (" + queued + " KB)");
+        return snapshot;
+    }
+
+    private ControllerServiceEntity controllerServiceEntity(Service service) {
+        state(service);
+        service.entity.getComponent().setReferencingComponents(referencingComponents(service.entity.getId()));
+        return service.entity;
+    }
+
+    /**
+     * @param serviceId
+     * @return the processors and the controller services that have a property with the id of the service
+     */
+    private List<ControllerServiceReferencingComponentEntity> referencingComponents(String serviceId) {
+        List<ControllerServiceReferencingComponentEntity> result = new ArrayList<>();
+        for (Processor processor : processors.values()) {
+            ProcessorDTO component = processor.entity.getComponent();
+            if (component.getConfig().getProperties().containsValue(serviceId)) {
+                result.add(referencingComponent(processor.entity.getId(), processor.entity.getRevision(), component.getParentGroupId(),
+                        component.getName(), component.getState().toString(), ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.PROCESSOR));
+            }
+        }
+        for (Service service : services.values()) {
+            ControllerServiceDTO component = service.entity.getComponent();
+            if (component.getProperties().containsValue(serviceId)) {
+                result.add(referencingComponent(service.entity.getId(), service.entity.getRevision(), component.getParentGroupId(),
+                        component.getName(), state(service).toString(), ControllerServiceReferencingComponentDTO.ReferenceTypeEnum.CONTROLLERSERVICE));
+            }
+        }
+        return result;
+    }
+
+    private static ControllerServiceReferencingComponentEntity referencingComponent(String id, RevisionDTO revision, String groupId, String name, String state,
+                                                                                    ControllerServiceReferencingComponentDTO.ReferenceTypeEnum type) {
+        ControllerServiceReferencingComponentEntity entity = new ControllerServiceReferencingComponentEntity();
+        entity.setId(id);
+        entity.setRevision(revision);
+        entity.setComponent(new ControllerServiceReferencingComponentDTO());
+        entity.getComponent().setId(id);
+        entity.getComponent().setGroupId(groupId);
+        entity.getComponent().setName(name);
+        entity.getComponent().setState(state);
+        entity.getComponent().setReferenceType(type);
+        return entity;
+    }
+
+    private static TemplateEntity templateEntity(Template template) {
+        TemplateEntity entity = new TemplateEntity();
+        entity.setId(template.id);
+        entity.setTemplate(new TemplateDTO());
+        entity.getTemplate().setId(template.id);
+        entity.getTemplate().setGroupId(template.groupId);
+        entity.getTemplate().setName(template.name);
+        return entity;
+    }
+
+    private GroupProcessorsEntity configuration(Group group, int changeEvery, int[] count) {
+        GroupProcessorsEntity configuration = new GroupProcessorsEntity();
+        configuration.setName(group.name);
+        for (String id : group.processors) {
+            ProcessorDTO component = processors.get(id).entity.getComponent();
+            ProcessorDTO processor = new ProcessorDTO();
+            processor.setName(component.getName());
+            processor.setConfig(new ProcessorConfigDTO());
+            processor.getConfig().setSchedulingPeriod(component.getConfig().getSchedulingPeriod());
+            processor.getConfig().setSchedulingStrategy(component.getConfig().getSchedulingStrategy());
+            processor.getConfig().setConcurrentlySchedulableTaskCount(component.getConfig().getConcurrentlySchedulableTaskCount());
+            for (Map.Entry<String, String> property : component.getConfig().getProperties().entrySet()) {
+                if (component.getConfig().getDescriptors().get(property.getKey()).getIdentifiesControllerService() == null) {
+                    processor.getConfig().getProperties().put(property.getKey(), property.getValue());
+                }
+            }
+            if (changeEvery > 0 && !ProcessorDTO.StateEnum.DISABLED.equals(component.getState()) && count[0]++ % changeEvery == 0) {
+                processor.getConfig().getProperties().put("property 1", component.getConfig().getProperties().get("property 1") + " changed");
+            }
+            processor.getConfig().setDescriptors(null);
+            processor.getConfig().setDefaultConcurrentTasks(null);
+            processor.getConfig().setDefaultSchedulingPeriod(null);
+            processor.getConfig().setAutoTerminatedRelationships(null);
+            processor.setRelationships(null);
+            processor.setStyle(null);
+            processor.setValidationErrors(null);
+            configuration.getProcessors().add(processor);
+        }
+        for (String id : group.children) {
+            configuration.getGroupProcessorsEntity().add(configuration(groups.get(id), changeEvery, count));
+        }
+        return configuration;
+    }
+
+    private List<Group> subTree(Group group) {
+        List<Group> result = new ArrayList<>();
+        Deque<Group> toVisit = new ArrayDeque<>(Collections.singletonList(group));
+        while (!toVisit.isEmpty()) {
+            Group visited = toVisit.poll();
+            result.add(visited);
+            visited.children.forEach(id -> toVisit.add(groups.get(id)));
+        }
+        return result;
+    }
+
+    private Group group(String id) {
+        Group group = groups.get("root".equals(id) ? rootId : id);
+        if (group == null) {
+            throw new StandInException(404, "Unable to locate group with id '" + id + "'.");
+        }
+        return group;
+    }
+
+    private Processor processor(String id) {
+        Processor processor = processors.get(id);
+        if (processor == null) {
+            throw new StandInException(404, "Unable to locate processor with id '" + id + "'.");
+        }
+        return processor;
+    }
+
+    private Connection connection(String id) {
+        Connection connection = connections.get(id);
+        if (connection == null) {
+            throw new StandInException(404, "Unable to locate connection with id '" + id + "'.");
+        }
+        return connection;
+    }
+
+    private Service service(String id) {
+        Service service = services.get(id);
+        if (service == null) {
+            throw new StandInException(404, "Unable to locate controller service with id '" + id + "'.");
+        }
+        return service;
+    }
+
+    private String newId() {
+        return new UUID(0x5ca1ab1eL, ids.incrementAndGet()).toString();
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static RevisionDTO revision(long version) {
+        RevisionDTO revision = new RevisionDTO();
+        revision.setVersion(version);
+        return revision;
+    }
+
+    private static void increment(RevisionDTO revision) {
+        revision.setVersion(revision.getVersion() + 1);
+    }
+
+    private static PositionDTO position(double x, double y) {
+        PositionDTO position = new PositionDTO();
+        position.setX(x);
+        position.setY(y);
+        return position;
+    }
+
+    private static Element child(Element parent, String name) {
+        List<Element> children = children(parent, name);
+        return children.isEmpty() ? null : children.get(0);
+    }
+
+    private static List<Element> children(Element parent, String name) {
+        List<Element> result = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && name.equals(node.getNodeName())) {
+                result.add((Element) node);
+            }
+        }
+        return result;
+    }
+
+    private static String text(Element parent, String name) {
+        Element child = parent == null ? null : child(parent, name);
+        return child == null ? null : child.getTextContent();
+    }
+
+    private static Map<String, String> query(String rawQuery) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                int equal = parameter.indexOf('=');
+                if (equal > 0) {
+                    result.put(URLDecoder.decode(parameter.substring(0, equal), "UTF-8"), URLDecoder.decode(parameter.substring(equal + 1), "UTF-8"));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+            output.write(buffer, 0, read);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void answer(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private class Group {
+
+        private final String id;
+
+        private final String parentId;
+
+        private final String name;
+
+        private final PositionDTO position;
+
+        private final RevisionDTO revision = revision(0);
+
+        private final List<String> children = new ArrayList<>();
+
+        private final List<String> processors = new ArrayList<>();
+
+        private final List<String> connections = new ArrayList<>();
+
+        private final List<String> services = new ArrayList<>();
+
+        private Group(String id, String parentId, String name, PositionDTO position) {
+            this.id = id;
+            this.parentId = parentId;
+            this.name = name;
+            this.position = position;
+        }
+    }
+
+    private static class Processor {
+
+        private final ProcessorEntity entity;
+
+        private long stoppedAt = 0;
+
+        private long stoppingUntil = 0;
+
+        private Processor(ProcessorEntity entity) {
+            this.entity = entity;
+        }
+    }
+
+    private static class Connection {
+
+        private final String id;
+
+        private final String groupId;
+
+        private final String sourceId;
+
+        private final String destinationId;
+
+        private final RevisionDTO revision = revision(0);
+
+        private long queued;
+
+        private Connection(String id, String groupId, String sourceId, String destinationId, long queued) {
+            this.id = id;
+            this.groupId = groupId;
+            this.sourceId = sourceId;
+            this.destinationId = destinationId;
+            this.queued = queued;
+        }
+    }
+
+    private static class Service {
+
+        private final ControllerServiceEntity entity;
+
+        private ControllerServiceDTO.StateEnum target;
+
+        private long transitionUntil;
+
+        private Service(ControllerServiceEntity entity) {
+            this.entity = entity;
+        }
+    }
+
+    private static class Template {
+
+        private final String id;
+
+        private final String groupId;
+
+        private final String name;
+
+        private final Map<String, Map.Entry<String, Map<String, String>>> processors = new LinkedHashMap<>();
+
+        private final List<String[]> connections = new ArrayList<>();
+
+        private Template(String id, String groupId, String name) {
+            this.id = id;
+            this.groupId = groupId;
+            this.name = name;
+        }
+    }
+
+    /**
+     * error answered with a status code and a text message, like nifi
+     */
+    private static class StandInException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int code;
+
+        private StandInException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.hermannpencole.nifi.config.standin;
+
+import com.github.hermannpencole.nifi.config.Main;
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.model.GroupProcessorsEntity;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorEntity;
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * run the modes end to end on the stand-in of nifi
+ */
+public class NifiStandInTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NifiStandIn nifi;
+
+    private String groupId;
+
+    @Before
+    public void setup() throws IOException {
+        nifi = new NifiStandIn();
+        nifi.setStateDelay(20);
+        nifi.setDrainDelay(20);
+        groupId = nifi.createFlow("flow", 200);
+    }
+
+    @After
+    public void close() {
+        nifi.close();
+    }
+
+    @Test
+    public void extractConfigTest() throws Exception {
+        File file = folder.newFile("extract.json");
+        run("root > flow", file, "extractConfig");
+
+        GroupProcessorsEntity configuration;
+        try (Reader reader = new FileReader(file)) {
+            configuration = new Gson().fromJson(reader, GroupProcessorsEntity.class);
+        }
+        assertEquals("flow", configuration.getName());
+        assertEquals(2, configuration.getGroupProcessorsEntity().size());
+        assertEquals(100, configuration.getGroupProcessorsEntity().get(0).getProcessors().size());
+        ProcessorDTO processor = configuration.getGroupProcessorsEntity().get(0).getProcessors().get(0);
+        assertEquals("processor 0", processor.getName());
+        //the link to the controller service is not extracted
+        assertNull(processor.getConfig().getProperties().get("property 0"));
+        assertEquals("value 1 of 0", processor.getConfig().getProperties().get("property 1"));
+        assertEquals(1, configuration.getControllerServicesDTO().size());
+        assertEquals("4557", configuration.getControllerServicesDTO().get(0).getProperties().get("Server Port"));
+    }
+
+    @Test
+    public void updateConfigTest() throws Exception {
+        File file = folder.newFile("update.json");
+        write(nifi.configuration(groupId, 10), file);
+        run("root > flow", file, "updateConfig");
+
+        List<ProcessorEntity> processors = nifi.getProcessors(groupId);
+        assertEquals(201, processors.size());
+        for (ProcessorEntity processor : processors) {
+            //the processor disabled is not started
+            assertEquals("processor disabled".equals(processor.getComponent().getName()) ? ProcessorDTO.StateEnum.DISABLED : ProcessorDTO.StateEnum.RUNNING,
+                    processor.getComponent().getState());
+        }
+        assertEquals("value 1 of 0 changed", processors.get(0).getComponent().getConfig().getProperties().get("property 1"));
+        assertEquals("value 1 of 1", processors.get(1).getComponent().getConfig().getProperties().get("property 1"));
+        //the link to the controller service is kept
+        assertEquals(nifi.getControllerService(processors.get(0).getComponent().getConfig().getProperties().get("property 0")).getComponent().getName(), "flow cache");
+        String serviceId = processors.get(0).getComponent().getConfig().getProperties().get("property 0");
+        assertEquals("4558", nifi.getControllerService(serviceId).getComponent().getProperties().get("Server Port"));
+        assertEquals(ControllerServiceDTO.StateEnum.ENABLED, nifi.getControllerService(serviceId).getComponent().getState());
+        //the queues were drained by the stop
+        assertEquals(0, nifi.getQueued(groupId));
+    }
+
+    @Test
+    public void deployTemplateAndUndeployTest() throws Exception {
+        File file = folder.newFile("template.xml");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(NifiStandIn.template("template", 20));
+        }
+        run("root > deployed", file, "deployTemplate");
+
+        String deployedId = nifi.findGroup(nifi.getRootId(), "deployed");
+        assertNotNull(deployedId);
+        assertEquals(20, nifi.getProcessors(deployedId).size());
+        assertEquals(1, nifi.getTemplateCount());
+
+        run("root > deployed", null, "undeploy");
+        assertNull(nifi.findGroup(nifi.getRootId(), "deployed"));
+        assertEquals(0, nifi.getTemplateCount());
+    }
+
+    @Test
+    public void undeployTest() throws Exception {
+        assertTrue(nifi.getQueued(groupId) > 0);
+        run("root > flow", null, "undeploy");
+        assertNull(nifi.findGroup(nifi.getRootId(), "flow"));
+    }
+
+    @Test
+    public void errorTest() throws Exception {
+        nifi.setErrorRate(1);
+        try {
+            run("root > flow", folder.newFile("extract.json"), "extractConfig");
+            fail();
+        } catch (ConfigException e) {
+            assertTrue(e.getMessage().contains("injected error"));
+        }
+    }
+
+    private void run(String branch, File file, String mode) throws Exception {
+        if (file == null) {
+            Main.main(new String[]{"-nifi", nifi.getBasePath(), "-branch", branch, "-m", mode, "-timeout", "10", "-pollInitialDelay", "10"});
+        } else {
+            Main.main(new String[]{"-nifi", nifi.getBasePath(), "-branch", branch, "-conf", file.getPath(), "-m", mode, "-timeout", "10", "-pollInitialDelay", "10"});
+        }
+    }
+
+    private static void write(GroupProcessorsEntity configuration, File file) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            new Gson().toJson(configuration, writer);
+        }
+    }
+}
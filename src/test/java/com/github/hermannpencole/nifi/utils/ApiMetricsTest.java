@@ -0,0 +1,144 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.utils.ApiMetrics;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ApiMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void templateTest() {
+        ApiMetrics metrics = new ApiMetrics("http://localhost:8080/nifi-api");
+        assertEquals("GET /flow/process-groups/{id}", metrics.template("GET", "/nifi-api/flow/process-groups/0159a1d2-5b4a-1f2c-a2d8-3c6e7e2d1a01"));
+        assertEquals("GET /flow/process-groups/{id}", metrics.template("GET", "/nifi-api/flow/process-groups/root"));
+        assertEquals("PUT /processors/{id}", metrics.template("PUT", "/nifi-api/processors/0159a1d2-5b4a-1f2c-a2d8-3c6e7e2d1a01"));
+        assertEquals("GET /flow/about", new ApiMetrics(null).template("GET", "/flow/about"));
+    }
+
+    @Test
+    public void percentileTest() {
+        long[] values = new long[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i + 1;
+        }
+        assertEquals(50, ApiMetrics.percentile(values, 50));
+        assertEquals(95, ApiMetrics.percentile(values, 95));
+        assertEquals(100, ApiMetrics.percentile(values, 100));
+        assertEquals(7, ApiMetrics.percentile(new long[]{7}, 95));
+        assertEquals(0, ApiMetrics.percentile(new long[0], 50));
+    }
+
+    @Test
+    public void interceptTest() throws IOException {
+        ApiMetrics metrics = new ApiMetrics("http://localhost:8080/nifi-api");
+        metrics.intercept(chain(metrics, "/nifi-api/flow/process-groups/0159a1d2-5b4a-1f2c-a2d8-3c6e7e2d1a01", 200, "{\"a\":1}")).body().string();
+        metrics.intercept(chain(metrics, "/nifi-api/flow/process-groups/0159a1d2-5b4a-1f2c-a2d8-3c6e7e2d1a02", 200, "{}")).body().string();
+        metrics.intercept(chain(metrics, "/nifi-api/processors/0159a1d2-5b4a-1f2c-a2d8-3c6e7e2d1a01", 409, "conflict")).body().string();
+        try {
+            metrics.intercept(chain(metrics, "/nifi-api/processors/0159a1d2-5b4a-1f2c-a2d8-3c6e7e2d1a01", -1, null));
+            fail();
+        } catch (IOException e) {
+            //expected
+        }
+
+        List<ApiMetrics.Endpoint> endpoints = metrics.getEndpoints();
+        assertEquals(2, endpoints.size());
+        ApiMetrics.Endpoint flow = endpoints.stream().filter(endpoint -> endpoint.getName().equals("GET /flow/process-groups/{id}")).findFirst().get();
+        assertEquals(2, flow.getCalls());
+        assertEquals(0, flow.getErrors());
+        assertEquals(9, flow.getBytesReceived());
+        ApiMetrics.Endpoint processor = endpoints.stream().filter(endpoint -> endpoint.getName().equals("GET /processors/{id}")).findFirst().get();
+        assertEquals(2, processor.getCalls());
+        assertEquals(2, processor.getErrors());
+        assertEquals(8, processor.getBytesReceived());
+
+        File file = folder.newFile("metrics.json");
+        metrics.writeReport(file);
+        try (Reader reader = new FileReader(file)) {
+            JsonObject report = new JsonParser().parse(reader).getAsJsonObject();
+            assertEquals(4, report.get("calls").getAsLong());
+            assertEquals(2, report.get("errors").getAsLong());
+            assertEquals(17, report.get("bytesReceived").getAsLong());
+            assertEquals(2, report.getAsJsonArray("endpoints").size());
+            JsonObject endpoint = report.getAsJsonArray("endpoints").get(0).getAsJsonObject();
+            assertEquals(2, endpoint.getAsJsonObject("latencyMillis").entrySet().stream().filter(entry -> entry.getKey().startsWith("p")).count());
+        }
+    }
+
+    /**
+     * @param path
+     * @param code the status code of the response, negative for a call without response
+     * @param body
+     * @return a chain that answer the request without network, through the network interceptor of the metrics
+     */
+    private Interceptor.Chain chain(ApiMetrics metrics, String path, int code, String body) {
+        Request request = new Request.Builder().url("http://localhost:8080" + path).build();
+        return new Interceptor.Chain() {
+            @Override
+            public Request request() {
+                return request;
+            }
+
+            @Override
+            public Response proceed(Request request) throws IOException {
+                if (code < 0) {
+                    throw new IOException("connection refused");
+                }
+                return metrics.networkInterceptor().intercept(network(request, code, body));
+            }
+
+            @Override
+            public Connection connection() {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * @param request
+     * @param code
+     * @param body    the body received (gzip is not decompressed at this level)
+     * @return the chain of the network interceptors
+     */
+    private static Interceptor.Chain network(Request request, int code, String body) {
+        return new Interceptor.Chain() {
+            @Override
+            public Request request() {
+                return request;
+            }
+
+            @Override
+            public Response proceed(Request request) {
+                return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(code)
+                        .body(ResponseBody.create(MediaType.parse("application/json"), body)).build();
+            }
+
+            @Override
+            public Connection connection() {
+                return null;
+            }
+        };
+    }
+}
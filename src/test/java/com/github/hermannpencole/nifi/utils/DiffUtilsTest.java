@@ -0,0 +1,132 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.utils.DiffUtils;
+import com.github.hermannpencole.nifi.swagger.client.model.ControllerServiceDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.PositionDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorConfigDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.PropertyDescriptorDTO;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DiffUtilsTest {
+
+    private static ProcessorDTO createProcessor(String key, String value) {
+        ProcessorDTO processor = new ProcessorDTO();
+        processor.setConfig(new ProcessorConfigDTO());
+        processor.getConfig().setProperties(new HashMap<>());
+        processor.getConfig().getProperties().put(key, value);
+        processor.getConfig().setDescriptors(new HashMap<>());
+        return processor;
+    }
+
+    private static PropertyDescriptorDTO createDescriptor(String defaultValue, Boolean sensitive, String identifiesControllerService) {
+        PropertyDescriptorDTO descriptor = new PropertyDescriptorDTO();
+        descriptor.setDefaultValue(defaultValue);
+        descriptor.setSensitive(sensitive);
+        descriptor.setIdentifiesControllerService(identifiesControllerService);
+        return descriptor;
+    }
+
+    @Test
+    public void isUpToDateTest() {
+        ProcessorDTO processor = createProcessor("key", "value");
+        processor.getConfig().setSchedulingPeriod("1 sec");
+        processor.setPosition(new PositionDTO());
+        ProcessorDTO processorOnConf = createProcessor("key", "value");
+        //fields not given on the configuration are not a change
+        assertTrue(DiffUtils.isUpToDate(processor, processorOnConf));
+        processorOnConf.setConfig(null);
+        assertTrue(DiffUtils.isUpToDate(processor, processorOnConf));
+    }
+
+    @Test
+    public void isNotUpToDateTest() {
+        ProcessorDTO processor = createProcessor("key", "value");
+        processor.getConfig().setSchedulingPeriod("1 sec");
+        ProcessorDTO processorOnConf = createProcessor("key", "value");
+        processorOnConf.getConfig().setSchedulingPeriod("2 sec");
+        assertFalse(DiffUtils.isUpToDate(processor, processorOnConf));
+        assertFalse(DiffUtils.isUpToDate(processor, createProcessor("key", "other")));
+        ProcessorDTO stopped = createProcessor("key", "value");
+        stopped.setState(ProcessorDTO.StateEnum.STOPPED);
+        assertFalse(DiffUtils.isUpToDate(processor, stopped));
+    }
+
+    @Test
+    public void samePropertiesDefaultValueTest() {
+        Map<String, PropertyDescriptorDTO> descriptors = new HashMap<>();
+        descriptors.put("key", createDescriptor("default", false, null));
+        Map<String, String> properties = new HashMap<>();
+        properties.put("key", null);
+        Map<String, String> propertiesOnConf = new HashMap<>();
+        propertiesOnConf.put("key", "default");
+        assertTrue(DiffUtils.sameProperties(properties, propertiesOnConf, descriptors));
+        assertTrue(DiffUtils.sameProperties(propertiesOnConf, properties, descriptors));
+        propertiesOnConf.put("key", "other");
+        assertFalse(DiffUtils.sameProperties(properties, propertiesOnConf, descriptors));
+    }
+
+    @Test
+    public void samePropertiesControllerServiceTest() {
+        Map<String, PropertyDescriptorDTO> descriptors = new HashMap<>();
+        descriptors.put("service", createDescriptor(null, false, "org.apache.nifi.ssl.SSLContextService"));
+        Map<String, String> properties = new HashMap<>();
+        properties.put("service", "id1");
+        Map<String, String> propertiesOnConf = new HashMap<>();
+        propertiesOnConf.put("service", "id2");
+        assertTrue(DiffUtils.sameProperties(properties, propertiesOnConf, descriptors));
+    }
+
+    @Test
+    public void samePropertiesSensitiveTest() {
+        Map<String, PropertyDescriptorDTO> descriptors = new HashMap<>();
+        descriptors.put("password", createDescriptor(null, true, null));
+        Map<String, String> properties = new HashMap<>();
+        properties.put("password", "********");
+        Map<String, String> propertiesOnConf = new HashMap<>();
+        propertiesOnConf.put("password", "secret");
+        assertFalse(DiffUtils.sameProperties(properties, propertiesOnConf, descriptors));
+        propertiesOnConf.put("password", null);
+        properties.put("password", null);
+        assertTrue(DiffUtils.sameProperties(properties, propertiesOnConf, descriptors));
+    }
+
+    @Test
+    public void samePropertiesSensitiveMaskTest() {
+        //the mask of nifi written by extractConfig is not a change
+        Map<String, PropertyDescriptorDTO> descriptors = new HashMap<>();
+        descriptors.put("password", createDescriptor(null, true, null));
+        Map<String, String> properties = new HashMap<>();
+        properties.put("password", DiffUtils.SENSITIVE_MASK);
+        Map<String, String> propertiesOnConf = new HashMap<>();
+        propertiesOnConf.put("password", DiffUtils.SENSITIVE_MASK);
+        assertTrue(DiffUtils.sameProperties(properties, propertiesOnConf, descriptors));
+        ProcessorDTO processor = createProcessor("password", DiffUtils.SENSITIVE_MASK);
+        processor.getConfig().getDescriptors().putAll(descriptors);
+        assertTrue(DiffUtils.isUpToDate(processor, createProcessor("password", DiffUtils.SENSITIVE_MASK)));
+    }
+
+    @Test
+    public void isUpToDateControllerServiceTest() {
+        ControllerServiceDTO controllerService = new ControllerServiceDTO();
+        controllerService.setState(ControllerServiceDTO.StateEnum.ENABLED);
+        controllerService.getProperties().put("key", "value");
+        controllerService.getProperties().put("ssl", "idSsl");
+        controllerService.getDescriptors().put("ssl", createDescriptor(null, false, "org.apache.nifi.ssl.SSLContextService"));
+        ControllerServiceDTO controllerServiceOnConf = new ControllerServiceDTO();
+        controllerServiceOnConf.getProperties().put("key", "value");
+        assertTrue(DiffUtils.isUpToDate(controllerService, controllerServiceOnConf));
+        //the links to the controller services are updated
+        controllerServiceOnConf.getProperties().put("ssl", "idOtherSsl");
+        assertFalse(DiffUtils.isUpToDate(controllerService, controllerServiceOnConf));
+        controllerServiceOnConf.getProperties().put("ssl", "idSsl");
+        controllerServiceOnConf.setComments("comments");
+        assertFalse(DiffUtils.isUpToDate(controllerService, controllerServiceOnConf));
+    }
+}
@@ -21,11 +21,18 @@ import org.mockito.runners.MockitoJUnitRunner;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 /**
@@ -61,4 +68,81 @@ public class FunctionUtilsTest {
         FunctionUtils.runWhile(() -> { throw new ConfigException("test");}, 1, -1);
         assertEquals(2, this.result);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void runWhileAsyncTest() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        CompletableFuture<Void> future = FunctionUtils.runWhileAsync(() -> count.incrementAndGet() != 3, 0, 10);
+        future.get();
+        assertEquals(3, count.get());
+    }
+
+    @Test(timeout = 5000)
+    public void runWhileAsyncManyTest() throws Exception {
+        //the waits don't hold a thread each : 500 waits of 1 second end together
+        AtomicInteger count = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            AtomicInteger calls = new AtomicInteger();
+            futures.add(FunctionUtils.runWhileAsync(() -> calls.incrementAndGet() == 1, 1, 10).thenRun(count::incrementAndGet));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+        assertEquals(500, count.get());
+    }
+
+    @Test(timeout = 5000)
+    public void runWhileAsyncTimeOutBusyTest() throws Exception {
+        //the calls that block (a slow nifi) don't delay the timeout of the other polls
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Void>> busy = new ArrayList<>();
+        for (int i = 0; i < 2 * Runtime.getRuntime().availableProcessors() + 8; i++) {
+            busy.add(FunctionUtils.runWhileAsync(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new ConfigException(e);
+                }
+                return false;
+            }, 0, -1));
+        }
+        try {
+            FunctionUtils.runWhileAsync(() -> true, 0, 1).get();
+            fail("TimeoutException expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        } finally {
+            release.countDown();
+        }
+        CompletableFuture.allOf(busy.toArray(new CompletableFuture<?>[0])).get();
+    }
+
+    @Test
+    public void runWhileAsyncTimeOutTest() throws Exception {
+        try {
+            FunctionUtils.runWhileAsync(() -> true, 1, 1).get();
+            fail("TimeoutException expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void runWhileAsyncExceptionTest() throws Exception {
+        try {
+            FunctionUtils.runWhileAsync(() -> { throw new RuntimeException();}, 1, -1).get();
+            fail("ConfigException expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ConfigException);
+        }
+    }
+
+    @Test
+    public void runWhileAsyncCancelTest() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        CompletableFuture<Void> future = FunctionUtils.runWhileAsync(() -> count.incrementAndGet() > 0, 1, -1);
+        future.cancel(false);
+        int calls = count.get();
+        Thread.sleep(1500);
+        assertTrue(count.get() <= calls + 1);
+    }
+}
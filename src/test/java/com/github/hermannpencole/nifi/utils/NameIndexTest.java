@@ -0,0 +1,49 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.service.TestUtils;
+import com.github.hermannpencole.nifi.config.utils.NameIndex;
+import com.github.hermannpencole.nifi.swagger.client.model.FlowDTO;
+import com.github.hermannpencole.nifi.swagger.client.model.ProcessorEntity;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NameIndexTest {
+
+    @Test
+    public void findTest() {
+        FlowDTO flow = new FlowDTO();
+        flow.getProcessors().add(TestUtils.createProcessorEntity("id1", " name1 "));
+        flow.getProcessors().add(TestUtils.createProcessorEntity("id2", "name2"));
+        NameIndex<ProcessorEntity> index = NameIndex.processors(flow);
+        assertEquals("id1", index.find("name1").get().getId());
+        assertEquals("id2", index.find(" name2").get().getId());
+        assertFalse(index.find("name3").isPresent());
+        assertFalse(index.find(null).isPresent());
+        assertEquals(new HashSet<>(Arrays.asList("name1", "name2")), index.names());
+    }
+
+    @Test
+    public void findDuplicateTest() {
+        FlowDTO flow = new FlowDTO();
+        flow.getProcessors().add(TestUtils.createProcessorEntity("id1", "name"));
+        flow.getProcessors().add(TestUtils.createProcessorEntity("id2", "name "));
+        flow.getProcessors().add(TestUtils.createProcessorEntity("id3", "name"));
+        flow.getProcessors().add(TestUtils.createProcessorEntity("id4", "other"));
+        NameIndex<ProcessorEntity> index = NameIndex.processors(flow);
+        assertEquals("id4", index.find("other").get().getId());
+        try {
+            index.find("name");
+            fail("ConfigException expected");
+        } catch (ConfigException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("3 components with the name name"));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.model.ConfigException;
+import com.github.hermannpencole.nifi.config.utils.ParallelRunner;
+import com.github.hermannpencole.nifi.swagger.ApiException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for ParallelRunner
+ */
+public class ParallelRunnerTest {
+
+    @Test
+    public void sequentialOrderTest() {
+        List<Integer> result = new ArrayList<>();
+        try (ParallelRunner runner = new ParallelRunner(1)) {
+            runner.submit(() -> {
+                result.add(1);
+                runner.submit(() -> result.add(2));
+            });
+            runner.submit(() -> result.add(3));
+            runner.await();
+        }
+        assertEquals(Arrays.asList(1, 2, 3), result);
+    }
+
+    @Test
+    public void parallelNestedTest() {
+        AtomicInteger result = new AtomicInteger();
+        try (ParallelRunner runner = new ParallelRunner(4)) {
+            for (int i = 0; i < 10; i++) {
+                runner.submit(() -> {
+                    for (int j = 0; j < 10; j++) {
+                        runner.submit(() -> {
+                            Thread.sleep(1);
+                            result.incrementAndGet();
+                        });
+                    }
+                });
+            }
+            runner.await();
+        }
+        assertEquals(100, result.get());
+    }
+
+    @Test
+    public void parallelBackpressureTest() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger submitted = new AtomicInteger();
+        AtomicInteger result = new AtomicInteger();
+        try (ParallelRunner runner = new ParallelRunner(2)) {
+            Thread caller = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    runner.submit(() -> {
+                        release.await();
+                        result.incrementAndGet();
+                    });
+                    submitted.incrementAndGet();
+                }
+                runner.await();
+            });
+            caller.start();
+            Thread.sleep(200);
+            assertEquals(2 * ParallelRunner.PENDING_BY_THREAD, submitted.get());
+            release.countDown();
+            caller.join(10000);
+        }
+        assertEquals(100, result.get());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void parallelApiExceptionTest() {
+        try (ParallelRunner runner = new ParallelRunner(4)) {
+            runner.submit(() -> { throw new ApiException("test"); });
+            runner.await();
+        }
+    }
+
+    @Test(expected = ConfigException.class)
+    public void parallelErrorTest() {
+        try (ParallelRunner runner = new ParallelRunner(4)) {
+            runner.submit(() -> { throw new AssertionError("test"); });
+            runner.await();
+        }
+    }
+
+    @Test(expected = ConfigException.class)
+    public void parallelAfterErrorTest() {
+        try (ParallelRunner runner = new ParallelRunner(4)) {
+            runner.submit(runner.fetch(() -> 1), input -> { throw new StackOverflowError("test"); });
+            runner.await();
+        }
+    }
+
+    @Test
+    public void sequentialAfterTest() {
+        List<Integer> result = new ArrayList<>();
+        try (ParallelRunner runner = new ParallelRunner(1)) {
+            ParallelRunner.Result<Integer> one = runner.fetch(() -> 1);
+            ParallelRunner.Result<Integer> two = runner.fetch(one, value -> value + 1);
+            runner.submit(two, result::add);
+            runner.submit(one, result::add);
+            runner.await();
+        }
+        assertEquals(Arrays.asList(2, 1), result);
+    }
+
+    @Test
+    public void parallelAfterTest() {
+        AtomicInteger result = new AtomicInteger();
+        try (ParallelRunner runner = new ParallelRunner(4)) {
+            for (int i = 0; i < 10; i++) {
+                int value = i;
+                ParallelRunner.Result<Integer> fetched = runner.fetch(() -> {
+                    Thread.sleep(10);
+                    return value;
+                });
+                ParallelRunner.Result<Integer> doubled = runner.fetch(fetched, input -> input * 2);
+                runner.submit(doubled, result::addAndGet);
+            }
+            runner.await();
+        }
+        assertEquals(90, result.get());
+    }
+
+    @Test(expected = ConfigException.class)
+    public void parallelAfterExceptionTest() {
+        try (ParallelRunner runner = new ParallelRunner(4)) {
+            ParallelRunner.Result<Integer> fetched = runner.fetch(() -> { throw new ApiException("test"); });
+            runner.submit(runner.fetch(fetched, input -> input + 1), input -> { });
+            runner.await();
+        }
+    }
+
+    @Test(expected = ConfigException.class)
+    public void sequentialExceptionTest() {
+        try (ParallelRunner runner = new ParallelRunner(1)) {
+            runner.submit(() -> { throw new Exception("test"); });
+        }
+    }
+}
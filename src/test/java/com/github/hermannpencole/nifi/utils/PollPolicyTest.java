@@ -0,0 +1,56 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.utils.FunctionUtils;
+import com.github.hermannpencole.nifi.config.utils.PollPolicy;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for PollPolicy
+ */
+public class PollPolicyTest {
+
+    @Test
+    public void delayTest() {
+        PollPolicy policy = new PollPolicy(100, 2, 1000, 0);
+        assertEquals(100, policy.delay(1));
+        assertEquals(200, policy.delay(2));
+        assertEquals(400, policy.delay(3));
+        assertEquals(800, policy.delay(4));
+        assertEquals(1000, policy.delay(5));
+        assertEquals(1000, policy.delay(50));
+    }
+
+    @Test
+    public void delayJitterTest() {
+        PollPolicy policy = new PollPolicy(100, 2, 1000, 0.5);
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.delay(3);
+            assertTrue(delay >= 200 && delay <= 400);
+        }
+    }
+
+    @Test
+    public void fixedTest() {
+        PollPolicy policy = PollPolicy.fixed(2);
+        assertEquals(2000, policy.delay(1));
+        assertEquals(2000, policy.delay(10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTest() {
+        new PollPolicy(100, 0.5, 1000, 0);
+    }
+
+    @Test(timeout = 3000)
+    public void runWhileTest() {
+        //5 calls with the default policy : 100 + 200 + 400 + 800 ms at most, the old polling needed 8 seconds
+        AtomicInteger count = new AtomicInteger();
+        FunctionUtils.runWhile(() -> count.incrementAndGet() != 5, new PollPolicy(), 10);
+        assertEquals(5, count.get());
+    }
+}
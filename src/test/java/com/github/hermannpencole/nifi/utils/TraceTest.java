@@ -0,0 +1,98 @@
+package com.github.hermannpencole.nifi.utils;
+
+import com.github.hermannpencole.nifi.config.utils.Trace;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TraceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        Trace.disable();
+    }
+
+    @Test
+    public void disabledTest() throws IOException {
+        assertFalse(Trace.isEnabled());
+        try (Trace.Span span = Trace.span("ProcessGroupService.stop", "group", "name")) {
+            span.attribute("level", 1);
+        }
+        assertTrue(Trace.spans().isEmpty());
+        File file = new File(folder.getRoot(), "trace.json");
+        Trace.write(file);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void spanTest() throws IOException {
+        Trace.enable();
+        Trace.run(Trace.span("ProcessGroupService.stop", "group", "name"), () -> {
+            try (Trace.Span level = Trace.span("ProcessGroupService.stopLevel", "level", 0)) {
+                level.attribute("processors", 2);
+            }
+        });
+        List<Trace.Span> spans = Trace.spans();
+        assertEquals(2, spans.size());
+        assertEquals("ProcessGroupService.stopLevel", spans.get(0).getName());
+        assertEquals("ProcessGroupService", spans.get(0).getCategory());
+        assertEquals("0", spans.get(0).getArgs().get("level"));
+        assertEquals("2", spans.get(0).getArgs().get("processors"));
+        assertEquals("name", spans.get(1).getArgs().get("group"));
+        assertTrue(spans.get(1).getDuration() >= spans.get(0).getDuration());
+
+        File file = folder.newFile("trace.json");
+        Trace.write(file);
+        try (Reader reader = new FileReader(file)) {
+            JsonArray events = new JsonParser().parse(reader).getAsJsonObject().getAsJsonArray("traceEvents");
+            //thread name and 2 spans
+            assertEquals(3, events.size());
+            assertEquals("M", events.get(0).getAsJsonObject().get("ph").getAsString());
+            JsonObject stop = events.get(2).getAsJsonObject();
+            assertEquals("X", stop.get("ph").getAsString());
+            assertEquals("ProcessGroupService.stop", stop.get("name").getAsString());
+            assertEquals("ProcessGroupService", stop.get("cat").getAsString());
+            assertEquals("name", stop.getAsJsonObject("args").get("group").getAsString());
+            assertEquals(Thread.currentThread().getId(), stop.get("tid").getAsLong());
+        }
+    }
+
+    @Test
+    public void runTest() throws IOException {
+        Trace.enable();
+        assertEquals("1.3.0", Trace.call(Trace.span("InformationService.getVersion"), () -> "1.3.0"));
+        try {
+            Trace.run(Trace.span("ProcessGroupService.stopLevel", "level", 0), () -> {
+                throw new IOException("error");
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("error", e.getMessage());
+        }
+        //the spans are closed also on exception
+        List<Trace.Span> spans = Trace.spans();
+        assertEquals(2, spans.size());
+        assertEquals("InformationService.getVersion", spans.get(0).getName());
+        assertEquals("ProcessGroupService.stopLevel", spans.get(1).getName());
+        assertEquals("0", spans.get(1).getArgs().get("level"));
+        assertTrue(spans.get(1).getDuration() >= 0);
+    }
+}